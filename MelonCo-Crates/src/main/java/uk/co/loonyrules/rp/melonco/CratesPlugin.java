@@ -1,6 +1,7 @@
 package uk.co.loonyrules.rp.melonco;
 
 import org.bukkit.ChatColor;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -9,31 +10,339 @@ import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.player.PlayerInteractEvent;
-import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import uk.co.loonyrules.rp.melonco.audit.OddsAuditor;
+import uk.co.loonyrules.rp.melonco.checkpoint.CheckpointJournal;
+import uk.co.loonyrules.rp.melonco.checkpoint.SpinCheckpoint;
+import uk.co.loonyrules.rp.melonco.commands.CratesCommand;
 import uk.co.loonyrules.rp.melonco.crates.Crate;
-import uk.co.loonyrules.rp.melonco.enums.CrateType;
+import uk.co.loonyrules.rp.melonco.crates.CrateLoader;
+import uk.co.loonyrules.rp.melonco.crates.CrateRegistry;
+import uk.co.loonyrules.rp.melonco.delivery.DeliveryService;
+import uk.co.loonyrules.rp.melonco.delivery.Mailbox;
+import uk.co.loonyrules.rp.melonco.enums.InteractResult;
+import uk.co.loonyrules.rp.melonco.jfr.CrateEvents;
+import uk.co.loonyrules.rp.melonco.keys.KeyService;
+import uk.co.loonyrules.rp.melonco.keys.KeyStore;
+import uk.co.loonyrules.rp.melonco.ledger.LedgerHistory;
+import uk.co.loonyrules.rp.melonco.ledger.LedgerIndex;
+import uk.co.loonyrules.rp.melonco.ledger.LedgerWriter;
+import uk.co.loonyrules.rp.melonco.locations.PlacedCrates;
+import uk.co.loonyrules.rp.melonco.listeners.DeliveryListener;
+import uk.co.loonyrules.rp.melonco.listeners.KeyListener;
+import uk.co.loonyrules.rp.melonco.listeners.PlacedCrateListener;
+import uk.co.loonyrules.rp.melonco.listeners.SessionListener;
+import uk.co.loonyrules.rp.melonco.metrics.CrateMetrics;
+import uk.co.loonyrules.rp.melonco.metrics.MetricsReporter;
+import uk.co.loonyrules.rp.melonco.sessions.BulkOpening;
+import uk.co.loonyrules.rp.melonco.sessions.CrateSession;
+import uk.co.loonyrules.rp.melonco.sessions.SessionRecovery;
+import uk.co.loonyrules.rp.melonco.sessions.SessionRegistry;
+import uk.co.loonyrules.rp.melonco.sessions.SessionTicker;
+import uk.co.loonyrules.rp.melonco.sessions.SessionWatchdog;
 
-import java.lang.reflect.InvocationTargetException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
 
 public class CratesPlugin extends JavaPlugin implements Listener
 {
 
+    /**
+     * Most Crate openings that can be going at once
+     */
+    private static final int MAX_SESSIONS = 5000;
+
+    /**
+     * Time each tick can spend stepping Crates before their animations are degraded, in microseconds
+     */
+    private static final long TICK_BUDGET_MICROS = 2000;
+
+    /**
+     * Size a ledger segment can grow to before a new one is started, and how often the ledger is forced to disk
+     */
+    private static final long LEDGER_SEGMENT_SIZE = 64L * 1024 * 1024, LEDGER_FORCE_INTERVAL = 1000;
+    private static final long LEDGER_CLOSE_TIMEOUT = 10000;
+
+    /**
+     * Longest to wait for the mailbox to be written on shutdown
+     */
+    private static final long MAILBOX_CLOSE_TIMEOUT = 10000;
+
+    /**
+     * Size the checkpoint journal can grow to before it's compacted, and how often it's forced to disk
+     */
+    private static final long CHECKPOINT_COMPACT_SIZE = 4L * 1024 * 1024, CHECKPOINT_FORCE_INTERVAL = 1000;
+    private static final long CHECKPOINT_CLOSE_TIMEOUT = 10000;
+
+    /**
+     * Longest to wait for Key balances to be written on shutdown
+     */
+    private static final long KEYS_CLOSE_TIMEOUT = 10000;
+
+    /**
+     * Longest to wait for the placed Crates to be saved on shutdown
+     */
+    private static final long LOCATIONS_CLOSE_TIMEOUT = 5000;
+
     private CratesPlugin instance;
+    private LedgerIndex ledgerIndex;
+    private LedgerWriter ledgerWriter;
+    private LedgerHistory ledgerHistory;
+    private CheckpointJournal checkpointJournal;
+    private Mailbox mailbox;
+    private CrateLoader crateLoader;
+    private volatile CrateRegistry crateRegistry;
+    private PlacedCrates placedCrates;
+    private PlacedCrateListener placedCrateListener;
+    private SessionRegistry sessionRegistry;
+    private SessionListener sessionListener;
+    private DeliveryListener deliveryListener;
+    private DeliveryService deliveryService;
+    private KeyListener keyListener;
+    private KeyService keyService;
+    private SessionTicker sessionTicker;
+    private SessionWatchdog sessionWatchdog;
+    private CrateMetrics metrics;
+    private MetricsReporter metricsReporter;
+    private ObjectName metricsName;
+    private ForkJoinPool auditPool;
+    private OddsAuditor oddsAuditor;
 
     @Override
     public void onEnable()
     {
+        // Every opening is recorded, so Crates can't be opened without the ledger
+        File ledgerDirectory = new File(getDataFolder(), "ledger");
+
+        // Nor without somewhere to keep the rewards that can't be given straight away, or to checkpoint them until they are
+        mailbox = new Mailbox(new File(getDataFolder(), "mailbox"), getLogger());
+        checkpointJournal = new CheckpointJournal(new File(getDataFolder(), "spins.journal"), CHECKPOINT_COMPACT_SIZE, CHECKPOINT_FORCE_INTERVAL, getLogger());
+        List<SpinCheckpoint> interrupted;
+        KeyStore keyStore;
+        File grants = new File(getDataFolder(), "grants");
+
+        try {
+            mailbox.start();
+            interrupted = checkpointJournal.start();
+            keyStore = new KeyStore(new File(getDataFolder(), "keys"));
+            Files.createDirectories(grants.toPath());
+            placedCrates = PlacedCrates.load(new File(getDataFolder(), "crates.locations"), getLogger());
+            ledgerIndex = new LedgerIndex(new File(ledgerDirectory, "index"));
+            ledgerWriter = new LedgerWriter(ledgerDirectory, ledgerIndex, LEDGER_SEGMENT_SIZE, LEDGER_FORCE_INTERVAL, getLogger());
+            ledgerWriter.start();
+        } catch (IOException | RuntimeException e) {
+            // Disabling calls onDisable, which closes whatever did start
+            getLogger().log(Level.SEVERE, "Failed to start the ledger, mailbox, checkpoints, keys and placed Crates, disabling", e);
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+
+        ledgerHistory = new LedgerHistory(ledgerDirectory, ledgerIndex);
+
         instance = this;
 
+        // Crates that fail to load are left out rather than stopping the others
+        crateLoader = new CrateLoader(new File(getDataFolder(), "crates"));
+        crateRegistry = loadCrates();
+        sessionRegistry = new SessionRegistry(MAX_SESSIONS);
+        metrics = new CrateMetrics(sessionRegistry, ledgerWriter, mailbox, TICK_BUDGET_MICROS);
+
+        deliveryService = new DeliveryService(this, mailbox, checkpointJournal, metrics);
+
+        // Settling whatever the server stopped part way through last time
+        new SessionRecovery(crateRegistry, mailbox, checkpointJournal, metrics, getLogger()).recover(interrupted);
+
         register(this);
+        register(sessionListener = new SessionListener(sessionRegistry));
+        register(deliveryListener = new DeliveryListener(deliveryService));
+
+        // Placed Crates are only looked up in loaded chunks, so catching up on the worlds loaded before us
+        for(World world : getServer().getWorlds())
+            placedCrates.worldLoaded(world);
+
+        register(placedCrateListener = new PlacedCrateListener(placedCrates));
+
+        // Key balances are cached while Players are online, with changes written behind
+        keyService = new KeyService(this, keyStore, grants);
+        keyService.runTaskTimer(this, KeyService.PERIOD, KeyService.PERIOD);
+        keyService.loadOnline();
+        register(keyListener = new KeyListener(this, keyService));
+
+        // One task steps every Crate being opened
+        sessionTicker = new SessionTicker(TICK_BUDGET_MICROS, metrics, getLogger());
+        sessionTicker.runTaskTimer(this, 1L, 1L);
+
+        // Rewards revealed in a tick are delivered together after it
+        deliveryService.runTaskTimer(this, 1L, 1L);
+
+        // Reclaiming any opening that outlives its lifecycle
+        sessionWatchdog = new SessionWatchdog(sessionRegistry, getLogger());
+        sessionWatchdog.runTaskTimer(this, SessionWatchdog.PERIOD, SessionWatchdog.PERIOD);
+
+
+        // Dumping metrics for Prometheus and exposing them over JMX
+        metricsReporter = new MetricsReporter(this, metrics, new File(getDataFolder(), "metrics.prom"));
+        metricsReporter.runTaskTimer(this, MetricsReporter.PERIOD, MetricsReporter.PERIOD);
+        registerMXBean();
+
+        // Audits get every core but one, leaving room for the main thread
+        auditPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        oddsAuditor = new OddsAuditor(auditPool);
+
+        getCommand("crates").setExecutor(new CratesCommand(this));
     }
 
     @Override
     public void onDisable()
     {
+        // Also called when enabling failed part way, so only what was started is stopped
         unregister(this);
+        unregister(sessionListener);
+        unregister(deliveryListener);
+        unregister(keyListener);
+        unregister(placedCrateListener);
+        cancel(sessionTicker);
+        cancel(sessionWatchdog);
+        cancel(metricsReporter);
+        unregisterMXBean();
+
+        if(auditPool != null)
+            auditPool.shutdownNow();
+
+        // Cancelling any Crates that are still being opened, their rewards are still delivered
+        if(sessionRegistry != null)
+        {
+            for(CrateSession session : sessionRegistry.getSessions())
+                session.unregister();
+
+            sessionRegistry.clear();
+        }
+
+        if(placedCrates != null)
+            placedCrates.close(LOCATIONS_CLOSE_TIMEOUT);
+
+        // Writing every Key taken or given, after the openings that may have taken them
+        if(keyService != null)
+            keyService.close(KEYS_CLOSE_TIMEOUT);
+
+        // Delivering what those openings and the last tick left queued
+        if(deliveryService != null)
+            deliveryService.close(MAILBOX_CLOSE_TIMEOUT);
+        else if(mailbox != null)
+            mailbox.close(MAILBOX_CLOSE_TIMEOUT);
+
+        // Delivered openings are completed as the mailbox is written, so a clean stop leaves nothing to recover
+        if(checkpointJournal != null)
+            checkpointJournal.close(CHECKPOINT_CLOSE_TIMEOUT);
+
+        // Only once nothing else can be recorded
+        if(ledgerWriter != null)
+            ledgerWriter.close(LEDGER_CLOSE_TIMEOUT);
+
+        if(ledgerIndex != null)
+        {
+            try {
+                ledgerIndex.close();
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Failed to close the ledger index", e);
+            }
+        }
+    }
+
+    private void cancel(BukkitRunnable task)
+    {
+        try {
+            if(task != null)
+                task.cancel();
+        } catch (IllegalStateException e) {
+            // Never got as far as being scheduled
+        }
+    }
+
+    private CrateRegistry loadCrates()
+    {
+        // First start, writing out the default Crates to edit
+        if(!crateLoader.getDirectory().exists())
+            saveResource("crates/ender.yml", false);
+
+        List<String> errors = new ArrayList<>();
+
+        try {
+            CrateRegistry registry = crateLoader.load(errors);
+
+            for(String error : errors)
+                getLogger().warning("Skipped a Crate, " + error);
+
+            getLogger().info("Loaded " + registry.size() + " Crate(s)");
+            return registry;
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Failed to load the Crates, none can be opened", e);
+            return new CrateRegistry(Collections.emptyList());
+        }
+    }
+
+    /**
+     * Reload every Crate from its file off the main thread. The new Crates are only swapped in if every file loads,
+     * openings already going carry on with the Crate they started with.
+     * @return Completed with why each file failed to load, nothing was swapped in unless it's empty
+     */
+    public CompletableFuture<List<String>> reloadCrates()
+    {
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+
+        getServer().getScheduler().runTaskAsynchronously(this, () ->
+        {
+            List<String> errors = new ArrayList<>();
+
+            try {
+                CrateRegistry registry = crateLoader.load(errors);
+
+                // The registry's never changed once built, so swapping the reference is all a reload takes
+                if(errors.isEmpty())
+                    crateRegistry = registry;
+
+                future.complete(errors);
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    private void registerMXBean()
+    {
+        try {
+            metricsName = new ObjectName("uk.co.loonyrules.rp.melonco:type=Crates");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metricsName);
+        } catch (JMException e) {
+            getLogger().log(Level.WARNING, "Failed to expose Crate metrics over JMX", e);
+            metricsName = null;
+        }
+    }
+
+    private void unregisterMXBean()
+    {
+        if(metricsName == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+        } catch (JMException e) {
+            getLogger().log(Level.WARNING, "Failed to remove Crate metrics from JMX", e);
+        }
     }
 
     public void register(Listener listener)
@@ -43,7 +352,116 @@ public class CratesPlugin extends JavaPlugin implements Listener
 
     public void unregister(Listener listener)
     {
-        HandlerList.unregisterAll(listener);
+        if(listener != null)
+            HandlerList.unregisterAll(listener);
+    }
+
+    /**
+     * Get the ledger every opening is recorded in
+     * @return The LedgerWriter instance
+     */
+    public LedgerWriter getLedgerWriter()
+    {
+        return ledgerWriter;
+    }
+
+    /**
+     * Get the journal the openings in progress are checkpointed to
+     * @return The CheckpointJournal instance
+     */
+    public CheckpointJournal getCheckpointJournal()
+    {
+        return checkpointJournal;
+    }
+
+    /**
+     * Get the history of openings kept in the ledger
+     * @return The LedgerHistory instance
+     */
+    public LedgerHistory getLedgerHistory()
+    {
+        return ledgerHistory;
+    }
+
+    /**
+     * Get the service delivering rewards to Players and their mailboxes
+     * @return The DeliveryService instance
+     */
+    public DeliveryService getDeliveryService()
+    {
+        return deliveryService;
+    }
+
+    /**
+     * Get the service caching Players' virtual Key balances
+     * @return The KeyService instance
+     */
+    public KeyService getKeyService()
+    {
+        return keyService;
+    }
+
+    /**
+     * Get the registry of Crate definitions. Replaced by a reload, so look it up each time rather than keeping it.
+     * @return The CrateRegistry instance
+     */
+    public CrateRegistry getCrateRegistry()
+    {
+        return crateRegistry;
+    }
+
+    /**
+     * Get the Crates placed at specific blocks
+     * @return The PlacedCrates instance
+     */
+    public PlacedCrates getPlacedCrates()
+    {
+        return placedCrates;
+    }
+
+    /**
+     * Get the task stepping every Crate being opened
+     * @return The SessionTicker instance
+     */
+    public SessionTicker getSessionTicker()
+    {
+        return sessionTicker;
+    }
+
+    /**
+     * Get the task reclaiming orphaned openings
+     * @return The SessionWatchdog instance
+     */
+    public SessionWatchdog getSessionWatchdog()
+    {
+        return sessionWatchdog;
+    }
+
+    /**
+     * Get the auditor for simulating Crate odds
+     * @return The OddsAuditor instance
+     */
+    public OddsAuditor getOddsAuditor()
+    {
+        return oddsAuditor;
+    }
+
+    /**
+     * Get the Crate metrics
+     * @return The CrateMetrics instance
+     */
+    public CrateMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Get the registry of Crates currently being opened
+     * @return The SessionRegistry instance
+     */
+    public SessionRegistry getSessionRegistry()
+    {
+        return sessionRegistry;
     }
 
 
@@ -57,41 +475,72 @@ public class CratesPlugin extends JavaPlugin implements Listener
         Player player = event.getPlayer();
         Block block = event.getClickedBlock();
 
-        // Specifically for this Plugin if you Right-Click ANY Crate type it'll act as a Crate.
-        Optional<CrateType> crateTypeOptional = CrateType.getType(block.getType());
+        // A Crate placed at this block first, then any Crate opened from every block of its type
+        String placed = placedCrates.get(block);
+        Optional<Crate> crateOptional = placed != null ? crateRegistry.get(placed) : crateRegistry.get(block.getType());
+
+        // Not a Crate we're managing
+        if(!crateOptional.isPresent())
+            return;
+
+        Crate crate = crateOptional.get();
+        long start = System.nanoTime();
+        InteractResult result = null;
 
         try {
-            // Not a CrateType we're managing
-            if(!crateTypeOptional.isPresent())
-                return;
+            result = handleCrateInteract(event, player, crate);
+        } finally {
+            long nanos = System.nanoTime() - start;
 
-            event.setCancelled(true);
+            metrics.recordInteract(nanos);
+            CrateEvents.interact(crate.getName(), player.getUniqueId(), String.valueOf(result), nanos);
+        }
+    }
 
-            // If they're already opening this Crate, open up their instance
-            Optional<Crate> crateOptional = Crate.getOpeningCrate(player.getUniqueId());
+    private InteractResult handleCrateInteract(PlayerInteractEvent event, Player player, Crate crate)
+    {
+        event.setCancelled(true);
 
-            if(crateOptional.isPresent())
-            {
-                crateOptional.get().open(player);
-                return;
-            }
+        // If they're already opening a Crate, open up their instance
+        Optional<CrateSession> sessionOptional = sessionRegistry.get(player.getUniqueId());
 
-            // Initialsing a new instance of our Crate (I know it's not the best way for validation)
-            Crate crate = crateTypeOptional.get().getCrateClass().getConstructor(CratesPlugin.class).newInstance(this);
+        if(sessionOptional.isPresent())
+        {
+            sessionOptional.get().show();
+            return InteractResult.RESUMED;
+        }
 
-            // Validating this opening
-            ItemStack key = crate.getKey();
-            if(crate.getUser() != player && crate.requiresKey() && !key.isSimilar(player.getItemInHand()))
-            {
-                player.sendMessage(ChatColor.RED + "The " + crate.getDisplayName() + ChatColor.RED + " requires a " + ChatColor.YELLOW + (key.hasItemMeta() ? key.getItemMeta().hasDisplayName() ? key.getItemMeta().getDisplayName() : key.getType().toString() : key.getType().toString()) + ChatColor.RED + " in your hand to open.");
-                event.setCancelled(true);
-                return;
-            }
+        // Validating this opening against the cached Crate and their cached balance, nothing is created until it passes.
+        // A virtual Key is used before one in their hand.
+        boolean validKey = !crate.requiresKey() || keyService.has(player.getUniqueId(), crate.getName()) || crate.isKey(player.getItemInHand());
+        CrateEvents.keyValidated(crate.getName(), player.getUniqueId(), validKey);
+
+        if(!validKey)
+        {
+            player.sendMessage(ChatColor.RED + "The " + crate.getDisplayName() + ChatColor.RED + " requires a " + ChatColor.YELLOW + crate.getKeyName() + ChatColor.RED + " to open.");
+            return InteractResult.NO_KEY;
+        }
+
+        // Calling onOpen for more control over opening this Crate.
+        if(!crate.onOpen(player))
+            return InteractResult.DENIED;
 
-            crate.open(player);
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            e.printStackTrace();
+        // Sneaking opens every Key they have at once, without a spin
+        if(player.isSneaking() && crate.requiresKey())
+        {
+            new BulkOpening(this, crate, player).open(BulkOpening.MAX_OPENINGS);
+            return InteractResult.BULK_OPENED;
         }
+
+        // Too many Crates being opened at once
+        if(sessionRegistry.isFull())
+        {
+            metrics.recordRejectedOpen();
+            player.sendMessage(ChatColor.RED + "Too many crates are being opened right now, try again in a moment.");
+            return InteractResult.FULL;
+        }
+
+        return new CrateSession(this, crate, player).start() ? InteractResult.OPENED : InteractResult.REJECTED;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,589 @@
+package uk.co.loonyrules.rp.melonco.commands;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.block.Block;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitRunnable;
+import uk.co.loonyrules.rp.melonco.CratesPlugin;
+import uk.co.loonyrules.rp.melonco.audit.AuditResult;
+import uk.co.loonyrules.rp.melonco.crates.Crate;
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+import uk.co.loonyrules.rp.melonco.keys.KeyGrant;
+import uk.co.loonyrules.rp.melonco.ledger.LedgerRecord;
+import uk.co.loonyrules.rp.melonco.metrics.CrateMetrics;
+import uk.co.loonyrules.rp.melonco.sessions.BulkOpening;
+import uk.co.loonyrules.rp.melonco.utils.TimeUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Handles /crates and its sub-commands, for claiming rewards and administrating Crates.
+ */
+public class CratesCommand implements CommandExecutor
+{
+
+    /**
+     * Most openings a single audit can simulate
+     */
+    private static final long MAX_AUDIT_OPENINGS = 1_000_000_000L;
+
+    /**
+     * Most openings /crates history lists
+     */
+    private static final int HISTORY_LIMIT = 20;
+
+    /**
+     * How often a bulk grant's progress is reported, in ticks
+     */
+    private static final long GRANT_PROGRESS_PERIOD = 20L * 2;
+
+    /**
+     * Furthest away a block can be looked at to place or remove a Crate there
+     */
+    private static final int TARGET_DISTANCE = 5;
+
+    /**
+     * Permission needed for every sub-command other than claim and open
+     */
+    public static final String ADMIN_PERMISSION = "crates.admin";
+
+    private final CratesPlugin cratesPlugin;
+
+    // Audits use every core they're given, so only one runs at a time
+    private final AtomicBoolean auditing = new AtomicBoolean();
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    public CratesCommand(CratesPlugin cratesPlugin)
+    {
+        this.cratesPlugin = cratesPlugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args)
+    {
+        if(args.length == 0)
+            return false;
+
+        String subCommand = args[0].toLowerCase(Locale.ROOT);
+
+        if(subCommand.equals("claim"))
+        {
+            claim(sender);
+            return true;
+        }
+
+        if(subCommand.equals("open"))
+        {
+            open(sender, args);
+            return true;
+        }
+
+        if(!sender.hasPermission(ADMIN_PERMISSION))
+        {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to do that.");
+            return true;
+        }
+
+        switch(subCommand)
+        {
+            case "audit":
+                audit(sender, args);
+                return true;
+            case "stats":
+                stats(sender);
+                return true;
+            case "history":
+                history(sender, args);
+                return true;
+            case "grant":
+                grant(sender, args);
+                return true;
+            case "reload":
+                reload(sender);
+                return true;
+            case "set":
+                set(sender, args);
+                return true;
+            case "remove":
+                remove(sender);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * /crates claim
+     */
+    private void claim(CommandSender sender)
+    {
+        if(!(sender instanceof Player))
+        {
+            sender.sendMessage(ChatColor.RED + "Only players have a mailbox.");
+            return;
+        }
+
+        // Read off the main thread and given on a later tick
+        cratesPlugin.getDeliveryService().claim(((Player) sender).getUniqueId(), false);
+    }
+
+    /**
+     * /crates open &lt;crate&gt; [amount]
+     */
+    private void open(CommandSender sender, String[] args)
+    {
+        if(!(sender instanceof Player))
+        {
+            sender.sendMessage(ChatColor.RED + "Only players have Keys.");
+            return;
+        }
+
+        if(args.length < 2)
+        {
+            sender.sendMessage(ChatColor.RED + "Usage: /crates open <crate> [amount, every Key you have up to " + BulkOpening.MAX_OPENINGS + " by default]");
+            return;
+        }
+
+        Optional<Crate> crateOptional = cratesPlugin.getCrateRegistry().get(args[1]);
+
+        if(!crateOptional.isPresent())
+        {
+            sender.sendMessage(ChatColor.RED + "There isn't a Crate called " + ChatColor.YELLOW + args[1] + ChatColor.RED + ".");
+            return;
+        }
+
+        Crate crate = crateOptional.get();
+        Player player = (Player) sender;
+
+        // Free Crates are opened one spin at a time
+        if(!crate.requiresKey())
+        {
+            sender.sendMessage(ChatColor.RED + "The " + crate.getDisplayName() + ChatColor.RED + " doesn't need a Key, open it by clicking it.");
+            return;
+        }
+
+        int amount = BulkOpening.MAX_OPENINGS;
+
+        if(args.length > 2)
+        {
+            try {
+                amount = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + args[2] + " isn't a number.");
+                return;
+            }
+
+            if(amount <= 0)
+            {
+                sender.sendMessage(ChatColor.RED + "Open at least one.");
+                return;
+            }
+        }
+
+        if(!crate.onOpen(player))
+            return;
+
+        if(new BulkOpening(cratesPlugin, crate, player).open(amount) == 0)
+            sender.sendMessage(ChatColor.RED + "You haven't got a " + ChatColor.YELLOW + crate.getKeyName() + ChatColor.RED + " to open the " + crate.getDisplayName() + ChatColor.RED + " with.");
+    }
+
+    /**
+     * /crates stats
+     */
+    private void stats(CommandSender sender)
+    {
+        CrateMetrics metrics = cratesPlugin.getMetrics();
+
+        sender.sendMessage(ChatColor.GREEN + "Crate stats:");
+        sender.sendMessage(String.format(Locale.ROOT, "%sOpenings: %s%,d %s(%.2f/s, %,d rejected), %,d revealed", ChatColor.GRAY, ChatColor.WHITE, metrics.getOpens(), ChatColor.GRAY,
+                metrics.getOpensPerSecond(), metrics.getRejectedOpens(), metrics.getReveals()));
+        sender.sendMessage(String.format(Locale.ROOT, "%sActive sessions: %s%,d %s(peak %,d)", ChatColor.GRAY, ChatColor.WHITE, metrics.getActiveSessions(), ChatColor.GRAY, metrics.getPeakSessions()));
+        sender.sendMessage(String.format(Locale.ROOT, "%sInteract: %s%,dus p50, %,dus p99 %s(%,d handled)", ChatColor.GRAY, ChatColor.WHITE, metrics.getInteractMicrosP50(), metrics.getInteractMicrosP99(),
+                ChatColor.GRAY, metrics.getInteracts()));
+        sender.sendMessage(String.format(Locale.ROOT, "%sTick: %s%,dus p50, %,dus p99, %,dus max %s(budget %,dus, last used %.0f%%)", ChatColor.GRAY, ChatColor.WHITE, metrics.getTickMicrosP50(),
+                metrics.getTickMicrosP99(), metrics.getTickMicrosMax(), ChatColor.GRAY, metrics.getTickBudgetMicros(), metrics.getTickBudgetUsage() * 100));
+        sender.sendMessage(String.format(Locale.ROOT, "%sDegraded: %s%,d frames %s(%,d of %,d ticks over budget)", ChatColor.GRAY, ChatColor.WHITE, metrics.getDegradedFrames(), ChatColor.GRAY,
+                metrics.getOverBudgetTicks(), metrics.getTicks()));
+        sender.sendMessage(String.format(Locale.ROOT, "%sOpen to reveal: %s%,dms p50, %,dms p99", ChatColor.GRAY, ChatColor.WHITE, metrics.getOpenToRevealMillisP50(), metrics.getOpenToRevealMillisP99()));
+        sender.sendMessage(String.format(Locale.ROOT, "%sDelivered: %s%,d to inventories, %,d to mailboxes %s(%,d waiting to be written)", ChatColor.GRAY, ChatColor.WHITE, metrics.getDeliveredToInventory(),
+                metrics.getDeliveredToMailbox(), ChatColor.GRAY, metrics.getMailboxPending()));
+        sender.sendMessage(String.format(Locale.ROOT, "%sKey balances: %s%,d cached %s(%,d waiting to be written, %,d failed writes)", ChatColor.GRAY, ChatColor.WHITE, cratesPlugin.getKeyService().size(),
+                ChatColor.GRAY, cratesPlugin.getKeyService().getPending(), cratesPlugin.getKeyService().getFailed()));
+        sender.sendMessage(String.format(Locale.ROOT, "%sPlaced crates: %s%,d %s(%,d in loaded chunks)", ChatColor.GRAY, ChatColor.WHITE, cratesPlugin.getPlacedCrates().size(), ChatColor.GRAY,
+                cratesPlugin.getPlacedCrates().loadedSize()));
+    }
+
+    /**
+     * /crates set &lt;crate&gt;
+     */
+    private void set(CommandSender sender, String[] args)
+    {
+        if(args.length < 2)
+        {
+            sender.sendMessage(ChatColor.RED + "Usage: /crates set <crate>, looking at the block to place it at");
+            return;
+        }
+
+        Block block = target(sender);
+
+        if(block == null)
+            return;
+
+        Optional<Crate> crateOptional = cratesPlugin.getCrateRegistry().get(args[1]);
+
+        if(!crateOptional.isPresent())
+        {
+            sender.sendMessage(ChatColor.RED + "There isn't a Crate called " + ChatColor.YELLOW + args[1] + ChatColor.RED + ".");
+            return;
+        }
+
+        Crate crate = crateOptional.get();
+        String old = cratesPlugin.getPlacedCrates().set(block, crate.getName());
+
+        sender.sendMessage(ChatColor.GREEN + "Placed the " + crate.getDisplayName() + ChatColor.GREEN + " here"
+                + (old == null || old.equals(crate.getName()) ? "." : ", replacing the " + ChatColor.YELLOW + old + ChatColor.GREEN + " Crate."));
+    }
+
+    /**
+     * /crates remove
+     */
+    private void remove(CommandSender sender)
+    {
+        Block block = target(sender);
+
+        if(block == null)
+            return;
+
+        String old = cratesPlugin.getPlacedCrates().remove(block);
+
+        if(old == null)
+            sender.sendMessage(ChatColor.RED + "There isn't a Crate placed there.");
+        else sender.sendMessage(ChatColor.GREEN + "Removed the " + ChatColor.YELLOW + old + ChatColor.GREEN + " Crate placed there.");
+    }
+
+    // The block the sender's looking at, null once they've been told why there isn't one
+    private Block target(CommandSender sender)
+    {
+        if(!(sender instanceof Player))
+        {
+            sender.sendMessage(ChatColor.RED + "Only players can look at a block.");
+            return null;
+        }
+
+        Block block = ((Player) sender).getTargetBlock((Set<Material>) null, TARGET_DISTANCE);
+
+        if(block == null || block.getType() == Material.AIR)
+        {
+            sender.sendMessage(ChatColor.RED + "Look at a block within " + TARGET_DISTANCE + " blocks first.");
+            return null;
+        }
+
+        return block;
+    }
+
+    /**
+     * /crates history &lt;player|*&gt; [since]
+     */
+    private void history(CommandSender sender, String[] args)
+    {
+        if(args.length < 2)
+        {
+            sender.sendMessage(ChatColor.RED + "Usage: /crates history <player|*> [since, e.g. 7d or 2017-05-01]");
+            return;
+        }
+
+        String target = args[1];
+        long since;
+
+        try {
+            since = args.length < 3 ? 0 : TimeUtil.parseSince(args[2], System.currentTimeMillis());
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(ChatColor.RED + e.getMessage());
+            return;
+        }
+
+        // Looking up the Player and reading the ledger are both blocking
+        cratesPlugin.getServer().getScheduler().runTaskAsynchronously(cratesPlugin, () ->
+        {
+            try {
+                List<LedgerRecord> records;
+                String title;
+
+                if(target.equals("*"))
+                {
+                    records = cratesPlugin.getLedgerHistory().range(since, HISTORY_LIMIT);
+                    title = "Latest openings";
+                } else {
+                    @SuppressWarnings("deprecation")
+                    OfflinePlayer player = cratesPlugin.getServer().getOfflinePlayer(target);
+
+                    if(!player.isOnline() && !player.hasPlayedBefore())
+                    {
+                        cratesPlugin.getServer().getScheduler().runTask(cratesPlugin, () -> sender.sendMessage(ChatColor.RED + target + " has never played here."));
+                        return;
+                    }
+
+                    records = cratesPlugin.getLedgerHistory().history(player.getUniqueId(), since, HISTORY_LIMIT);
+                    title = "Openings by " + player.getName() + " (" + String.format("%,d", cratesPlugin.getLedgerHistory().count(player.getUniqueId())) + " in total)";
+                }
+
+                cratesPlugin.getServer().getScheduler().runTask(cratesPlugin, () -> sendHistory(sender, title, records, target.equals("*")));
+            } catch (IOException e) {
+                cratesPlugin.getLogger().log(Level.WARNING, "Failed to read the history of " + target, e);
+                cratesPlugin.getServer().getScheduler().runTask(cratesPlugin, () -> sender.sendMessage(ChatColor.RED + "Failed to read the history, check the console for details."));
+            }
+        });
+    }
+
+    private void sendHistory(CommandSender sender, String title, List<LedgerRecord> records, boolean showPlayer)
+    {
+        sender.sendMessage(ChatColor.GREEN + title + ":");
+
+        if(records.isEmpty())
+        {
+            sender.sendMessage(ChatColor.GRAY + "Nothing found.");
+            return;
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+        for(LedgerRecord record : records)
+            sender.sendMessage(ChatColor.GRAY + format.format(new Date(record.getTimestamp())) + " " + (showPlayer ? ChatColor.AQUA + cratesPlugin.getServer().getOfflinePlayer(record.getPlayer()).getName() + " " : "") + ChatColor.WHITE + record.getCrate() + ChatColor.GRAY + " - " + ChatColor.YELLOW
+                    + record.getRewardDescription() + ChatColor.DARK_GRAY + " (seed " + record.getSeed() + ")");
+    }
+
+    /**
+     * /crates reload
+     */
+    private void reload(CommandSender sender)
+    {
+        if(!reloading.compareAndSet(false, true))
+        {
+            sender.sendMessage(ChatColor.RED + "The Crates are already being reloaded.");
+            return;
+        }
+
+        sender.sendMessage(ChatColor.GREEN + "Reloading the Crates...");
+
+        cratesPlugin.reloadCrates().whenComplete((errors, throwable) -> cratesPlugin.getServer().getScheduler().runTask(cratesPlugin, () ->
+        {
+            reloading.set(false);
+
+            if(throwable != null)
+            {
+                cratesPlugin.getLogger().log(Level.WARNING, "Failed to reload the Crates", throwable);
+                sender.sendMessage(ChatColor.RED + "Failed to reload the Crates, check the console for details.");
+                return;
+            }
+
+            if(!errors.isEmpty())
+            {
+                sender.sendMessage(ChatColor.RED + "Nothing was reloaded, fix these first:");
+
+                for(String error : errors)
+                    sender.sendMessage(ChatColor.GRAY + "- " + error);
+
+                return;
+            }
+
+            sender.sendMessage(ChatColor.GREEN + "Reloaded " + cratesPlugin.getCrateRegistry().size() + " Crate(s), openings already going finish with the old ones.");
+        }));
+    }
+
+    /**
+     * /crates grant &lt;crate&gt; &lt;amount&gt; &lt;file&gt;
+     */
+    private void grant(CommandSender sender, String[] args)
+    {
+        if(args.length < 4)
+        {
+            sender.sendMessage(ChatColor.RED + "Usage: /crates grant <crate> <amount> <file in the grants folder, one UUID per line>");
+            return;
+        }
+
+        Optional<Crate> crateOptional = cratesPlugin.getCrateRegistry().get(args[1]);
+
+        if(!crateOptional.isPresent())
+        {
+            sender.sendMessage(ChatColor.RED + "There isn't a Crate called " + ChatColor.YELLOW + args[1] + ChatColor.RED + ".");
+            return;
+        }
+
+        Crate crate = crateOptional.get();
+
+        if(!crate.requiresKey())
+        {
+            sender.sendMessage(ChatColor.RED + "The " + crate.getDisplayName() + ChatColor.RED + " doesn't need a Key.");
+            return;
+        }
+
+        int amount;
+
+        try {
+            amount = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            sender.sendMessage(ChatColor.RED + args[2] + " isn't a number.");
+            return;
+        }
+
+        // Grants only ever add Keys, a negative amount would leave Players owing them
+        if(amount <= 0)
+        {
+            sender.sendMessage(ChatColor.RED + "The amount of Keys has to be more than 0.");
+            return;
+        }
+
+        KeyGrant grant;
+
+        try {
+            grant = cratesPlugin.getKeyService().grant(args[3], crate.getName(), amount);
+        } catch (IOException e) {
+            sender.sendMessage(ChatColor.RED + "Can't read " + args[3] + ": " + e.getMessage());
+            return;
+        } catch (IllegalStateException e) {
+            sender.sendMessage(ChatColor.RED + e.getMessage());
+            return;
+        }
+
+        sender.sendMessage(ChatColor.GREEN + "Giving " + amount + " " + crate.getKeyName() + ChatColor.GREEN + " to everyone in " + args[3] + "...");
+
+        new BukkitRunnable()
+        {
+            @Override
+            public void run()
+            {
+                if(grant.isDone())
+                {
+                    cancel();
+                    return;
+                }
+
+                sender.sendMessage(String.format(Locale.ROOT, "%sGranted %s%,d %sof %,d read %s(%,.0f/s)", ChatColor.GRAY, ChatColor.WHITE, grant.getGranted(), ChatColor.GRAY, grant.getRead(), ChatColor.DARK_GRAY, grant.getRate()));
+            }
+        }.runTaskTimer(cratesPlugin, GRANT_PROGRESS_PERIOD, GRANT_PROGRESS_PERIOD);
+
+        grant.getCompletion().whenComplete((done, throwable) -> cratesPlugin.getServer().getScheduler().runTask(cratesPlugin, () ->
+        {
+            sender.sendMessage(String.format(Locale.ROOT, "%sGave %s%,d %sPlayer(s) their Keys in %,dms %s(%,.0f/s, %,d lines skipped)", throwable == null ? ChatColor.GREEN : ChatColor.RED,
+                    ChatColor.WHITE, grant.getGranted(), throwable == null ? ChatColor.GREEN : ChatColor.RED, grant.getElapsedMillis(), ChatColor.GRAY, grant.getRate(), grant.getSkipped()));
+
+            if(throwable != null)
+                sender.sendMessage(ChatColor.RED + "Stopped early as the file couldn't be read, check the console for details.");
+
+            if(grant.getFailed() > 0)
+                sender.sendMessage(ChatColor.RED + String.format("%,d", grant.getFailed()) + " Player(s) weren't given their Keys, they're listed in " + args[3] + ".failed");
+        }));
+    }
+
+    /**
+     * /crates audit &lt;crate&gt; &lt;openings&gt;
+     */
+    private void audit(CommandSender sender, String[] args)
+    {
+        if(args.length < 3)
+        {
+            sender.sendMessage(ChatColor.RED + "Usage: /crates audit <crate> <openings>");
+            return;
+        }
+
+        Optional<Crate> crateOptional = cratesPlugin.getCrateRegistry().get(args[1]);
+
+        if(!crateOptional.isPresent())
+        {
+            sender.sendMessage(ChatColor.RED + "There isn't a Crate called " + ChatColor.YELLOW + args[1] + ChatColor.RED + ".");
+            return;
+        }
+
+        long openings;
+
+        try {
+            openings = Long.parseLong(args[2].replace("_", "").replace(",", ""));
+        } catch (NumberFormatException e) {
+            sender.sendMessage(ChatColor.RED + args[2] + " isn't a number.");
+            return;
+        }
+
+        if(openings <= 0 || openings > MAX_AUDIT_OPENINGS)
+        {
+            sender.sendMessage(ChatColor.RED + "An audit can simulate between 1 and " + String.format("%,d", MAX_AUDIT_OPENINGS) + " openings.");
+            return;
+        }
+
+        if(!auditing.compareAndSet(false, true))
+        {
+            sender.sendMessage(ChatColor.RED + "An audit is already running, wait for it to finish.");
+            return;
+        }
+
+        Crate crate = crateOptional.get();
+        long seed = ThreadLocalRandom.current().nextLong();
+
+        sender.sendMessage(ChatColor.GREEN + "Simulating " + String.format("%,d", openings) + " openings of the " + crate.getDisplayName() + ChatColor.GREEN + "...");
+
+        // Simulating and writing the report off the main thread, only messaging the sender back on it
+        cratesPlugin.getServer().getScheduler().runTaskAsynchronously(cratesPlugin, () ->
+        {
+            try {
+                AuditResult result = cratesPlugin.getOddsAuditor().audit(crate.getRewards(), openings, seed);
+                File report = writeReport(crate, result);
+
+                cratesPlugin.getServer().getScheduler().runTask(cratesPlugin, () -> sendResult(sender, crate, result, report));
+            } catch (Exception e) {
+                cratesPlugin.getLogger().log(Level.WARNING, "Failed to audit the " + crate.getName() + " Crate", e);
+                cratesPlugin.getServer().getScheduler().runTask(cratesPlugin, () -> sender.sendMessage(ChatColor.RED + "The audit failed, check the console for details."));
+            } finally {
+                auditing.set(false);
+            }
+        });
+    }
+
+    private File writeReport(Crate crate, AuditResult result) throws IOException
+    {
+        List<String> lines = result.toReport(crate.getName(), crate::getRewardName);
+
+        File folder = new File(cratesPlugin.getDataFolder(), "audits");
+        File report = new File(folder, crate.getName().toLowerCase(Locale.ROOT) + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt");
+
+        Files.createDirectories(folder.toPath());
+        Files.write(report.toPath(), lines, StandardCharsets.UTF_8);
+
+        return report;
+    }
+
+    private void sendResult(CommandSender sender, Crate crate, AuditResult result, File report)
+    {
+        RewardTable<ItemStack> rewards = crate.getRewards();
+
+        sender.sendMessage(ChatColor.GREEN + "Audit of the " + crate.getDisplayName() + ChatColor.GREEN + " finished in " + String.format("%,d", result.getElapsedMillis()) + "ms:");
+
+        for(int i = 0; i < rewards.size(); i++)
+        {
+            double observed = (double) result.getObserved(i) / result.getOpenings();
+            sender.sendMessage(String.format(Locale.ROOT, "%s- %s%s: %.4f%% expected, %.4f%% observed", ChatColor.GRAY, ChatColor.getByChar(rewards.getRarity(i).getColourCode()),
+                    crate.getRewardName(i), rewards.getChance(i) * 100, observed * 100));
+        }
+
+        sender.sendMessage(String.format(Locale.ROOT, "%sChi-square %.2f (%d d.f.), p-value %.4f: %s", ChatColor.YELLOW, result.getChiSquare(), result.getDegreesOfFreedom(), result.getPValue(),
+                result.isConsistent() ? ChatColor.GREEN + "consistent with the advertised odds" : ChatColor.RED + "NOT consistent with the advertised odds"));
+        sender.sendMessage(ChatColor.GRAY + "Report saved to " + report.getPath());
+    }
+
+}
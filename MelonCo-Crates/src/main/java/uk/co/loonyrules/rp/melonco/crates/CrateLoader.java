@@ -0,0 +1,230 @@
+package uk.co.loonyrules.rp.melonco.crates;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import uk.co.loonyrules.rp.melonco.builders.ItemBuilder;
+import uk.co.loonyrules.rp.melonco.builders.RewardTableBuilder;
+import uk.co.loonyrules.rp.melonco.engine.SpinTimings;
+import uk.co.loonyrules.rp.melonco.enums.Rarity;
+import uk.co.loonyrules.rp.melonco.sessions.SessionTicker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles the Crate definitions in a folder, one YAML file per Crate, into a {@link CrateRegistry}. Everything an
+ * opening needs is built up front (the reward table's alias table, every item, every display name), so it's fine
+ * to load them off the main thread and nothing is parsed once they're in use.
+ *
+ * <pre>
+ * name: ENDER
+ * display-name: '&amp;d&amp;lEnderCrate'
+ * block: ENDER_CHEST         # Optional, every block of this type opens the Crate as well as where it's placed
+ * key:                       # Optional, the Crate's free to open without one
+ *   material: IRON_HOE
+ * spin:
+ *   min-seconds: 18
+ *   max-seconds: 24
+ * allow-flying: false
+ * rewards:                   # In order, a reward's index is kept in the ledger
+ *   diamond:
+ *     material: DIAMOND
+ *     rarity: LEGENDARY
+ *     weight: 2              # Optional, the rarity's weight otherwise
+ * </pre>
+ *
+ * Items can also have an amount, data, name, lore and enchantments. Names and lore take '&amp;' colour codes.
+ */
+public class CrateLoader
+{
+
+    private static final String EXTENSION = ".yml";
+
+    // Spins are timed in steps, and a step is taken every STEP_INTERVAL of the server's 20 ticks a second
+    private static final double STEPS_PER_SECOND = 20.0 / SessionTicker.STEP_INTERVAL;
+
+    private final File directory;
+
+    /**
+     * Initialise a CrateLoader
+     * @param directory Folder the Crates' files are kept in
+     */
+    public CrateLoader(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the folder the Crates' files are kept in
+     * @return The folder
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Compile every Crate in the folder, blocking
+     * @param errors Added to with why each file that couldn't be loaded was skipped
+     * @return Registry of every Crate that was loaded
+     * @throws IOException If the folder can't be listed
+     */
+    public CrateRegistry load(List<String> errors) throws IOException
+    {
+        File[] files = directory.listFiles((dir, name) -> name.toLowerCase(Locale.ROOT).endsWith(EXTENSION));
+
+        if(files == null)
+            throw new IOException("Can't list the Crates in " + directory);
+
+        // Sorted so the same files always load the same way
+        Arrays.sort(files);
+
+        List<Crate> crates = new ArrayList<>(files.length);
+
+        for(File file : files)
+        {
+            try {
+                Crate crate = load(file);
+
+                for(Crate loaded : crates)
+                {
+                    if(loaded.getName().equalsIgnoreCase(crate.getName()))
+                        throw new IllegalArgumentException("another file already has a Crate called " + crate.getName());
+
+                    if(crate.getBlock() != null && loaded.getBlock() == crate.getBlock())
+                        throw new IllegalArgumentException("the " + loaded.getName() + " Crate is already opened from " + crate.getBlock());
+                }
+
+                crates.add(crate);
+            } catch (IOException | InvalidConfigurationException | IllegalArgumentException e) {
+                errors.add(file.getName() + ": " + e.getMessage());
+            }
+        }
+
+        return new CrateRegistry(crates);
+    }
+
+    private Crate load(File file) throws IOException, InvalidConfigurationException
+    {
+        YamlConfiguration config = new YamlConfiguration();
+        config.load(file);
+
+        String name = required(config, "name");
+        String displayName = colour(config.getString("display-name", name));
+        Material block = config.isSet("block") ? material(config, "block") : null;
+
+        if(block != null && !block.isBlock())
+            throw new IllegalArgumentException(block + " isn't a block");
+
+        ItemStack key = config.isConfigurationSection("key") ? item(config.getConfigurationSection("key")) : null;
+
+        if(key != null)
+            key.setAmount(1);
+
+        ConfigurationSection spin = config.getConfigurationSection("spin");
+        SpinTimings timings = spin == null ? SpinTimings.DEFAULT : new SpinTimings(
+                (int) Math.round(spin.getDouble("min-seconds") * STEPS_PER_SECOND),
+                (int) Math.round(spin.getDouble("max-seconds", spin.getDouble("min-seconds")) * STEPS_PER_SECOND));
+
+        ConfigurationSection rewards = config.getConfigurationSection("rewards");
+
+        if(rewards == null || rewards.getKeys(false).isEmpty())
+            throw new IllegalArgumentException("a Crate needs at least one reward");
+
+        RewardTableBuilder<ItemStack> builder = new RewardTableBuilder<>();
+
+        for(String id : rewards.getKeys(false))
+        {
+            ConfigurationSection reward = rewards.getConfigurationSection(id);
+
+            if(reward == null)
+                throw new IllegalArgumentException("reward " + id + " isn't an item");
+
+            Rarity rarity = rarity(reward.getString("rarity", Rarity.COMMON.name()), id);
+            double weight = reward.getDouble("weight", rarity.getWeight());
+
+            if(!(weight > 0))
+                throw new IllegalArgumentException("reward " + id + " needs a weight above 0");
+
+            builder.add(item(reward), weight, rarity);
+        }
+
+        return new Crate(name, displayName, block, key, builder.build(), timings, config.getBoolean("allow-flying", true));
+    }
+
+    private ItemStack item(ConfigurationSection section)
+    {
+        ItemBuilder builder = new ItemBuilder(material(section, "material"))
+                .setAmount(section.getInt("amount", 1))
+                .setDurability(section.getInt("data", 0));
+
+        if(section.isSet("name"))
+            builder.setDisplayName(colour(section.getString("name")));
+
+        if(section.isSet("lore"))
+            builder.setLores(section.getStringList("lore").stream().map(CrateLoader::colour).collect(Collectors.toList()));
+
+        ConfigurationSection enchantments = section.getConfigurationSection("enchantments");
+
+        if(enchantments != null)
+        {
+            for(String name : enchantments.getKeys(false))
+            {
+                Enchantment enchantment = Enchantment.getByName(name.toUpperCase(Locale.ROOT));
+
+                if(enchantment == null)
+                    throw new IllegalArgumentException(section.getName() + " has an unknown enchantment " + name);
+
+                builder.addEnchantment(enchantment, enchantments.getInt(name, 1));
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static Material material(ConfigurationSection section, String path)
+    {
+        String name = required(section, path);
+        Material material = Material.matchMaterial(name);
+
+        if(material == null)
+            throw new IllegalArgumentException(name + " isn't a material");
+
+        return material;
+    }
+
+    private static Rarity rarity(String name, String id)
+    {
+        try {
+            return Rarity.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("reward " + id + " has an unknown rarity " + name);
+        }
+    }
+
+    private static String required(ConfigurationSection section, String path)
+    {
+        String value = section.getString(path);
+
+        if(value == null || value.isEmpty())
+            throw new IllegalArgumentException((section.getName() == null || section.getName().isEmpty() ? "" : section.getName() + ".") + path + " is missing");
+
+        return value;
+    }
+
+    private static String colour(String text)
+    {
+        return ChatColor.translateAlternateColorCodes('&', text);
+    }
+
+}
@@ -0,0 +1,81 @@
+package uk.co.loonyrules.rp.melonco.crates;
+
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Every Crate definition, indexed by the block it's bound to and its name. Never changed once built, a reload builds
+ * a whole new registry and swaps it in, so it's safe to read from any thread without locking.
+ */
+public final class CrateRegistry
+{
+
+    private final Map<Material, Crate> byMaterial = new EnumMap<>(Material.class);
+    private final Map<String, Crate> byName = new HashMap<>();
+    private final Collection<Crate> crates;
+
+    /**
+     * Index Crates
+     * @param crates The Crates, which mustn't share a name or block
+     */
+    public CrateRegistry(Collection<Crate> crates)
+    {
+        for(Crate crate : crates)
+        {
+            if(byName.put(crate.getName().toUpperCase(Locale.ROOT), crate) != null)
+                throw new IllegalArgumentException("There's more than one Crate called " + crate.getName() + ".");
+
+            if(crate.getBlock() != null && byMaterial.put(crate.getBlock(), crate) != null)
+                throw new IllegalArgumentException("There's more than one Crate opened from " + crate.getBlock() + ".");
+        }
+
+        this.crates = Collections.unmodifiableList(new ArrayList<>(crates));
+    }
+
+    /**
+     * Get the Crate bound to a block type
+     * @param material The block type
+     * @return The Crate if one is bound to this block type
+     */
+    public Optional<Crate> get(Material material)
+    {
+        return Optional.ofNullable(byMaterial.get(material));
+    }
+
+    /**
+     * Get a Crate by its name
+     * @param name Name of the Crate, not case sensitive
+     * @return The Crate if there's one with this name
+     */
+    public Optional<Crate> get(String name)
+    {
+        return Optional.ofNullable(byName.get(name.toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * Get every Crate
+     * @return Read-only view of every Crate
+     */
+    public Collection<Crate> getCrates()
+    {
+        return crates;
+    }
+
+    /**
+     * Get the amount of Crates
+     * @return Amount of Crates
+     */
+    public int size()
+    {
+        return crates.size();
+    }
+
+}
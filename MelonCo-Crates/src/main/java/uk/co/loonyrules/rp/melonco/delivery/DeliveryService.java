@@ -0,0 +1,322 @@
+package uk.co.loonyrules.rp.melonco.delivery;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import uk.co.loonyrules.rp.melonco.checkpoint.CheckpointJournal;
+import uk.co.loonyrules.rp.melonco.enums.DeliveryDestination;
+import uk.co.loonyrules.rp.melonco.jfr.CrateEvents;
+import uk.co.loonyrules.rp.melonco.metrics.CrateMetrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+
+/**
+ * Gives Players the rewards they've won. Rewards are queued as they're revealed and delivered together once a tick,
+ * each Player's rewards going into their inventory in one go. Anything that doesn't fit, or is for a Player that's
+ * logged off, goes to their {@link Mailbox} as part of a single batch for the tick.
+ *
+ * An opening's checkpoint is only completed once its reward is in the Player's inventory or written to their mailbox,
+ * so a reward the server stops before delivering is recovered on the next start.
+ */
+public class DeliveryService extends BukkitRunnable
+{
+
+    /**
+     * Most items given from a mailbox per claim, roughly a full inventory
+     */
+    private static final int CLAIM_BATCH = 36;
+
+    private static final long[] NO_CHECKPOINTS = new long[0];
+
+    private final Plugin plugin;
+    private final Mailbox mailbox;
+    private final CheckpointJournal checkpoints;
+    private final CrateMetrics metrics;
+
+    // Only touched on the main thread
+    private List<Delivery> queued = new ArrayList<>(), delivering = new ArrayList<>();
+
+    // Claims are read off the main thread and handed back here to be given
+    private final Queue<Claim> claimed = new ConcurrentLinkedQueue<>();
+
+    public DeliveryService(Plugin plugin, Mailbox mailbox, CheckpointJournal checkpoints, CrateMetrics metrics)
+    {
+        this.plugin = plugin;
+        this.mailbox = mailbox;
+        this.checkpoints = checkpoints;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queue a reward to be delivered at the end of this tick
+     * @param uuid The Player it's for, who may have logged off
+     * @param reward The reward, a copy is delivered
+     * @param crate Name of the Crate it was won from
+     * @param rewardIndex Index of the reward in the Crate's rewards
+     * @param checkpoint Id of the opening's checkpoint to complete once delivered, -1 if it hasn't got one
+     */
+    public void deliver(UUID uuid, ItemStack reward, String crate, int rewardIndex, long checkpoint)
+    {
+        queued.add(new Delivery(uuid, new ItemStack[] { reward.clone() }, crate, rewardIndex, 1, checkpoint >= 0 ? new long[] { checkpoint } : NO_CHECKPOINTS, System.nanoTime()));
+    }
+
+    /**
+     * Queue the rewards of many openings to be delivered together at the end of this tick
+     * @param uuid The Player they're for, who may have logged off
+     * @param items The rewards, already stacked. Delivered as they are.
+     * @param crate Name of the Crate they were won from
+     * @param openings Amount of openings they were won from
+     * @param checkpoints Ids of the openings' checkpoints, completed once every item is delivered
+     */
+    public void deliver(UUID uuid, ItemStack[] items, String crate, int openings, long[] checkpoints)
+    {
+        queued.add(new Delivery(uuid, items, crate, -1, openings, checkpoints, System.nanoTime()));
+    }
+
+    /**
+     * Give a Player the next batch of their mailbox, read off the main thread
+     * @param uuid The Player's UUID
+     * @param quiet Whether to say nothing if their mailbox is empty or already being claimed
+     */
+    public void claim(UUID uuid, boolean quiet)
+    {
+        mailbox.claim(uuid).whenComplete((items, throwable) ->
+        {
+            if(throwable != null)
+                plugin.getLogger().log(Level.WARNING, "Failed to claim the mailbox of " + uuid, throwable);
+            else if(!quiet || items != null && !items.isEmpty())
+                claimed.add(new Claim(uuid, items));
+        });
+    }
+
+    /**
+     * Get the rewards waiting to be delivered this tick
+     * @return Amount of queued rewards
+     */
+    public int getQueued()
+    {
+        return queued.size();
+    }
+
+    /**
+     * Get the mailbox undeliverable rewards go to
+     * @return The Mailbox instance
+     */
+    public Mailbox getMailbox()
+    {
+        return mailbox;
+    }
+
+    @Override
+    public void run()
+    {
+        if(!queued.isEmpty())
+            deliverQueued();
+
+        Claim claim;
+
+        while((claim = claimed.poll()) != null)
+            give(claim);
+    }
+
+    /**
+     * Stop delivering, delivering anything still queued and writing the mailbox
+     * @param timeoutMillis Longest to wait for the mailbox to be written
+     */
+    public void close(long timeoutMillis)
+    {
+        cancel();
+        run();
+        mailbox.close(timeoutMillis);
+    }
+
+    private void deliverQueued()
+    {
+        // Swapped out so anything delivered while delivering waits for the next tick
+        List<Delivery> deliveries = queued;
+        queued = delivering;
+        delivering = deliveries;
+
+        Map<UUID, List<Delivery>> byPlayer = new LinkedHashMap<>();
+
+        for(Delivery delivery : deliveries)
+            byPlayer.computeIfAbsent(delivery.uuid, uuid -> new ArrayList<>(1)).add(delivery);
+
+        deliveries.clear();
+
+        Map<UUID, List<ItemStack>> mail = new HashMap<>();
+        Map<UUID, List<Delivery>> mailed = new HashMap<>();
+
+        for(Map.Entry<UUID, List<Delivery>> entry : byPlayer.entrySet())
+        {
+            UUID uuid = entry.getKey();
+            List<Delivery> forPlayer = entry.getValue();
+            Player player = plugin.getServer().getPlayer(uuid);
+
+            int size = 0;
+
+            for(Delivery delivery : forPlayer)
+                size += delivery.items.length;
+
+            ItemStack[] items = new ItemStack[size];
+            int next = 0;
+
+            for(Delivery delivery : forPlayer)
+            {
+                System.arraycopy(delivery.items, 0, items, next, delivery.items.length);
+                next += delivery.items.length;
+            }
+
+            // Keyed by the index of each item that didn't fully fit, holding what's left of it
+            Map<Integer, ItemStack> leftovers = player != null && player.isOnline() ? player.getInventory().addItem(items) : null;
+            long now = System.nanoTime();
+            int toMailbox = 0;
+            next = 0;
+
+            for(Delivery delivery : forPlayer)
+            {
+                // A delivery's only complete once every one of its items is somewhere
+                boolean mailing = false;
+
+                for(int i = 0; i < delivery.items.length; i++, next++)
+                {
+                    ItemStack leftover = leftovers == null ? items[next] : leftovers.get(next);
+
+                    if(leftover == null)
+                        continue;
+
+                    mail.computeIfAbsent(uuid, key -> new ArrayList<>(1)).add(leftover);
+                    mailing = true;
+                    toMailbox++;
+                }
+
+                DeliveryDestination destination = mailing ? DeliveryDestination.MAILBOX : DeliveryDestination.INVENTORY;
+
+                if(mailing)
+                    mailed.computeIfAbsent(uuid, key -> new ArrayList<>(1)).add(delivery);
+                else complete(delivery);
+
+                metrics.recordDelivery(destination, delivery.openings);
+                CrateEvents.rewardDelivered(delivery.crate, uuid, delivery.rewardIndex, destination.name(), now - delivery.queuedNanos);
+            }
+
+            if(leftovers != null && toMailbox > 0)
+                player.sendMessage(ChatColor.YELLOW + "Your inventory is full, " + toMailbox + " reward(s) were sent to your mailbox. Make room and use " + ChatColor.GOLD + "/crates claim" + ChatColor.YELLOW + ".");
+        }
+
+        // One write for everything mailed this tick, anything that couldn't be written keeps its checkpoint
+        if(!mail.isEmpty())
+        {
+            mailbox.append(mail).thenAccept(unwritten ->
+            {
+                for(Map.Entry<UUID, List<Delivery>> entry : mailed.entrySet())
+                    if(!unwritten.contains(entry.getKey()))
+                        entry.getValue().forEach(this::complete);
+            });
+        }
+    }
+
+    private void complete(Delivery delivery)
+    {
+        for(long checkpoint : delivery.checkpoints)
+            checkpoints.complete(checkpoint);
+    }
+
+    private void give(Claim claim)
+    {
+        Player player = plugin.getServer().getPlayer(claim.uuid);
+
+        // An earlier claim hasn't been settled yet, so what's left in the mailbox isn't known
+        if(claim.items == null)
+        {
+            if(player != null)
+                player.sendMessage(ChatColor.YELLOW + "Your last mailbox claim is still being settled, please try again in a moment.");
+
+            return;
+        }
+
+        // Nothing was claimed, so there's nothing to settle
+        if(claim.items.isEmpty())
+        {
+            if(player != null)
+                player.sendMessage(ChatColor.GRAY + "Your mailbox is empty.");
+
+            return;
+        }
+
+        // Logged off before the claim was read
+        if(player == null || !player.isOnline())
+        {
+            mailbox.settle(claim.uuid, claim.items);
+            return;
+        }
+
+        int batch = Math.min(CLAIM_BATCH, claim.items.size());
+        List<ItemStack> leftovers = new ArrayList<>(claim.items.subList(batch, claim.items.size()));
+        Map<Integer, ItemStack> unfit = player.getInventory().addItem(claim.items.subList(0, batch).toArray(new ItemStack[0]));
+
+        leftovers.addAll(0, unfit.values());
+        mailbox.settle(claim.uuid, leftovers);
+
+        int given = claim.items.size() - leftovers.size();
+
+        if(given > 0)
+            player.sendMessage(ChatColor.GREEN + "You claimed " + given + " reward(s) from your mailbox.");
+
+        if(!leftovers.isEmpty())
+            player.sendMessage(ChatColor.YELLOW + "You have " + leftovers.size() + " reward(s) left in your mailbox. Make room and use " + ChatColor.GOLD + "/crates claim" + ChatColor.YELLOW + ".");
+    }
+
+    private static class Delivery
+    {
+
+        private final UUID uuid;
+        private final ItemStack[] items;
+        private final String crate;
+
+        // -1 for the rewards of many openings
+        private final int rewardIndex;
+        private final int openings;
+        private final long[] checkpoints;
+        private final long queuedNanos;
+
+        private Delivery(UUID uuid, ItemStack[] items, String crate, int rewardIndex, int openings, long[] checkpoints, long queuedNanos)
+        {
+            this.uuid = uuid;
+            this.items = items;
+            this.crate = crate;
+            this.rewardIndex = rewardIndex;
+            this.openings = openings;
+            this.checkpoints = checkpoints;
+            this.queuedNanos = queuedNanos;
+        }
+
+    }
+
+    private static class Claim
+    {
+
+        private final UUID uuid;
+
+        // Null if an earlier claim was still being settled
+        private final List<ItemStack> items;
+
+        private Claim(UUID uuid, List<ItemStack> items)
+        {
+            this.uuid = uuid;
+            this.items = items;
+        }
+
+    }
+
+}
@@ -0,0 +1,340 @@
+package uk.co.loonyrules.rp.melonco.delivery;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import uk.co.loonyrules.rp.melonco.utils.Items;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent per-player store for rewards that couldn't be given straight away, one YAML file of items per Player.
+ *
+ * Writes are behind and off the main thread. Everything mailed in a tick reaches the I/O thread as one batch, which
+ * touches each Player's file once. A claim moves the file aside until the claimed items are settled, so a crash
+ * part way through a claim puts the items back in the mailbox on the next start rather than losing them.
+ *
+ * A batch is only reported written once it's forced to disk, file and directory, as delivered openings are completed
+ * in the checkpoint journal straight after. Each write still reads and rewrites the Player's whole file, which is fine
+ * while a mailbox only holds what didn't fit in an inventory, but a Player left with thousands of items pays for all
+ * of them on every append.
+ */
+public class Mailbox
+{
+
+    private static final String EXTENSION = ".yml", CLAIMING = ".claiming";
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    private final File directory;
+    private final Logger logger;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "Crates-Mailbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger pending = new AtomicInteger(), failed = new AtomicInteger();
+
+    /**
+     * Initialise the mailbox
+     * @param directory Where the mailbox files are kept
+     * @param logger Where I/O failures are reported
+     */
+    public Mailbox(File directory, Logger logger)
+    {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    /**
+     * Create the mailbox directory and put back any claims that were interrupted by a crash
+     * @throws IOException If the directory can't be created or a claim can't be put back
+     */
+    public void start() throws IOException
+    {
+        Files.createDirectories(directory.toPath());
+
+        File[] claiming = directory.listFiles((dir, name) -> name.endsWith(CLAIMING));
+
+        if(claiming == null)
+            return;
+
+        int restored = 0;
+
+        for(File file : claiming)
+        {
+            UUID uuid;
+
+            try {
+                uuid = UUID.fromString(file.getName().substring(0, file.getName().length() - CLAIMING.length()));
+            } catch (IllegalArgumentException e) {
+                // Not one of ours, left alone rather than stopping every mailbox from starting
+                logger.warning("Skipped " + file + ", it isn't named after a Player");
+                continue;
+            }
+
+            List<ItemStack> items = read(file);
+
+            if(!items.isEmpty())
+                write(uuid, items);
+
+            Files.delete(file.toPath());
+            restored++;
+        }
+
+        if(restored > 0)
+        {
+            forceDirectory();
+            logger.info("Put " + restored + " interrupted mailbox claim(s) back");
+        }
+    }
+
+    /**
+     * Mail items to Players, written behind on the I/O thread. The items must not be touched again by the caller.
+     * @param batch Items to mail to each Player, in order
+     * @return Completed on the I/O thread once written, with the Players whose items couldn't be written
+     */
+    public CompletableFuture<Set<UUID>> append(Map<UUID, List<ItemStack>> batch)
+    {
+        CompletableFuture<Set<UUID>> future = new CompletableFuture<>();
+        int items = batch.values().stream().mapToInt(List::size).sum();
+        pending.addAndGet(items);
+
+        submit(() ->
+        {
+            Set<UUID> unwritten = new HashSet<>();
+
+            for(Map.Entry<UUID, List<ItemStack>> entry : batch.entrySet())
+            {
+                try {
+                    write(entry.getKey(), entry.getValue());
+                } catch (IOException e) {
+                    failed(entry.getKey(), entry.getValue(), e);
+                    unwritten.add(entry.getKey());
+                }
+            }
+
+            // Once for the whole batch, the renames only survive a crash once the directory is forced
+            if(unwritten.size() < batch.size())
+            {
+                try {
+                    forceDirectory();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to force the mailbox directory, the last batch may not survive a crash", e);
+                }
+            }
+
+            pending.addAndGet(-items);
+            future.complete(unwritten);
+        });
+
+        return future;
+    }
+
+    /**
+     * Take everything out of a Player's mailbox. Until {@link #settle(UUID, List)} is called the items are only
+     * moved aside, so they're never lost to a crash.
+     * @param uuid The Player's UUID
+     * @return Completed on the I/O thread with the Player's items, empty if they had none and null if an earlier claim
+     *         is still being settled
+     */
+    public CompletableFuture<List<ItemStack>> claim(UUID uuid)
+    {
+        CompletableFuture<List<ItemStack>> future = new CompletableFuture<>();
+
+        submit(() ->
+        {
+            File file = file(uuid, EXTENSION), claiming = file(uuid, CLAIMING);
+
+            try {
+                // Still settling an earlier claim, which may put items back
+                if(claiming.exists())
+                {
+                    future.complete(null);
+                    return;
+                }
+
+                if(!file.exists())
+                {
+                    future.complete(Collections.emptyList());
+                    return;
+                }
+
+                Files.move(file.toPath(), claiming.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                future.complete(read(claiming));
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Finish a claim, putting back whatever couldn't be given
+     * @param uuid The Player's UUID
+     * @param leftovers Claimed items that weren't given, in order
+     */
+    public void settle(UUID uuid, List<ItemStack> leftovers)
+    {
+        pending.addAndGet(leftovers.size());
+
+        submit(() ->
+        {
+            try {
+                if(!leftovers.isEmpty())
+                    write(uuid, leftovers);
+
+                Files.deleteIfExists(file(uuid, CLAIMING).toPath());
+                forceDirectory();
+            } catch (IOException e) {
+                // The claim file is left in place, so the next start puts the items back
+                logger.log(Level.WARNING, "Failed to settle the mailbox claim of " + uuid + ", it will be put back on the next start", e);
+            }
+
+            pending.addAndGet(-leftovers.size());
+        });
+    }
+
+    /**
+     * Get the amount of items waiting to be written
+     * @return Items mailed but not on disk yet
+     */
+    public int getPending()
+    {
+        return pending.get();
+    }
+
+    /**
+     * Get the amount of items that failed to be written, every one is logged
+     * @return Items that couldn't be written
+     */
+    public int getFailed()
+    {
+        return failed.get();
+    }
+
+    /**
+     * Write everything still pending and stop the I/O thread
+     * @param timeoutMillis Longest to wait for the writes
+     */
+    public void close(long timeoutMillis)
+    {
+        io.shutdown();
+
+        try {
+            if(!io.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS))
+                logger.warning("Timed out writing the mailbox, " + pending.get() + " item(s) weren't written");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(Runnable task)
+    {
+        try {
+            io.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closed, so anything mailed from here is written on the caller's thread
+            task.run();
+        }
+    }
+
+    private File file(UUID uuid, String extension)
+    {
+        return new File(directory, uuid + extension);
+    }
+
+    // Only ever called on the I/O thread, or before it's started
+    private void write(UUID uuid, List<ItemStack> items) throws IOException
+    {
+        File file = file(uuid, EXTENSION), temporary = file(uuid, EXTENSION + ".tmp");
+        List<ItemStack> contents = file.exists() ? read(file) : new ArrayList<>(items.size());
+        contents.addAll(items);
+
+        // The items were handed over by the main thread, so nothing else is touching them while they're serialized
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("items", contents);
+
+        // Written aside, forced and moved into place so a crash never leaves half a mailbox
+        ByteBuffer buffer = ByteBuffer.wrap(yaml.saveToString().getBytes(StandardCharsets.UTF_8));
+
+        try(FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+
+            channel.force(true);
+        }
+
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Makes the renames and deletes in the directory durable
+    private void forceDirectory() throws IOException
+    {
+        // Windows can't open a directory, its renames are as durable as they get there
+        if(WINDOWS)
+            return;
+
+        try(FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private List<ItemStack> read(File file) throws IOException
+    {
+        YamlConfiguration yaml = new YamlConfiguration();
+
+        try {
+            yaml.loadFromString(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } catch (InvalidConfigurationException e) {
+            throw new IOException("Corrupt mailbox " + file, e);
+        }
+
+        List<ItemStack> items = new ArrayList<>();
+        List<?> list = yaml.getList("items");
+
+        if(list != null)
+            for(Object item : list)
+                if(item instanceof ItemStack)
+                    items.add((ItemStack) item);
+
+        return items;
+    }
+
+    private void failed(UUID uuid, List<ItemStack> items, IOException e)
+    {
+        failed.addAndGet(items.size());
+
+        StringBuilder builder = new StringBuilder();
+
+        for(ItemStack item : items)
+            builder.append(builder.length() == 0 ? "" : ", ").append(Items.describe(item));
+
+        logger.log(Level.SEVERE, "Failed to mail " + uuid + " their rewards: " + builder, e);
+    }
+
+}
@@ -0,0 +1,19 @@
+package uk.co.loonyrules.rp.melonco.enums;
+
+/**
+ * Where a reward ended up once it was delivered.
+ */
+public enum DeliveryDestination
+{
+
+    /**
+     * Given straight to the Player
+     */
+    INVENTORY,
+
+    /**
+     * Their inventory was full or they'd logged off, so it's waiting in their mailbox
+     */
+    MAILBOX
+
+}
@@ -0,0 +1,44 @@
+package uk.co.loonyrules.rp.melonco.enums;
+
+/**
+ * What came of a Player right clicking a Crate.
+ */
+public enum InteractResult
+{
+
+    /**
+     * Already opening a Crate, so their opening was shown again
+     */
+    RESUMED,
+
+    /**
+     * Didn't have the Key in their hand
+     */
+    NO_KEY,
+
+    /**
+     * The Crate's onOpen refused the opening
+     */
+    DENIED,
+
+    /**
+     * Too many Crates are being opened at once
+     */
+    FULL,
+
+    /**
+     * The opening couldn't be registered
+     */
+    REJECTED,
+
+    /**
+     * An opening was started
+     */
+    OPENED,
+
+    /**
+     * Sneaking, so every Key they had was opened at once
+     */
+    BULK_OPENED
+
+}
@@ -0,0 +1,29 @@
+package uk.co.loonyrules.rp.melonco.enums;
+
+/**
+ * Where a Crate opening is in its lifecycle. Openings only ever move forwards through these.
+ */
+public enum SessionState
+{
+
+    /**
+     * Validated and created, but not started yet
+     */
+    CREATED,
+
+    /**
+     * Registered and being stepped by the ticker
+     */
+    SPINNING,
+
+    /**
+     * Reward has been revealed, lingering before closing
+     */
+    REVEALED,
+
+    /**
+     * Torn down and removed from the registry
+     */
+    CLOSED
+
+}
@@ -0,0 +1,121 @@
+package uk.co.loonyrules.rp.melonco.jfr;
+
+import java.util.UUID;
+
+/**
+ * Emits Java Flight Recorder events for the Crate opening lifecycle, so Crate activity can be lined up with GC and
+ * scheduler activity in a recording. Every event is disabled by default, enable them in a recording's settings
+ * under the "Crates" category. While disabled each call is a single check, and nothing is built.
+ * On a JVM without Flight Recorder these do nothing.
+ */
+public final class CrateEvents
+{
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private CrateEvents()
+    {
+    }
+
+    private static boolean isAvailable()
+    {
+        try {
+            Class.forName("jdk.jfr.Event", false, CrateEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * A Player right clicked a Crate
+     * @param crate Name of the Crate
+     * @param player UUID of the Player
+     * @param result What came of the interact
+     * @param handlerNanos Time spent handling it in nanoseconds
+     */
+    public static void interact(String crate, UUID player, String result, long handlerNanos)
+    {
+        if(AVAILABLE && Recorder.INTERACT.isEnabled())
+            Recorder.interact(crate, player, result, handlerNanos);
+    }
+
+    /**
+     * The item a Player opened a Crate with was checked against its Key
+     * @param crate Name of the Crate
+     * @param player UUID of the Player
+     * @param valid Whether it was the Key
+     */
+    public static void keyValidated(String crate, UUID player, boolean valid)
+    {
+        if(AVAILABLE && Recorder.KEY_VALIDATED.isEnabled())
+            Recorder.keyValidated(crate, player, valid);
+    }
+
+    /**
+     * A Crate opening was registered and its spin worked out
+     * @param crate Name of the Crate
+     * @param player UUID of the Player
+     * @param seed Seed of the spin
+     * @param steps Steps the opening will take
+     */
+    public static void sessionCreated(String crate, UUID player, long seed, int steps)
+    {
+        if(AVAILABLE && Recorder.SESSION_CREATED.isEnabled())
+            Recorder.sessionCreated(crate, player, seed, steps);
+    }
+
+    /**
+     * A Crate opening sent its first frame and opened its inventory
+     * @param crate Name of the Crate
+     * @param player UUID of the Player
+     * @param nanos Time from starting the opening in nanoseconds
+     */
+    public static void firstFrame(String crate, UUID player, long nanos)
+    {
+        if(AVAILABLE && Recorder.FIRST_FRAME.isEnabled())
+            Recorder.firstFrame(crate, player, nanos);
+    }
+
+    /**
+     * A Crate opening revealed its reward
+     * @param crate Name of the Crate
+     * @param player UUID of the Player
+     * @param reward Index of the reward
+     * @param rarity Rarity of the reward
+     * @param nanos Time from starting the opening in nanoseconds
+     */
+    public static void reveal(String crate, UUID player, int reward, String rarity, long nanos)
+    {
+        if(AVAILABLE && Recorder.REVEAL.isEnabled())
+            Recorder.reveal(crate, player, reward, rarity, nanos);
+    }
+
+    /**
+     * A reward was given to a Player
+     * @param crate Name of the Crate
+     * @param player UUID of the Player
+     * @param reward Index of the reward, -1 for the rewards of a bulk opening
+     * @param destination Where the reward went
+     * @param nanos Time from the reveal in nanoseconds
+     */
+    public static void rewardDelivered(String crate, UUID player, int reward, String destination, long nanos)
+    {
+        if(AVAILABLE && Recorder.REWARD_DELIVERED.isEnabled())
+            Recorder.rewardDelivered(crate, player, reward, destination, nanos);
+    }
+
+    /**
+     * A Crate opening was closed and unregistered
+     * @param crate Name of the Crate
+     * @param player UUID of the Player
+     * @param finalState State the opening reached before closing
+     * @param nanos Lifetime of the opening in nanoseconds
+     */
+    public static void sessionTeardown(String crate, UUID player, String finalState, long nanos)
+    {
+        if(AVAILABLE && Recorder.SESSION_TEARDOWN.isEnabled())
+            Recorder.sessionTeardown(crate, player, finalState, nanos);
+    }
+
+}
@@ -0,0 +1,30 @@
+package uk.co.loonyrules.rp.melonco.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A Player right clicked a Crate.
+ */
+@Name("uk.co.loonyrules.rp.melonco.Interact")
+@Label("Crate Interact")
+@Category({ "Crates" })
+@Description("A Player right clicked a Crate.")
+@Enabled(false)
+@StackTrace(false)
+class CrateInteractEvent extends Event
+{
+
+    @Label("Crate")
+    String crate;
+
+    @Label("Player")
+    String player;
+
+    @Label("Result")
+    String result;
+
+    @Label("Handler Time")
+    @Timespan
+    long handlerTime;
+
+}
@@ -0,0 +1,27 @@
+package uk.co.loonyrules.rp.melonco.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A Crate opening sent its first frame and opened its inventory.
+ */
+@Name("uk.co.loonyrules.rp.melonco.FirstFrame")
+@Label("First Frame")
+@Category({ "Crates" })
+@Description("A Crate opening sent its first frame and opened its inventory.")
+@Enabled(false)
+@StackTrace(false)
+class FirstFrameEvent extends Event
+{
+
+    @Label("Crate")
+    String crate;
+
+    @Label("Player")
+    String player;
+
+    @Label("Time To First Frame")
+    @Timespan
+    long timeToFirstFrame;
+
+}
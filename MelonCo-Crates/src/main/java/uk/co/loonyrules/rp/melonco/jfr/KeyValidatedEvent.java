@@ -0,0 +1,26 @@
+package uk.co.loonyrules.rp.melonco.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The item a Player opened a Crate with was checked against its Key.
+ */
+@Name("uk.co.loonyrules.rp.melonco.KeyValidated")
+@Label("Key Validated")
+@Category({ "Crates" })
+@Description("The item a Player opened a Crate with was checked against its Key.")
+@Enabled(false)
+@StackTrace(false)
+class KeyValidatedEvent extends Event
+{
+
+    @Label("Crate")
+    String crate;
+
+    @Label("Player")
+    String player;
+
+    @Label("Valid")
+    boolean valid;
+
+}
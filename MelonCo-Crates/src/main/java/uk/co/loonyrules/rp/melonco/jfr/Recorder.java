@@ -0,0 +1,96 @@
+package uk.co.loonyrules.rp.melonco.jfr;
+
+import jdk.jfr.EventType;
+
+import java.util.UUID;
+
+/**
+ * Builds and commits the events. Only loaded once {@link CrateEvents} knows Flight Recorder is there.
+ */
+final class Recorder
+{
+
+    static final EventType
+            INTERACT = EventType.getEventType(CrateInteractEvent.class),
+            KEY_VALIDATED = EventType.getEventType(KeyValidatedEvent.class),
+            SESSION_CREATED = EventType.getEventType(SessionCreatedEvent.class),
+            FIRST_FRAME = EventType.getEventType(FirstFrameEvent.class),
+            REVEAL = EventType.getEventType(RevealEvent.class),
+            REWARD_DELIVERED = EventType.getEventType(RewardDeliveredEvent.class),
+            SESSION_TEARDOWN = EventType.getEventType(SessionTeardownEvent.class);
+
+    private Recorder()
+    {
+    }
+
+    static void interact(String crate, UUID player, String result, long handlerNanos)
+    {
+        CrateInteractEvent event = new CrateInteractEvent();
+        event.crate = crate;
+        event.player = player.toString();
+        event.result = result;
+        event.handlerTime = handlerNanos;
+        event.commit();
+    }
+
+    static void keyValidated(String crate, UUID player, boolean valid)
+    {
+        KeyValidatedEvent event = new KeyValidatedEvent();
+        event.crate = crate;
+        event.player = player.toString();
+        event.valid = valid;
+        event.commit();
+    }
+
+    static void sessionCreated(String crate, UUID player, long seed, int steps)
+    {
+        SessionCreatedEvent event = new SessionCreatedEvent();
+        event.crate = crate;
+        event.player = player.toString();
+        event.seed = seed;
+        event.steps = steps;
+        event.commit();
+    }
+
+    static void firstFrame(String crate, UUID player, long nanos)
+    {
+        FirstFrameEvent event = new FirstFrameEvent();
+        event.crate = crate;
+        event.player = player.toString();
+        event.timeToFirstFrame = nanos;
+        event.commit();
+    }
+
+    static void reveal(String crate, UUID player, int reward, String rarity, long nanos)
+    {
+        RevealEvent event = new RevealEvent();
+        event.crate = crate;
+        event.player = player.toString();
+        event.reward = reward;
+        event.rarity = rarity;
+        event.openToReveal = nanos;
+        event.commit();
+    }
+
+    static void rewardDelivered(String crate, UUID player, int reward, String destination, long nanos)
+    {
+        RewardDeliveredEvent event = new RewardDeliveredEvent();
+        event.crate = crate;
+        event.player = player.toString();
+        event.reward = reward;
+        event.destination = destination;
+        event.revealToDelivery = nanos;
+        event.commit();
+    }
+
+    static void sessionTeardown(String crate, UUID player, String finalState, long nanos)
+    {
+        SessionTeardownEvent event = new SessionTeardownEvent();
+        event.crate = crate;
+        event.player = player.toString();
+        event.finalState = finalState;
+        event.lifetime = nanos;
+        event.commit();
+    }
+
+}
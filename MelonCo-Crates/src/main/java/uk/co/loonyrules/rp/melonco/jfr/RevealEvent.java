@@ -0,0 +1,33 @@
+package uk.co.loonyrules.rp.melonco.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A Crate opening revealed its reward.
+ */
+@Name("uk.co.loonyrules.rp.melonco.Reveal")
+@Label("Reveal")
+@Category({ "Crates" })
+@Description("A Crate opening revealed its reward.")
+@Enabled(false)
+@StackTrace(false)
+class RevealEvent extends Event
+{
+
+    @Label("Crate")
+    String crate;
+
+    @Label("Player")
+    String player;
+
+    @Label("Reward")
+    int reward;
+
+    @Label("Rarity")
+    String rarity;
+
+    @Label("Open To Reveal")
+    @Timespan
+    long openToReveal;
+
+}
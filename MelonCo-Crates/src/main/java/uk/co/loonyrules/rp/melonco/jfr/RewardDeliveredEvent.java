@@ -0,0 +1,33 @@
+package uk.co.loonyrules.rp.melonco.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A reward was given to a Player.
+ */
+@Name("uk.co.loonyrules.rp.melonco.RewardDelivered")
+@Label("Reward Delivered")
+@Category({ "Crates" })
+@Description("A reward was given to a Player.")
+@Enabled(false)
+@StackTrace(false)
+class RewardDeliveredEvent extends Event
+{
+
+    @Label("Crate")
+    String crate;
+
+    @Label("Player")
+    String player;
+
+    @Label("Reward")
+    int reward;
+
+    @Label("Destination")
+    String destination;
+
+    @Label("Reveal To Delivery")
+    @Timespan
+    long revealToDelivery;
+
+}
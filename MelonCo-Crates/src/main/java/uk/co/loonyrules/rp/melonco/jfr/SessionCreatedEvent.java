@@ -0,0 +1,29 @@
+package uk.co.loonyrules.rp.melonco.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A Crate opening was registered and its spin worked out.
+ */
+@Name("uk.co.loonyrules.rp.melonco.SessionCreated")
+@Label("Session Created")
+@Category({ "Crates" })
+@Description("A Crate opening was registered and its spin worked out.")
+@Enabled(false)
+@StackTrace(false)
+class SessionCreatedEvent extends Event
+{
+
+    @Label("Crate")
+    String crate;
+
+    @Label("Player")
+    String player;
+
+    @Label("Seed")
+    long seed;
+
+    @Label("Steps")
+    int steps;
+
+}
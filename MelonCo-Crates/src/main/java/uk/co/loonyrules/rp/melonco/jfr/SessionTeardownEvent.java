@@ -0,0 +1,30 @@
+package uk.co.loonyrules.rp.melonco.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A Crate opening was closed and unregistered.
+ */
+@Name("uk.co.loonyrules.rp.melonco.SessionTeardown")
+@Label("Session Teardown")
+@Category({ "Crates" })
+@Description("A Crate opening was closed and unregistered.")
+@Enabled(false)
+@StackTrace(false)
+class SessionTeardownEvent extends Event
+{
+
+    @Label("Crate")
+    String crate;
+
+    @Label("Player")
+    String player;
+
+    @Label("Final State")
+    String finalState;
+
+    @Label("Lifetime")
+    @Timespan
+    long lifetime;
+
+}
@@ -0,0 +1,561 @@
+package uk.co.loonyrules.rp.melonco.keys;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+/**
+ * Virtual Keys. Balances are loaded off the main thread as Players log in, cached while they're online and evicted
+ * once they leave, so checking and taking a Key on the main thread never touches the disk.
+ *
+ * Changes are written behind. Every {@link #PERIOD} the changes to every cached balance are gathered into one batch
+ * for the I/O thread, which writes it with one read and write per {@link KeyStore} shard. Loads run on the same
+ * thread, so a Player always loads their balance with every change queued before it, and a shard that fails is
+ * kept and folded into the next batch.
+ *
+ * Keys given in bulk are written straight to the store by a {@link KeyGrant}, and applied to the balances cached
+ * before them by comparing shard versions.
+ */
+public class KeyService extends BukkitRunnable
+{
+
+    /**
+     * How often changes are written, in ticks
+     */
+    public static final long PERIOD = 20L * 5;
+
+    /**
+     * How long a balance loaded for a login that never joined is kept before it's evicted
+     */
+    private static final long LOGIN_GRACE = TimeUnit.MINUTES.toMillis(1);
+
+    private final Plugin plugin;
+    private final KeyStore store;
+    private final File grants;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "Crates-Keys");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<UUID, KeyBalance> cached = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> loadedAt = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger(), failed = new AtomicInteger();
+
+    // Only touched by the I/O thread
+    private Map<UUID, ObjectIntMap<String>> unwritten = new HashMap<>();
+
+    // Only one bulk grant runs at a time
+    private final AtomicReference<KeyGrant> granting = new AtomicReference<>();
+
+    /**
+     * Initialise a KeyService
+     * @param plugin The plugin
+     * @param store Where balances are kept
+     * @param grants Where the Player lists for bulk grants are read from
+     */
+    public KeyService(Plugin plugin, KeyStore store, File grants)
+    {
+        this.plugin = plugin;
+        this.store = store;
+        this.grants = grants;
+    }
+
+    /**
+     * Load a Player's balance into the cache, blocking. Called as they log in, off the main thread.
+     * @param uuid The Player's UUID
+     * @throws IOException If their balance can't be loaded
+     */
+    public void load(UUID uuid) throws IOException
+    {
+        // Logging in again before their last session was evicted, which is kept for this login
+        if(cached.computeIfPresent(uuid, (key, balance) ->
+        {
+            loadedAt.put(key, System.currentTimeMillis());
+            return balance;
+        }) != null)
+            return;
+
+        try {
+            submit(() -> loadNow(uuid)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted loading the Keys of " + uuid, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Load the balances of every Player already online, for when the plugin is enabled while they are
+     */
+    public void loadOnline()
+    {
+        // Any that have left by the time they're loaded are swept up after the LOGIN_GRACE
+        for(Player player : plugin.getServer().getOnlinePlayers())
+        {
+            UUID uuid = player.getUniqueId();
+            submit(() -> loadNow(uuid));
+        }
+    }
+
+    /**
+     * Get a Player's cached balance
+     * @param uuid The Player's UUID
+     * @return Their balance, if it's loaded
+     */
+    public Optional<KeyBalance> get(UUID uuid)
+    {
+        return Optional.ofNullable(cached.get(uuid));
+    }
+
+    /**
+     * Find out whether a Player has a Key for a Crate, in memory
+     * @param uuid The Player's UUID
+     * @param crate Name of the Crate
+     * @return True if their balance is loaded and has a Key
+     */
+    public boolean has(UUID uuid, String crate)
+    {
+        KeyBalance balance = cached.get(uuid);
+        return balance != null && balance.get(crate) > 0;
+    }
+
+    /**
+     * Take a Key for a Crate from a Player, in memory. Main thread only.
+     * @param uuid The Player's UUID
+     * @param crate Name of the Crate
+     * @return True: A Key was taken. False: Their balance isn't loaded or hasn't got one.
+     */
+    public boolean take(UUID uuid, String crate)
+    {
+        KeyBalance balance = cached.get(uuid);
+        return balance != null && balance.take(crate);
+    }
+
+    /**
+     * Take up to an amount of Keys for a Crate from a Player, in memory. Main thread only.
+     * @param uuid The Player's UUID
+     * @param crate Name of the Crate
+     * @param amount Most Keys to take
+     * @return Amount of Keys taken, 0 if their balance isn't loaded or hasn't got any
+     */
+    public int take(UUID uuid, String crate, int amount)
+    {
+        KeyBalance balance = cached.get(uuid);
+        return balance == null ? 0 : balance.take(crate, amount);
+    }
+
+    /**
+     * Give a Player Keys, whether they're online or not. Main thread only.
+     * @param uuid The Player's UUID
+     * @param crate Name of the Crate
+     * @param amount Amount of Keys, negative to take them
+     */
+    public void give(UUID uuid, String crate, int amount)
+    {
+        ObjectIntMap<String> keys = new ObjectIntMap<>(1);
+        keys.put(crate, amount);
+
+        Map<UUID, ObjectIntMap<String>> grants = new HashMap<>(2);
+        grants.put(uuid, keys);
+
+        give(grants);
+    }
+
+    /**
+     * Give Players Keys, whether they're online or not. Main thread only.
+     * @param grants Keys to give each Player, by Crate name. Negative amounts take them.
+     * @return Completed once every grant is cached or written, exceptionally if they'll only be written by a retry
+     */
+    public CompletableFuture<Void> give(Map<UUID, ObjectIntMap<String>> grants)
+    {
+        Map<UUID, ObjectIntMap<String>> uncached = new HashMap<>();
+
+        for(Map.Entry<UUID, ObjectIntMap<String>> entry : grants.entrySet())
+        {
+            KeyBalance balance = cached.get(entry.getKey());
+
+            if(balance != null)
+                entry.getValue().forEach(balance::add);
+            else uncached.put(entry.getKey(), entry.getValue());
+        }
+
+        if(uncached.isEmpty())
+            return CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        // A balance may be loaded while these are written, only a balance loaded before them needs them applying
+        write(uncached, (versions, throwable) ->
+        {
+            plugin.getServer().getScheduler().runTask(plugin, () ->
+            {
+                for(Map.Entry<UUID, ObjectIntMap<String>> entry : uncached.entrySet())
+                {
+                    KeyBalance loaded = cached.get(entry.getKey());
+                    long writtenAt = versions[KeyStore.shardOf(entry.getKey())];
+
+                    if(loaded != null)
+                        entry.getValue().forEach((crate, amount) -> loaded.addWritten(crate, amount, writtenAt));
+                }
+            });
+
+            if(throwable == null)
+                future.complete(null);
+            else future.completeExceptionally(throwable);
+        });
+
+        return future;
+    }
+
+    /**
+     * Give Keys for a Crate to every Player listed in a file, in the background. Most of them are expected to be
+     * offline, so the Keys are written straight to the store in batches rather than one Player at a time.
+     * @param file Name of the file in the grants folder, one UUID per line
+     * @param crate Name of the Crate
+     * @param amount Amount of Keys each Player is given, more than 0
+     * @return The grant, for following its progress
+     * @throws IOException If the file can't be opened
+     * @throws IllegalArgumentException If the amount isn't more than 0
+     * @throws IllegalStateException If a grant is already running
+     */
+    public KeyGrant grant(String file, String crate, int amount) throws IOException
+    {
+        if(amount <= 0)
+            throw new IllegalArgumentException("A grant has to give at least one Key, got " + amount);
+
+        File source = new File(grants, file);
+
+        // Only ever reading Player lists from the grants folder
+        if(!source.getCanonicalFile().toPath().startsWith(grants.getCanonicalFile().toPath()))
+            throw new FileNotFoundException(file + " isn't in " + grants);
+
+        BufferedReader reader = Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8);
+        KeyGrant grant = new KeyGrant(store, crate, amount, new File(source.getPath() + ".failed"),
+                (shard, uuids, count, version) -> granted(uuids, count, crate, amount, version), plugin.getLogger());
+
+        if(!granting.compareAndSet(null, grant))
+        {
+            reader.close();
+            throw new IllegalStateException("Keys are already being given to " + String.format("%,d", granting.get().getRead()) + " Player(s).");
+        }
+
+        Thread thread = new Thread(() ->
+        {
+            try(BufferedReader closing = reader)
+            {
+                grant.run(closing);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to read " + source + ", giving Keys to the " + grant.getRead() + " Player(s) read", e);
+            } finally {
+                granting.compareAndSet(grant, null);
+            }
+        }, "Crates-Grants");
+
+        thread.setDaemon(true);
+        thread.start();
+
+        return grant;
+    }
+
+    /**
+     * Get the bulk grant that's running
+     * @return The grant, if one's running
+     */
+    public Optional<KeyGrant> getGrant()
+    {
+        return Optional.ofNullable(granting.get());
+    }
+
+    // Called on the grant's writer thread as a shard is written
+    private void granted(long[] uuids, int count, String crate, int amount, long version)
+    {
+        long[] written = Arrays.copyOf(uuids, count * 2);
+
+        // Queued behind any load of the shard that read it before this write, so those balances are already cached
+        try {
+            io.execute(() ->
+            {
+                List<UUID> online = new ArrayList<>();
+
+                for(int i = 0; i < count; i++)
+                {
+                    UUID uuid = new UUID(written[i * 2], written[i * 2 + 1]);
+
+                    if(cached.containsKey(uuid))
+                        online.add(uuid);
+                }
+
+                if(online.isEmpty())
+                    return;
+
+                plugin.getServer().getScheduler().runTask(plugin, () ->
+                {
+                    for(UUID uuid : online)
+                    {
+                        KeyBalance balance = cached.get(uuid);
+
+                        if(balance != null)
+                            balance.addWritten(crate, amount, version);
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down, there are no balances left to apply them to
+        }
+    }
+
+    /**
+     * Drop a Player's balance from the cache once they've left, writing its changes behind. Main thread only.
+     * @param uuid The Player's UUID
+     * @param leftAt When they left, in milliseconds. Their balance is kept if they've logged in again since.
+     */
+    public void evict(UUID uuid, long leftAt)
+    {
+        KeyBalance[] evicted = new KeyBalance[1];
+
+        // Atomic with load, so a login that's found the balance cached always keeps it
+        cached.computeIfPresent(uuid, (key, balance) ->
+        {
+            if(loadedAt.getOrDefault(key, 0L) >= leftAt)
+                return balance;
+
+            loadedAt.remove(key);
+            evicted[0] = balance;
+            return null;
+        });
+
+        KeyBalance balance = evicted[0];
+
+        if(balance == null)
+            return;
+
+        ObjectIntMap<String> changes = balance.drainChanges();
+
+        if(changes != null)
+        {
+            Map<UUID, ObjectIntMap<String>> batch = new HashMap<>(2);
+            batch.put(uuid, changes);
+            write(batch, null);
+        }
+    }
+
+    /**
+     * Get the amount of balances cached
+     * @return Players with their balance loaded
+     */
+    public int size()
+    {
+        return cached.size();
+    }
+
+    /**
+     * Get the amount of Players with changes waiting to be written
+     * @return Players queued or held back by a failure
+     */
+    public int getPending()
+    {
+        return pending.get();
+    }
+
+    /**
+     * Get the amount of batches that failed to be written, they're retried with the next one
+     * @return Failed batches
+     */
+    public int getFailed()
+    {
+        return failed.get();
+    }
+
+    @Override
+    public void run()
+    {
+        long now = System.currentTimeMillis();
+        Map<UUID, ObjectIntMap<String>> batch = new HashMap<>();
+
+        for(Map.Entry<UUID, KeyBalance> entry : cached.entrySet())
+        {
+            UUID uuid = entry.getKey();
+
+            // Loaded for a login that was refused after it was loaded, checked atomically with a login finding it
+            if(plugin.getServer().getPlayer(uuid) == null)
+            {
+                cached.computeIfPresent(uuid, (key, balance) ->
+                {
+                    if(now - loadedAt.getOrDefault(key, now) <= LOGIN_GRACE)
+                        return balance;
+
+                    loadedAt.remove(key);
+                    return null;
+                });
+            }
+
+            ObjectIntMap<String> changes = entry.getValue().drainChanges();
+
+            if(changes != null)
+                batch.put(uuid, changes);
+        }
+
+        if(!batch.isEmpty())
+            write(batch, null);
+    }
+
+    /**
+     * Stop writing behind, writing every cached change and waiting for the I/O thread
+     * @param timeoutMillis Longest to wait for the writes
+     */
+    public void close(long timeoutMillis)
+    {
+        // What a grant has already read is still written, straight to the store
+        KeyGrant grant = granting.get();
+
+        if(grant != null)
+        {
+            grant.cancel();
+            plugin.getLogger().warning("Stopped giving " + grant.getCrate() + " Keys after reading " + grant.getRead() + " Player(s)");
+        }
+
+        cancel();
+        run();
+        io.shutdown();
+
+        try {
+            if(!io.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS))
+                plugin.getLogger().warning("Timed out writing Keys, the changes of " + pending.get() + " Player(s) weren't written");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if(!unwritten.isEmpty())
+            plugin.getLogger().severe("Failed to write the Key changes of " + unwritten.size() + " Player(s): " + unwritten);
+    }
+
+    private void write(Map<UUID, ObjectIntMap<String>> batch, WriteCallback callback)
+    {
+        pending.addAndGet(batch.size());
+
+        submit(() ->
+        {
+            pending.addAndGet(-batch.size() - unwritten.size());
+
+            // Folding this batch into whatever failed before, so nothing is written out of order
+            Map<UUID, ObjectIntMap<String>>[] shards = KeyStore.group(unwritten.isEmpty() ? batch : merge(unwritten, batch));
+            long[] versions = new long[KeyStore.SHARDS];
+            IOException failure = null;
+
+            unwritten = new HashMap<>();
+
+            for(int shard = 0; shard < KeyStore.SHARDS; shard++)
+            {
+                if(shards[shard] == null)
+                    continue;
+
+                try {
+                    store.applyShard(shard, shards[shard], versions);
+                } catch (IOException e) {
+                    failure = e;
+                    unwritten.putAll(shards[shard]);
+                }
+            }
+
+            if(failure != null)
+            {
+                plugin.getLogger().log(Level.SEVERE, "Failed to write the Key changes of " + unwritten.size() + " Player(s), retrying with the next batch", failure);
+                failed.incrementAndGet();
+                pending.addAndGet(unwritten.size());
+            }
+
+            if(callback != null)
+                callback.written(versions, failure);
+
+            return null;
+        });
+    }
+
+    // Only called on the I/O thread
+    private KeyBalance loadNow(UUID uuid) throws IOException
+    {
+        // Logging in again before their last session was evicted
+        KeyBalance balance = cached.get(uuid);
+
+        if(balance != null)
+            return balance;
+
+        long[] versions = new long[KeyStore.SHARDS];
+        ObjectIntMap<String> balances = store.load(uuid, versions);
+        ObjectIntMap<String> held = unwritten.get(uuid);
+
+        // Changes that failed to be written are still theirs
+        if(held != null)
+            held.forEach(balances::add);
+
+        // Cached here rather than by whoever asked, so it's cached before anything written after it is applied
+        balance = new KeyBalance(balances, versions[KeyStore.shardOf(uuid)]);
+        loadedAt.put(uuid, System.currentTimeMillis());
+        cached.put(uuid, balance);
+
+        return balance;
+    }
+
+    // Copies rather than adding to either, as their maps may still be read elsewhere
+    private static Map<UUID, ObjectIntMap<String>> merge(Map<UUID, ObjectIntMap<String>> first, Map<UUID, ObjectIntMap<String>> second)
+    {
+        Map<UUID, ObjectIntMap<String>> merged = new HashMap<>(first.size() + second.size());
+
+        for(Map<UUID, ObjectIntMap<String>> deltas : Arrays.asList(first, second))
+        {
+            for(Map.Entry<UUID, ObjectIntMap<String>> entry : deltas.entrySet())
+            {
+                ObjectIntMap<String> changes = merged.computeIfAbsent(entry.getKey(), uuid -> new ObjectIntMap<>());
+                entry.getValue().forEach(changes::add);
+            }
+        }
+
+        return merged;
+    }
+
+    private <T> Future<T> submit(Callable<T> task)
+    {
+        try {
+            return io.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Keys are no longer being written.", e);
+        }
+    }
+
+    private interface WriteCallback
+    {
+
+        void written(long[] versions, IOException failure);
+
+    }
+
+}
@@ -0,0 +1,29 @@
+package uk.co.loonyrules.rp.melonco.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import uk.co.loonyrules.rp.melonco.delivery.DeliveryService;
+
+/**
+ * Gives Players what's waiting in their mailbox when they join.
+ */
+public class DeliveryListener implements Listener
+{
+
+    private final DeliveryService deliveryService;
+
+    public DeliveryListener(DeliveryService deliveryService)
+    {
+        this.deliveryService = deliveryService;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoinEvent(PlayerJoinEvent event)
+    {
+        // Read off the main thread and given on a later tick
+        deliveryService.claim(event.getPlayer().getUniqueId(), true);
+    }
+
+}
@@ -0,0 +1,62 @@
+package uk.co.loonyrules.rp.melonco.listeners;
+
+import org.bukkit.ChatColor;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import uk.co.loonyrules.rp.melonco.keys.KeyService;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Loads Players' virtual Key balances as they log in and evicts them once they've left.
+ */
+public class KeyListener implements Listener
+{
+
+    private final Plugin plugin;
+    private final KeyService keyService;
+
+    public KeyListener(Plugin plugin, KeyService keyService)
+    {
+        this.plugin = plugin;
+        this.keyService = keyService;
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onAsyncPlayerPreLoginEvent(AsyncPlayerPreLoginEvent event)
+    {
+        // Already refused by something else
+        if(event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED)
+            return;
+
+        // Already off the main thread, so it's fine to wait for their balance here
+        try {
+            keyService.load(event.getUniqueId());
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to load the Keys of " + event.getName(), e);
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, ChatColor.RED + "Failed to load your Crate keys, please try again.");
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuitEvent(PlayerQuitEvent event)
+    {
+        UUID uuid = event.getPlayer().getUniqueId();
+        long leftAt = System.currentTimeMillis();
+
+        // Left for good rather than logging in from somewhere else, which is only known once the quit's done.
+        // A login that's still between pre-login and joining isn't online yet, so the KeyService checks for those.
+        plugin.getServer().getScheduler().runTask(plugin, () ->
+        {
+            if(plugin.getServer().getPlayer(uuid) == null)
+                keyService.evict(uuid, leftAt);
+        });
+    }
+
+}
@@ -0,0 +1,76 @@
+package uk.co.loonyrules.rp.melonco.listeners;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import uk.co.loonyrules.rp.melonco.commands.CratesCommand;
+import uk.co.loonyrules.rp.melonco.locations.PlacedCrates;
+
+/**
+ * Keeps the placed Crates in step with the chunks that are loaded, and stops them being broken by accident.
+ */
+public class PlacedCrateListener implements Listener
+{
+
+    private final PlacedCrates placedCrates;
+
+    public PlacedCrateListener(PlacedCrates placedCrates)
+    {
+        this.placedCrates = placedCrates;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoadEvent(ChunkLoadEvent event)
+    {
+        placedCrates.chunkLoaded(event.getChunk());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onChunkUnloadEvent(ChunkUnloadEvent event)
+    {
+        placedCrates.chunkUnloaded(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoadEvent(WorldLoadEvent event)
+    {
+        placedCrates.worldLoaded(event.getWorld());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onWorldUnloadEvent(WorldUnloadEvent event)
+    {
+        placedCrates.worldUnloaded(event.getWorld());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.HIGH)
+    public void onBlockBreakEvent(BlockBreakEvent event)
+    {
+        if(placedCrates.get(event.getBlock()) == null)
+            return;
+
+        // Only admins can break a placed Crate
+        if(!event.getPlayer().hasPermission(CratesCommand.ADMIN_PERMISSION))
+            event.setCancelled(true);
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBlockBreakMonitor(BlockBreakEvent event)
+    {
+        // Only removed once nothing else can cancel the break, so a protected block never loses its Crate
+        if(placedCrates.get(event.getBlock()) == null)
+            return;
+
+        Player player = event.getPlayer();
+        String crate = placedCrates.remove(event.getBlock());
+        player.sendMessage(ChatColor.GREEN + "Removed the " + ChatColor.YELLOW + crate + ChatColor.GREEN + " Crate placed here.");
+    }
+
+}
@@ -0,0 +1,53 @@
+package uk.co.loonyrules.rp.melonco.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import uk.co.loonyrules.rp.melonco.sessions.BulkOpening;
+import uk.co.loonyrules.rp.melonco.sessions.CrateSession;
+import uk.co.loonyrules.rp.melonco.sessions.SessionRegistry;
+
+import java.util.Optional;
+
+/**
+ * The one Listener for every Crate being opened. Events are routed straight to the owning session
+ * through the {@link SessionRegistry} so nothing is registered or unregistered per opening.
+ */
+public class SessionListener implements Listener
+{
+
+    private final SessionRegistry sessionRegistry;
+
+    public SessionListener(SessionRegistry sessionRegistry)
+    {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    @EventHandler(ignoreCancelled = true)
+    public void onInventoryClickEvent(InventoryClickEvent event)
+    {
+        // Not a valid item
+        if(event.getClickedInventory() == null || event.getCurrentItem() == null)
+            return;
+
+        // Disallowing entirely if they have a Crate inventory or a bulk opening's summary open
+        if(event.getInventory().getHolder() instanceof CrateSession || event.getInventory().getHolder() instanceof BulkOpening)
+            event.setCancelled(true);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuitEvent(PlayerQuitEvent event)
+    {
+        Optional<CrateSession> sessionOptional = sessionRegistry.get(event.getPlayer().getUniqueId());
+
+        // Not opening a Crate
+        if(!sessionOptional.isPresent())
+            return;
+
+        // Cutting the opening short, their reward is sent to their mailbox
+        sessionOptional.get().unregister();
+    }
+
+}
@@ -0,0 +1,176 @@
+package uk.co.loonyrules.rp.melonco.locations;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The Crates placed at specific blocks, on top of {@link CrateLocations}. Looked up and changed on the main thread
+ * only, every change is saved off it with the whole file written in one go, as there are only ever a few hundred.
+ */
+public class PlacedCrates
+{
+
+    private final File file;
+    private final Logger logger;
+    private final CrateLocations locations;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "Crates-Locations");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private PlacedCrates(File file, Logger logger, CrateLocations locations)
+    {
+        this.file = file;
+        this.logger = logger;
+        this.locations = locations;
+    }
+
+    /**
+     * Load the placed Crates, blocking
+     * @param file Where they're saved
+     * @param logger Where failed saves are logged
+     * @return The placed Crates, none of them clickable until their chunks are marked as loaded
+     * @throws IOException If the file can't be read
+     */
+    public static PlacedCrates load(File file, Logger logger) throws IOException
+    {
+        return new PlacedCrates(file, logger, CrateLocations.load(file));
+    }
+
+    /**
+     * Get the Crate placed at a block
+     * @param block The block
+     * @return Name of the Crate, null if there isn't one
+     */
+    public String get(Block block)
+    {
+        return locations.get(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * Place a Crate at a block
+     * @param block The block
+     * @param crate Name of the Crate
+     * @return Name of the Crate that was there before, null if there wasn't one
+     */
+    public String set(Block block, String crate)
+    {
+        String old = locations.put(block.getWorld().getName(), block.getX(), block.getY(), block.getZ(), crate, true);
+        save();
+
+        return old;
+    }
+
+    /**
+     * Remove the Crate placed at a block
+     * @param block The block
+     * @return Name of the Crate that was there, null if there wasn't one
+     */
+    public String remove(Block block)
+    {
+        String old = locations.remove(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+
+        if(old != null)
+            save();
+
+        return old;
+    }
+
+    /**
+     * Make the Crates in a loaded chunk clickable
+     * @param chunk The chunk
+     */
+    public void chunkLoaded(Chunk chunk)
+    {
+        locations.chunkLoaded(chunk.getWorld().getName(), chunk.getX(), chunk.getZ());
+    }
+
+    /**
+     * Stop the Crates in an unloaded chunk being looked up
+     * @param chunk The chunk
+     */
+    public void chunkUnloaded(Chunk chunk)
+    {
+        locations.chunkUnloaded(chunk.getWorld().getName(), chunk.getX(), chunk.getZ());
+    }
+
+    /**
+     * Make the Crates in every loaded chunk of a world clickable, for worlds loaded before these were
+     * @param world The world
+     */
+    public void worldLoaded(World world)
+    {
+        for(Chunk chunk : world.getLoadedChunks())
+            chunkLoaded(chunk);
+    }
+
+    /**
+     * Stop the Crates in an unloaded world being looked up
+     * @param world The world
+     */
+    public void worldUnloaded(World world)
+    {
+        locations.worldUnloaded(world.getName());
+    }
+
+    /**
+     * Get the amount of Crates placed
+     * @return Crates placed in every world
+     */
+    public int size()
+    {
+        return locations.size();
+    }
+
+    /**
+     * Get the amount of placed Crates in loaded chunks
+     * @return Crates that can be clicked
+     */
+    public int loadedSize()
+    {
+        return locations.loadedSize();
+    }
+
+    /**
+     * Wait for the last change to be saved
+     * @param timeoutMillis Longest to wait
+     */
+    public void close(long timeoutMillis)
+    {
+        io.shutdown();
+
+        try {
+            if(!io.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS))
+                logger.warning("Timed out saving the placed Crates to " + file);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Snapshotted here on the main thread, the I/O thread only ever sees the bytes
+    private void save()
+    {
+        byte[] contents = locations.toBytes();
+
+        io.execute(() ->
+        {
+            try {
+                CrateLocations.save(file, contents);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to save the placed Crates to " + file + ", they'll be saved with the next change", e);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,336 @@
+package uk.co.loonyrules.rp.melonco.metrics;
+
+import uk.co.loonyrules.rp.melonco.delivery.Mailbox;
+import uk.co.loonyrules.rp.melonco.enums.DeliveryDestination;
+import uk.co.loonyrules.rp.melonco.ledger.LedgerWriter;
+import uk.co.loonyrules.rp.melonco.sessions.SessionRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for Crates. Everything here can be recorded from any thread without locking or
+ * allocating, and read from any thread for reporting.
+ */
+public class CrateMetrics implements CratesMXBean
+{
+
+    private final LongAdder interacts = new LongAdder(), opens = new LongAdder(), rejectedOpens = new LongAdder(), reveals = new LongAdder();
+    private final LongAdder ticks = new LongAdder(), overBudgetTicks = new LongAdder(), steps = new LongAdder(), degradedFrames = new LongAdder();
+    private final LongAdder deliveredToInventory = new LongAdder(), deliveredToMailbox = new LongAdder();
+    private final LatencyHistogram interactLatency = new LatencyHistogram(), tickLatency = new LatencyHistogram(), openToReveal = new LatencyHistogram();
+
+    private final SessionRegistry sessionRegistry;
+    private final LedgerWriter ledgerWriter;
+    private final Mailbox mailbox;
+    private final long tickBudgetNanos;
+    private volatile long lastTickNanos;
+
+    // Worked out by sample()
+    private volatile double opensPerSecond;
+    private long lastOpens, lastSampled = System.nanoTime();
+
+    /**
+     * Initialise the metrics
+     * @param sessionRegistry Registry of Crates being opened, for the session gauges
+     * @param ledgerWriter The ledger, for the ledger gauges
+     * @param mailbox The mailbox, for the mailbox gauges
+     * @param tickBudgetMicros Time each tick can spend stepping openings, in microseconds
+     */
+    public CrateMetrics(SessionRegistry sessionRegistry, LedgerWriter ledgerWriter, Mailbox mailbox, long tickBudgetMicros)
+    {
+        this.sessionRegistry = sessionRegistry;
+        this.ledgerWriter = ledgerWriter;
+        this.mailbox = mailbox;
+        this.tickBudgetNanos = TimeUnit.MICROSECONDS.toNanos(tickBudgetMicros);
+    }
+
+    /**
+     * Record how long handling a Crate interact took
+     * @param nanos Time taken in nanoseconds
+     */
+    public void recordInteract(long nanos)
+    {
+        interacts.increment();
+        interactLatency.record(nanos);
+    }
+
+    /**
+     * Record an opening starting
+     */
+    public void recordOpen()
+    {
+        opens.increment();
+    }
+
+    /**
+     * Record many openings resolved at once without being animated
+     * @param openings Amount of openings
+     */
+    public void recordBulkOpen(int openings)
+    {
+        opens.add(openings);
+    }
+
+    /**
+     * Record an opening that couldn't start
+     */
+    public void recordRejectedOpen()
+    {
+        rejectedOpens.increment();
+    }
+
+    /**
+     * Record an opening revealing its reward
+     * @param nanos Time from the opening starting to the reveal in nanoseconds
+     */
+    public void recordReveal(long nanos)
+    {
+        reveals.increment();
+        openToReveal.record(nanos);
+    }
+
+    /**
+     * Record a reward being delivered
+     * @param destination Where the reward ended up
+     */
+    public void recordDelivery(DeliveryDestination destination)
+    {
+        (destination == DeliveryDestination.INVENTORY ? deliveredToInventory : deliveredToMailbox).increment();
+    }
+
+    /**
+     * Record the rewards of many openings being delivered together
+     * @param destination Where the rewards ended up
+     * @param rewards Amount of rewards
+     */
+    public void recordDelivery(DeliveryDestination destination, int rewards)
+    {
+        (destination == DeliveryDestination.INVENTORY ? deliveredToInventory : deliveredToMailbox).add(rewards);
+    }
+
+    /**
+     * Record a tick of the {@link uk.co.loonyrules.rp.melonco.sessions.SessionTicker}
+     * @param nanos Time the tick spent stepping openings in nanoseconds
+     * @param steps Steps taken
+     * @param degraded Steps that were degraded
+     * @param overBudget Whether the tick went over its budget
+     */
+    public void recordTick(long nanos, int steps, int degraded, boolean overBudget)
+    {
+        ticks.increment();
+        tickLatency.record(nanos);
+        lastTickNanos = nanos;
+        this.steps.add(steps);
+        degradedFrames.add(degraded);
+
+        if(overBudget)
+            overBudgetTicks.increment();
+    }
+
+    /**
+     * Work out the rates since the last sample, called periodically by the {@link MetricsReporter}
+     */
+    public void sample()
+    {
+        long now = System.nanoTime(), total = opens.sum();
+
+        opensPerSecond = (total - lastOpens) / ((now - lastSampled) / 1e9);
+        lastOpens = total;
+        lastSampled = now;
+    }
+
+    /**
+     * Write every metric in the Prometheus text exposition format
+     * @param builder Where the metrics are written to
+     */
+    public void writePrometheus(StringBuilder builder)
+    {
+        new PrometheusWriter(builder)
+                .counter("crates_interacts_total", "Crate interacts handled.", getInteracts())
+                .counter("crates_opens_total", "Crate openings started.", getOpens())
+                .counter("crates_opens_rejected_total", "Crate openings that couldn't start.", getRejectedOpens())
+                .counter("crates_reveals_total", "Crate openings that revealed their reward.", getReveals())
+                .gauge("crates_active_sessions", "Crate openings in progress.", getActiveSessions())
+                .gauge("crates_peak_sessions", "Most Crate openings in progress at once.", getPeakSessions())
+                .summary("crates_interact_seconds", "Time spent handling a Crate interact.", interactLatency)
+                .summary("crates_tick_seconds", "Time each tick spent stepping Crate openings.", tickLatency)
+                .summary("crates_open_to_reveal_seconds", "Time from a Crate opening starting to its reveal.", openToReveal)
+                .counter("crates_delivered_inventory_total", "Rewards given straight to the Player.", getDeliveredToInventory())
+                .counter("crates_delivered_mailbox_total", "Rewards sent to the Player's mailbox.", getDeliveredToMailbox())
+                .gauge("crates_mailbox_pending", "Mailed rewards waiting to be written.", getMailboxPending())
+                .counter("crates_mailbox_failed_total", "Mailed rewards lost to mailbox I/O failures.", getMailboxFailed())
+                .counter("crates_ticks_total", "Ticks that stepped Crate openings.", getTicks())
+                .counter("crates_ticks_over_budget_total", "Ticks that went over their time budget.", getOverBudgetTicks())
+                .counter("crates_steps_total", "Crate opening steps taken.", getSteps())
+                .counter("crates_degraded_frames_total", "Crate opening steps that didn't send a frame to save time.", getDegradedFrames())
+                .gauge("crates_tick_budget_seconds", "Time each tick can spend stepping Crate openings.", getTickBudgetMicros() / 1e6)
+                .gauge("crates_tick_budget_usage", "Fraction of the tick budget the last tick used.", getTickBudgetUsage())
+                .counter("crates_ledger_records_total", "Openings written to the ledger.", getLedgerWritten())
+                .counter("crates_ledger_failed_total", "Openings lost to ledger I/O failures.", getLedgerFailed())
+                .gauge("crates_ledger_pending", "Openings waiting to be written to the ledger.", getLedgerPending());
+    }
+
+    @Override
+    public long getInteracts()
+    {
+        return interacts.sum();
+    }
+
+    @Override
+    public long getOpens()
+    {
+        return opens.sum();
+    }
+
+    @Override
+    public long getRejectedOpens()
+    {
+        return rejectedOpens.sum();
+    }
+
+    @Override
+    public long getReveals()
+    {
+        return reveals.sum();
+    }
+
+    @Override
+    public double getOpensPerSecond()
+    {
+        return opensPerSecond;
+    }
+
+    @Override
+    public int getActiveSessions()
+    {
+        return sessionRegistry.size();
+    }
+
+    @Override
+    public int getPeakSessions()
+    {
+        return sessionRegistry.getPeak();
+    }
+
+    @Override
+    public long getInteractMicrosP50()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(interactLatency.getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getInteractMicrosP99()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(interactLatency.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getTickMicrosP50()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(tickLatency.getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getTickMicrosP99()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(tickLatency.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getTickMicrosMax()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(tickLatency.getMax());
+    }
+
+    @Override
+    public long getOpenToRevealMillisP50()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(openToReveal.getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getOpenToRevealMillisP99()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(openToReveal.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getDeliveredToInventory()
+    {
+        return deliveredToInventory.sum();
+    }
+
+    @Override
+    public long getDeliveredToMailbox()
+    {
+        return deliveredToMailbox.sum();
+    }
+
+    @Override
+    public int getMailboxPending()
+    {
+        return mailbox.getPending();
+    }
+
+    @Override
+    public int getMailboxFailed()
+    {
+        return mailbox.getFailed();
+    }
+
+    @Override
+    public long getTicks()
+    {
+        return ticks.sum();
+    }
+
+    @Override
+    public long getOverBudgetTicks()
+    {
+        return overBudgetTicks.sum();
+    }
+
+    @Override
+    public long getSteps()
+    {
+        return steps.sum();
+    }
+
+    @Override
+    public long getDegradedFrames()
+    {
+        return degradedFrames.sum();
+    }
+
+    @Override
+    public long getTickBudgetMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(tickBudgetNanos);
+    }
+
+    @Override
+    public double getTickBudgetUsage()
+    {
+        return (double) lastTickNanos / tickBudgetNanos;
+    }
+
+    @Override
+    public long getLedgerWritten()
+    {
+        return ledgerWriter.getWritten();
+    }
+
+    @Override
+    public long getLedgerFailed()
+    {
+        return ledgerWriter.getFailed();
+    }
+
+    @Override
+    public long getLedgerPending()
+    {
+        return ledgerWriter.getPending();
+    }
+
+}
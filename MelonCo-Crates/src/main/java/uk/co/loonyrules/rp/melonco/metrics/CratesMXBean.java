@@ -0,0 +1,63 @@
+package uk.co.loonyrules.rp.melonco.metrics;
+
+/**
+ * Crate metrics exposed over JMX, registered as uk.co.loonyrules.rp.melonco:type=Crates
+ */
+public interface CratesMXBean
+{
+
+    long getInteracts();
+
+    long getOpens();
+
+    long getRejectedOpens();
+
+    long getReveals();
+
+    double getOpensPerSecond();
+
+    int getActiveSessions();
+
+    int getPeakSessions();
+
+    long getInteractMicrosP50();
+
+    long getInteractMicrosP99();
+
+    long getTickMicrosP50();
+
+    long getTickMicrosP99();
+
+    long getTickMicrosMax();
+
+    long getOpenToRevealMillisP50();
+
+    long getOpenToRevealMillisP99();
+
+    long getDeliveredToInventory();
+
+    long getDeliveredToMailbox();
+
+    int getMailboxPending();
+
+    int getMailboxFailed();
+
+    long getTicks();
+
+    long getOverBudgetTicks();
+
+    long getSteps();
+
+    long getDegradedFrames();
+
+    long getTickBudgetMicros();
+
+    double getTickBudgetUsage();
+
+    long getLedgerWritten();
+
+    long getLedgerFailed();
+
+    long getLedgerPending();
+
+}
@@ -0,0 +1,62 @@
+package uk.co.loonyrules.rp.melonco.metrics;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+
+/**
+ * Periodically samples the {@link CrateMetrics} and dumps them to a file in the Prometheus text exposition format,
+ * for a node exporter's textfile collector to pick up. The text is built on the main thread and written off it.
+ */
+public class MetricsReporter extends BukkitRunnable
+{
+
+    /**
+     * How often the metrics are dumped, in ticks
+     */
+    public static final long PERIOD = 20L * 10;
+
+    private final Plugin plugin;
+    private final CrateMetrics metrics;
+    private final Path file, temporary;
+
+    public MetricsReporter(Plugin plugin, CrateMetrics metrics, File file)
+    {
+        this.plugin = plugin;
+        this.metrics = metrics;
+        this.file = file.toPath();
+        this.temporary = new File(file.getPath() + ".tmp").toPath();
+    }
+
+    @Override
+    public void run()
+    {
+        metrics.sample();
+
+        StringBuilder builder = new StringBuilder(4096);
+        metrics.writePrometheus(builder);
+
+        byte[] contents = builder.toString().getBytes(StandardCharsets.UTF_8);
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> write(contents));
+    }
+
+    private void write(byte[] contents)
+    {
+        // Written aside and moved into place so a scrape never sees half a file
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(temporary, contents);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to write metrics to " + file, e);
+        }
+    }
+
+}
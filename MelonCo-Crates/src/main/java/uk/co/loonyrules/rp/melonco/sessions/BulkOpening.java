@@ -0,0 +1,210 @@
+package uk.co.loonyrules.rp.melonco.sessions;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Sound;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+import uk.co.loonyrules.rp.melonco.CratesPlugin;
+import uk.co.loonyrules.rp.melonco.builders.ItemBuilder;
+import uk.co.loonyrules.rp.melonco.crates.Crate;
+import uk.co.loonyrules.rp.melonco.engine.BulkOutcome;
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+import uk.co.loonyrules.rp.melonco.enums.Rarity;
+import uk.co.loonyrules.rp.melonco.ledger.LedgerRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Many openings of a {@link Crate} at once, for Players with a pile of Keys. Nothing is animated, so there's no
+ * session, task or inventory held per opening: every outcome is resolved in one pass by a {@link BulkOutcome}, identical
+ * rewards are stacked and delivered as one batch, and the Player is shown a single inventory summing up what they won.
+ *
+ * Each opening is still recorded in the ledger and checkpointed with its own seed, so it's audited and recovered
+ * exactly like a spin. Also the holder of the summary inventory, so it can be recognised from the inventory alone.
+ */
+public class BulkOpening implements InventoryHolder
+{
+
+    /**
+     * Most openings resolved at once
+     */
+    public static final int MAX_OPENINGS = 1000;
+
+    // Longest an inventory title can be
+    private static final int TITLE_LENGTH = 32;
+
+    private final CratesPlugin cratesPlugin;
+    private final Crate crate;
+    private final RewardTable<ItemStack> rewards;
+    private final Player user;
+
+    private Inventory inventory;
+
+    /**
+     * Initialise a bulk opening of a Crate
+     * @param cratesPlugin Instance of the CratesPlugin
+     * @param crate The Crate being opened, which needs a Key
+     * @param user The Player opening the Crate
+     */
+    public BulkOpening(CratesPlugin cratesPlugin, Crate crate, Player user)
+    {
+        if(!crate.requiresKey())
+            throw new IllegalArgumentException("Only a Crate that needs a Key can be opened in bulk.");
+
+        this.cratesPlugin = cratesPlugin;
+        this.crate = crate;
+        this.rewards = crate.getRewards();
+        this.user = user;
+    }
+
+    /**
+     * Get the summary of this opening
+     * @return The summary inventory, null until it's opened
+     */
+    @Override
+    public Inventory getInventory()
+    {
+        return inventory;
+    }
+
+    /**
+     * Count the openings the Player has Keys for, virtual and in their inventory
+     * @return Amount of Keys, however many there are
+     */
+    public int countKeys()
+    {
+        int virtual = cratesPlugin.getKeyService().get(user.getUniqueId()).map(balance -> balance.get(crate.getName())).orElse(0);
+        return virtual + crate.countKeys(user);
+    }
+
+    /**
+     * Open the Crate as many times as the Player has Keys for, up to an amount. Virtual Keys are used first.
+     * @param requested Most openings, capped at {@link #MAX_OPENINGS}
+     * @return Amount of openings, 0 if they hadn't any Keys
+     */
+    public int open(int requested)
+    {
+        UUID uuid = user.getUniqueId();
+        int openings = Math.min(Math.min(requested, MAX_OPENINGS), countKeys());
+
+        if(openings <= 0)
+            return 0;
+
+        BulkOutcome outcome = BulkOutcome.resolve(new SplittableRandom(ThreadLocalRandom.current().nextLong()), rewards, openings);
+
+        // The outcomes are settled from here, so like a spin they're recorded and checkpointed one opening at a time
+        // before any Key is taken, only the delivery is shared
+        long now = System.currentTimeMillis();
+        long[] checkpoints = new long[openings];
+
+        for(int i = 0; i < openings; i++)
+        {
+            long seed = outcome.getSeed(i);
+            int winner = outcome.getWinner(i);
+
+            cratesPlugin.getLedgerWriter().append(new LedgerRecord(now, uuid, crate.getName(), winner, crate.getRewardName(winner), seed));
+            checkpoints[i] = cratesPlugin.getCheckpointJournal().open(now, uuid, crate.getName(), seed, winner);
+        }
+
+        // Counted just above on the main thread, so every Key counted is still there
+        int taken = cratesPlugin.getKeyService().take(uuid, crate.getName(), openings);
+
+        if(taken < openings)
+            crate.takeKeys(user, openings - taken);
+
+        cratesPlugin.getDeliveryService().deliver(uuid, stack(outcome), crate.getName(), openings, checkpoints);
+        cratesPlugin.getMetrics().recordBulkOpen(openings);
+
+        show(outcome);
+        user.sendMessage(ChatColor.GREEN + "You opened the " + crate.getDisplayName() + ChatColor.GREEN + " " + ChatColor.YELLOW + openings + ChatColor.GREEN + " time(s) and won "
+                + outcome.getDistinct() + " different reward(s).");
+        user.playSound(user.getLocation(), Sound.LEVEL_UP, 1f, 1f);
+
+        return openings;
+    }
+
+    // Every reward won, in full stacks
+    private ItemStack[] stack(BulkOutcome outcome)
+    {
+        List<ItemStack> stacks = new ArrayList<>();
+
+        for(int reward = 0; reward < rewards.size(); reward++)
+        {
+            int count = outcome.getCount(reward);
+
+            if(count == 0)
+                continue;
+
+            ItemStack item = rewards.get(reward);
+            long total = (long) count * item.getAmount();
+            int maxStack = Math.max(1, item.getMaxStackSize());
+
+            while(total > 0)
+            {
+                ItemStack stack = item.clone();
+                stack.setAmount((int) Math.min(maxStack, total));
+                stacks.add(stack);
+                total -= stack.getAmount();
+            }
+        }
+
+        return stacks.toArray(new ItemStack[0]);
+    }
+
+    private void show(BulkOutcome outcome)
+    {
+        Integer[] won = new Integer[outcome.getDistinct()];
+        int next = 0;
+
+        for(int reward = 0; reward < rewards.size(); reward++)
+            if(outcome.getCount(reward) > 0)
+                won[next++] = reward;
+
+        // Rarest first, as many as fit
+        Arrays.sort(won, (a, b) -> Double.compare(rewards.getChance(a), rewards.getChance(b)));
+
+        int slots = Math.min(won.length, 6 * 9);
+        inventory = Bukkit.createInventory(this, Math.max(1, (slots + 8) / 9) * 9, title(outcome.size()));
+
+        for(int slot = 0; slot < slots; slot++)
+        {
+            int reward = won[slot], count = outcome.getCount(reward);
+            Rarity rarity = rewards.getRarity(reward);
+
+            inventory.setItem(slot, new ItemBuilder(rewards.get(reward))
+                    .setAmount(Math.min(count, 64))
+                    .appendLores("", ChatColor.getByChar(rarity.getColourCode()) + rarity.getDisplayName(),
+                            String.format(Locale.ROOT, "%sWon %s%,d %stime(s) %s(%.2f%% chance)", ChatColor.GRAY, ChatColor.WHITE, count, ChatColor.GRAY, ChatColor.DARK_GRAY, rewards.getChance(reward) * 100))
+                    .build());
+        }
+
+        user.openInventory(inventory);
+    }
+
+    // The Crate's name cut short to leave room for the count, never splitting a colour code
+    private String title(int openings)
+    {
+        String count = ChatColor.DARK_GRAY + " x" + openings, name = crate.getDisplayName();
+        int room = TITLE_LENGTH - count.length();
+
+        if(name.length() > room)
+        {
+            name = name.substring(0, room);
+
+            if(name.endsWith(String.valueOf(ChatColor.COLOR_CHAR)))
+                name = name.substring(0, name.length() - 1);
+        }
+
+        return name + count;
+    }
+
+}
@@ -0,0 +1,352 @@
+package uk.co.loonyrules.rp.melonco.sessions;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Sound;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+import uk.co.loonyrules.rp.melonco.CratesPlugin;
+import uk.co.loonyrules.rp.melonco.crates.Crate;
+import uk.co.loonyrules.rp.melonco.engine.FrameBuffer;
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+import uk.co.loonyrules.rp.melonco.engine.Spin;
+import uk.co.loonyrules.rp.melonco.engine.SpinTimeline;
+import uk.co.loonyrules.rp.melonco.enums.SessionState;
+import uk.co.loonyrules.rp.melonco.jfr.CrateEvents;
+import uk.co.loonyrules.rp.melonco.ledger.LedgerRecord;
+import uk.co.loonyrules.rp.melonco.utils.Items;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A single opening of a {@link Crate}. Only created once the opening has been validated.
+ * Also the holder of the inventory it renders into so a Crate inventory can be recognised from the inventory alone.
+ */
+public class CrateSession implements InventoryHolder
+{
+
+    private final CratesPlugin cratesPlugin;
+    private final Crate crate;
+    private final RewardTable<ItemStack> rewards;
+    private final Player user;
+
+    private Inventory inventory;
+
+    private Spin spin;
+    private final FrameBuffer.SlotWriter slotWriter = this::writeSlot;
+    private final long createdAt = System.currentTimeMillis();
+    private final long createdNanos = System.nanoTime();
+    private long startedNanos;
+    private long checkpoint = -1;
+    private SessionState state = SessionState.CREATED;
+
+    /**
+     * Initialise an opening of a Crate
+     * @param cratesPlugin Instance of the CratesPlugin
+     * @param crate The Crate being opened
+     * @param user The Player opening the Crate
+     */
+    public CrateSession(CratesPlugin cratesPlugin, Crate crate, Player user)
+    {
+        this.cratesPlugin = cratesPlugin;
+        this.crate = crate;
+        this.rewards = crate.getRewards();
+        this.user = user;
+    }
+
+    /**
+     * Get the Crate being opened
+     * @return The Crate's definition
+     */
+    public Crate getCrate()
+    {
+        return crate;
+    }
+
+    /**
+     * Get the Player that's opening this Crate.
+     * @return Opening this Crate
+     */
+    public Player getUser()
+    {
+        return user;
+    }
+
+    /**
+     * Get the current Inventory instance for this opening
+     * @return Current Inventory.
+     */
+    @Override
+    public Inventory getInventory()
+    {
+        return inventory;
+    }
+
+    /**
+     * Get the precomputed spin for this opening
+     * @return The spin being played, null if it hasn't started
+     */
+    public SpinTimeline getTimeline()
+    {
+        return spin == null ? null : spin.getTimeline();
+    }
+
+    /**
+     * Get the reward this opening will give. This is decided the moment the opening starts.
+     * @return The reward, null if it hasn't started
+     */
+    public ItemStack getOutcome()
+    {
+        return spin == null ? null : rewards.get(spin.getTimeline().getWinner());
+    }
+
+    /**
+     * Found out whether or not this opening is still going.
+     * @return True if it's being opened and false if it's been cancelled or finished.
+     */
+    public boolean isInUse()
+    {
+        return state != SessionState.CLOSED;
+    }
+
+    /**
+     * Get where this opening is in its lifecycle
+     * @return The current state
+     */
+    public SessionState getState()
+    {
+        return state;
+    }
+
+    /**
+     * Get how far through its animation this opening is
+     * @return Progress between 0 and 1, 0 if it hasn't started
+     */
+    public float getProgress()
+    {
+        return spin == null ? 0 : (float) spin.getStepIndex() / spin.getTotalSteps();
+    }
+
+    /**
+     * Get the id of this opening's checkpoint, kept until its reward is delivered
+     * @return Checkpoint id, -1 if it hasn't started
+     */
+    public long getCheckpoint()
+    {
+        return checkpoint;
+    }
+
+    /**
+     * Get when this opening was created
+     * @return Creation time in milliseconds
+     */
+    public long getCreatedAt()
+    {
+        return createdAt;
+    }
+
+    /**
+     * Get how long this opening should take from start to being closed, assuming the server isn't lagging
+     * @return Expected lifetime in ticks, 0 if it hasn't started
+     */
+    public long getExpectedTicks()
+    {
+        return spin == null ? 0 : (long) spin.getTotalSteps() * SessionTicker.STEP_INTERVAL;
+    }
+
+    /**
+     * Find out how many steps are left before revealing their reward
+     * @return Steps before reveal
+     */
+    public long getRevealTicks()
+    {
+        return spin == null ? 0 : spin.getTimeline().getSteps() - spin.getStepIndex();
+    }
+
+    /**
+     * Method that's called when you want to unregister this opening. Safe to call from any path, any amount of times.
+     */
+    public void unregister()
+    {
+        // If this opening is in use, cancel the opening process.
+        if(isInUse())
+            close();
+
+        // Removing this session
+        cratesPlugin.getSessionRegistry().unregister(this);
+    }
+
+    /**
+     * Method called when the opening is being cancelled
+     * @throws IllegalAccessException - Opening isn't in use and tried to be cancelled.
+     */
+    public void cancelOpening() throws IllegalAccessException
+    {
+        // If it's not in use throw an exception
+        if(!isInUse())
+            throw new IllegalAccessException("Cannot cancel a crate opening that doesn't exist.");
+
+        close();
+    }
+
+    private void close()
+    {
+        CrateEvents.sessionTeardown(crate.getName(), user.getUniqueId(), state.name(), System.nanoTime() - createdNanos);
+
+        // The outcome was settled when the spin started, so it's still theirs if the opening ends before the reveal
+        if(state == SessionState.SPINNING)
+            deliver();
+
+        // The SessionTicker drops this opening on its next pass
+        state = SessionState.CLOSED;
+
+        // Removing this session
+        cratesPlugin.getSessionRegistry().unregister(this);
+
+        // Closing the Inventory of this player
+        if(user.isOnline() && inventory != null && inventory.getViewers().contains(user))
+            user.closeInventory();
+
+        inventory = null;
+    }
+
+    /**
+     * Start the opening, building the inventory and working out the spin
+     * @return True: The opening has started. False: The Player is already opening a Crate.
+     */
+    public boolean start()
+    {
+        if(state != SessionState.CREATED)
+            throw new IllegalStateException("A crate opening can only be started once.");
+
+        // Player is already opening another Crate or the registry is full
+        if(!cratesPlugin.getSessionRegistry().register(this))
+        {
+            state = SessionState.CLOSED;
+            cratesPlugin.getMetrics().recordRejectedOpen();
+            return false;
+        }
+
+        // Anything going wrong from here on mustn't leave this opening registered
+        try {
+            begin();
+        } catch (RuntimeException e) {
+            unregister();
+            throw e;
+        }
+
+        return true;
+    }
+
+    private void begin()
+    {
+        startedNanos = System.nanoTime();
+
+        // Opening inventory
+        inventory = Bukkit.createInventory(this, FrameBuffer.SIZE, crate.getDisplayName());
+
+        // Working out the whole spin, including the reward, up front
+        spin = new Spin(ThreadLocalRandom.current().nextLong(), rewards, crate.getTimings());
+        SpinTimeline timeline = spin.getTimeline();
+        CrateEvents.sessionCreated(crate.getName(), user.getUniqueId(), timeline.getSeed(), spin.getTotalSteps());
+
+        // The outcome is settled from here, so it's recorded straight away and the Key is taken. The checkpoint is
+        // kept until the reward is delivered, so a crash before then is settled on the next start.
+        long now = System.currentTimeMillis();
+        cratesPlugin.getLedgerWriter().append(new LedgerRecord(now, user.getUniqueId(), crate.getName(), timeline.getWinner(),
+                crate.getRewardName(timeline.getWinner()), timeline.getSeed()));
+        checkpoint = cratesPlugin.getCheckpointJournal().open(now, user.getUniqueId(), crate.getName(), timeline.getSeed(), timeline.getWinner());
+        if(crate.requiresKey() && !cratesPlugin.getKeyService().take(user.getUniqueId(), crate.getName()))
+            crate.takeKey(user);
+
+        // Spinning as soon as the Key is gone, so if showing the opening fails it's still delivered as it's closed
+        state = SessionState.SPINNING;
+        spin.getFrame().flush(slotWriter);
+
+        user.openInventory(inventory);
+        CrateEvents.firstFrame(crate.getName(), user.getUniqueId(), System.nanoTime() - startedNanos);
+
+        // Handing this opening over to the SessionTicker
+        cratesPlugin.getSessionTicker().add(this);
+        cratesPlugin.getMetrics().recordOpen();
+    }
+
+    /**
+     * Show this opening's inventory to the Player again, for when they've closed it mid spin
+     */
+    public void show()
+    {
+        if(inventory != null)
+            user.openInventory(inventory);
+    }
+
+    /**
+     * Step this opening's animation forward, called by the {@link SessionTicker}
+     * @param degraded Whether the server is short on time. The spin still advances but the frame and cosmetic sounds
+     *                 are held back, the changes are sent with the next full step. The reveal is never degraded.
+     * @return True: The opening still needs stepping. False: The opening is done and can be dropped.
+     */
+    public boolean step(boolean degraded)
+    {
+        // Opening was cancelled elsewhere
+        if(state == SessionState.CLOSED)
+            return false;
+
+        int events = spin.step();
+
+        // Only the slots that changed since the last step are sent to the client, they stay dirty while degraded
+        if(degraded && (events & (Spin.REVEALED | Spin.FINISHED)) == 0)
+            return true;
+
+        spin.getFrame().flush(slotWriter);
+
+        // Finished lingering after the reveal
+        if((events & Spin.FINISHED) != 0)
+        {
+            unregister();
+            return false;
+        }
+
+        // Winning stuff
+        if((events & Spin.REVEALED) != 0)
+        {
+            long openToReveal = System.nanoTime() - startedNanos;
+            int winner = spin.getTimeline().getWinner();
+
+            cratesPlugin.getMetrics().recordReveal(openToReveal);
+            CrateEvents.reveal(crate.getName(), user.getUniqueId(), winner, rewards.getRarity(winner).name(), openToReveal);
+
+            ItemStack reward = getOutcome();
+            int slot = spin.getFrame().getPointer();
+
+            user.sendMessage("You won the item in the slot #" + (slot + 9) + " which is " + (reward.hasItemMeta() && reward.getItemMeta().hasDisplayName() ? reward.getItemMeta().getDisplayName() : reward.getType().toString()));
+            deliver();
+
+            // Because some people like sounds
+            user.playSound(user.getLocation(), Sound.NOTE_BASS_DRUM, 1f, 1f);
+            user.playSound(user.getLocation(), Sound.FIREWORK_BLAST, 1f, 0.23f);
+            user.playSound(user.getLocation(), Sound.VILLAGER_YES, 1f, 1f);
+
+            // Lingers for a little before deregistering this opening
+            state = SessionState.REVEALED;
+            return true;
+        }
+
+        if((events & Spin.POINTER_MOVED) != 0)
+            user.playSound(user.getLocation(), Sound.NOTE_PLING, 1f, 1f);
+
+        return true;
+    }
+
+    private void deliver()
+    {
+        cratesPlugin.getDeliveryService().deliver(user.getUniqueId(), getOutcome(), crate.getName(), spin.getTimeline().getWinner(), checkpoint);
+    }
+
+    private void writeSlot(int slot, int id)
+    {
+        inventory.setItem(slot, id >= 0 ? rewards.get(id) : id == FrameBuffer.POINTER ? Items.POINTER : id == FrameBuffer.PLACEHOLDER ? Items.PLACEHOLDER : null);
+    }
+
+}
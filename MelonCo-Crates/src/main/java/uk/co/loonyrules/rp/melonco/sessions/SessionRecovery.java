@@ -0,0 +1,115 @@
+package uk.co.loonyrules.rp.melonco.sessions;
+
+import org.bukkit.inventory.ItemStack;
+import uk.co.loonyrules.rp.melonco.checkpoint.CheckpointJournal;
+import uk.co.loonyrules.rp.melonco.checkpoint.SpinCheckpoint;
+import uk.co.loonyrules.rp.melonco.crates.Crate;
+import uk.co.loonyrules.rp.melonco.crates.CrateRegistry;
+import uk.co.loonyrules.rp.melonco.delivery.Mailbox;
+import uk.co.loonyrules.rp.melonco.engine.SpinTimeline;
+import uk.co.loonyrules.rp.melonco.enums.DeliveryDestination;
+import uk.co.loonyrules.rp.melonco.metrics.CrateMetrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Settles the openings the server stopped part way through, from their checkpoints. An opening whose seed still
+ * lands on the same reward is resolved and the reward is mailed, if the Crate's rewards have changed since it's
+ * refunded by mailing its Key back instead, or simply completed if the Crate was free to open. Everything goes to
+ * the {@link Mailbox} as one batch, and the checkpoints are only completed once it's been written.
+ */
+public class SessionRecovery
+{
+
+    private final CrateRegistry crateRegistry;
+    private final Mailbox mailbox;
+    private final CheckpointJournal journal;
+    private final CrateMetrics metrics;
+    private final Logger logger;
+
+    public SessionRecovery(CrateRegistry crateRegistry, Mailbox mailbox, CheckpointJournal journal, CrateMetrics metrics, Logger logger)
+    {
+        this.crateRegistry = crateRegistry;
+        this.mailbox = mailbox;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    /**
+     * Settle openings left in progress
+     * @param pending The openings, as returned by {@link CheckpointJournal#start()}
+     */
+    public void recover(List<SpinCheckpoint> pending)
+    {
+        if(pending.isEmpty())
+            return;
+
+        Map<UUID, List<ItemStack>> mail = new HashMap<>();
+        Map<UUID, List<SpinCheckpoint>> settled = new HashMap<>();
+        int resolved = 0, refunded = 0, dropped = 0, unsettled = 0;
+
+        for(SpinCheckpoint checkpoint : pending)
+        {
+            Optional<Crate> crateOptional = crateRegistry.get(checkpoint.getCrate());
+
+            // Kept in the journal in case the Crate comes back
+            if(!crateOptional.isPresent())
+            {
+                logger.warning("Can't settle " + checkpoint + ", its Crate no longer exists");
+                unsettled++;
+                continue;
+            }
+
+            Crate crate = crateOptional.get();
+            ItemStack item;
+
+            // Replaying the seed against the current rewards, indexes only mean the same thing if it still agrees
+            if(checkpoint.getOutcome() < crate.getRewards().size() && SpinTimeline.resolveWinner(checkpoint.getSeed(), crate.getRewards()) == checkpoint.getOutcome())
+            {
+                item = crate.getRewards().get(checkpoint.getOutcome()).clone();
+                resolved++;
+            } else if(crate.requiresKey()) {
+                item = crate.getKey().clone();
+                item.setAmount(1);
+                refunded++;
+            } else {
+                // Nothing was paid to open it, so there's nothing to give back
+                logger.info("Dropped " + checkpoint + ", the free Crate's rewards have changed since it started");
+                journal.complete(checkpoint.getId());
+                dropped++;
+                continue;
+            }
+
+            mail.computeIfAbsent(checkpoint.getPlayer(), uuid -> new ArrayList<>(1)).add(item);
+            settled.computeIfAbsent(checkpoint.getPlayer(), uuid -> new ArrayList<>(1)).add(checkpoint);
+        }
+
+        logger.info("Recovered " + pending.size() + " interrupted opening(s): " + resolved + " resolved, " + refunded + " refunded, " + dropped + " dropped, " + unsettled + " unsettled");
+
+        if(mail.isEmpty())
+            return;
+
+        mailbox.append(mail).thenAccept(unwritten ->
+        {
+            for(Map.Entry<UUID, List<SpinCheckpoint>> entry : settled.entrySet())
+            {
+                if(unwritten.contains(entry.getKey()))
+                    continue;
+
+                for(SpinCheckpoint checkpoint : entry.getValue())
+                {
+                    metrics.recordDelivery(DeliveryDestination.MAILBOX);
+                    journal.complete(checkpoint.getId());
+                }
+            }
+        });
+    }
+
+}
@@ -0,0 +1,174 @@
+package uk.co.loonyrules.rp.melonco.sessions;
+
+import com.google.common.collect.Maps;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of every Crate that's currently being opened, indexed by the opener's UUID.
+ * Crate inventories don't need indexing as the CrateSession is the inventory's {@link InventoryHolder}.
+ * The registry is bounded, once it holds its capacity new openings are turned away until some finish.
+ */
+public class SessionRegistry
+{
+
+    private final Map<UUID, CrateSession> byUser = Maps.newConcurrentMap();
+    private final int capacity;
+
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicLong registered = new AtomicLong(), unregistered = new AtomicLong(), rejected = new AtomicLong();
+
+    /**
+     * Initialise a SessionRegistry
+     * @param capacity Most openings that can be going at once
+     */
+    public SessionRegistry(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the opening a player has going
+     * @param opener UUID of the Player you want to search for
+     * @return CrateSession instance if exists
+     */
+    public Optional<CrateSession> get(UUID opener)
+    {
+        return opener == null ? Optional.empty() : Optional.ofNullable(byUser.get(opener));
+    }
+
+    /**
+     * Gets the opening that owns an Inventory
+     * @param inventory The Inventory to check
+     * @return CrateSession instance if it's a Crate inventory
+     */
+    public Optional<CrateSession> get(Inventory inventory)
+    {
+        InventoryHolder holder = inventory == null ? null : inventory.getHolder();
+        return holder instanceof CrateSession ? Optional.of((CrateSession) holder) : Optional.empty();
+    }
+
+    /**
+     * Get every opening that's currently going
+     * @return Read-only view of the active sessions
+     */
+    public Collection<CrateSession> getSessions()
+    {
+        return Collections.unmodifiableCollection(byUser.values());
+    }
+
+    /**
+     * Get the amount of Crates currently being opened
+     * @return Amount of active sessions
+     */
+    public int size()
+    {
+        return byUser.size();
+    }
+
+    /**
+     * Get the most openings that can be going at once
+     * @return The capacity
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Check whether new openings are being turned away
+     * @return True if the registry is at capacity
+     */
+    public boolean isFull()
+    {
+        return byUser.size() >= capacity;
+    }
+
+    /**
+     * Get the most openings there have been at once
+     * @return Peak size
+     */
+    public int getPeak()
+    {
+        return peak.get();
+    }
+
+    /**
+     * Get the amount of openings that have ever been registered
+     * @return Total registrations
+     */
+    public long getRegistered()
+    {
+        return registered.get();
+    }
+
+    /**
+     * Get the amount of openings that have ever been unregistered
+     * @return Total removals
+     */
+    public long getUnregistered()
+    {
+        return unregistered.get();
+    }
+
+    /**
+     * Get the amount of openings turned away because the registry was full
+     * @return Total rejections
+     */
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+
+    /**
+     * Register an opening against the Player opening it
+     * @param session The opening
+     * @return True: The opening was registered. False: The Player already has an opening registered or the registry is full.
+     */
+    public boolean register(CrateSession session)
+    {
+        if(isFull())
+        {
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        if(byUser.putIfAbsent(session.getUser().getUniqueId(), session) != null)
+            return false;
+
+        registered.incrementAndGet();
+        peak.accumulateAndGet(byUser.size(), Math::max);
+        return true;
+    }
+
+    /**
+     * Remove an opening. The entry is only removed if it still points to this opening.
+     * @param session The opening to remove
+     * @return True: The opening was registered and has been removed. False: It wasn't registered.
+     */
+    public boolean unregister(CrateSession session)
+    {
+        if(!byUser.remove(session.getUser().getUniqueId(), session))
+            return false;
+
+        unregistered.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Drop every registered session
+     */
+    public void clear()
+    {
+        byUser.clear();
+    }
+
+}
@@ -0,0 +1,187 @@
+package uk.co.loonyrules.rp.melonco.sessions;
+
+import org.bukkit.scheduler.BukkitRunnable;
+import uk.co.loonyrules.rp.melonco.metrics.CrateMetrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single scheduled task that steps every Crate being opened.
+ * Sessions live in a compact array and are swapped out in place once they finish, so the scheduler only ever holds this one task.
+ *
+ * Each tick has a time budget. Once a tick goes over it the rest of the steps that tick are degraded, they still
+ * advance (so outcomes and durations never change) but skip sending frames and cosmetic sounds. After a tick over
+ * budget, openings that are far along are degraded up front as they have the least left to show.
+ */
+public class SessionTicker extends BukkitRunnable
+{
+
+    /**
+     * How many ticks between each step of a Crate.
+     *  - Used 2 ticks because at 1 tick the Pointer looks glitchy on the client side and the sound gets spammed too much
+     */
+    public static final int STEP_INTERVAL = 2;
+
+    /**
+     * Most steps in a row an opening can be degraded for, so its animation never freezes
+     */
+    private static final int MAX_DEGRADED_STEPS = 2;
+
+    /**
+     * How far along an opening has to be to be degraded up front after a tick over budget
+     */
+    private static final float FAR_ALONG = 0.5f;
+
+    private final long budgetNanos;
+    private final CrateMetrics metrics;
+    private final Logger logger;
+
+    private CrateSession[] sessions = new CrateSession[16];
+    private int[] countdowns = new int[16];
+    private int[] degradedSteps = new int[16];
+    private int size;
+
+    private long lastTickNanos, averageStepNanos;
+
+    /**
+     * Initialise the ticker
+     * @param budgetMicros Time each tick can spend stepping openings before they're degraded, in microseconds
+     * @param metrics Where each tick's time and degraded frames are recorded
+     * @param logger Where a Crate failing to step is reported
+     */
+    public SessionTicker(long budgetMicros, CrateMetrics metrics, Logger logger)
+    {
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    /**
+     * Start stepping a Crate opening from the next tick onwards
+     * @param session The opening to step
+     */
+    public void add(CrateSession session)
+    {
+        if(size == sessions.length)
+        {
+            sessions = Arrays.copyOf(sessions, size << 1);
+            countdowns = Arrays.copyOf(countdowns, size << 1);
+            degradedSteps = Arrays.copyOf(degradedSteps, size << 1);
+        }
+
+        sessions[size] = session;
+        countdowns[size] = 1;
+        degradedSteps[size] = 0;
+        size++;
+    }
+
+    /**
+     * Get the amount of Crates being stepped
+     * @return Amount of active sessions
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Get the time each tick can spend stepping openings
+     * @return The budget in microseconds
+     */
+    public long getBudgetMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(budgetNanos);
+    }
+
+    /**
+     * Get the time the last tick spent stepping openings
+     * @return Time taken in microseconds
+     */
+    public long getLastTickMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(lastTickNanos);
+    }
+
+    /**
+     * Get how much of the budget the last tick used
+     * @return Fraction of the budget, above 1 when it went over
+     */
+    public double getBudgetUsage()
+    {
+        return (double) lastTickNanos / budgetNanos;
+    }
+
+    /**
+     * Get the moving average cost of a single step
+     * @return Average step time in nanoseconds
+     */
+    public long getAverageStepNanos()
+    {
+        return averageStepNanos;
+    }
+
+    @Override
+    public void run()
+    {
+        long start = System.nanoTime(), now = start;
+        boolean pressured = lastTickNanos > budgetNanos;
+        int steps = 0, degradedFrames = 0;
+
+        for(int i = 0; i < size; i++)
+        {
+            // Not this Crate's turn yet
+            if(--countdowns[i] > 0)
+                continue;
+
+            countdowns[i] = STEP_INTERVAL;
+
+            CrateSession session = sessions[i];
+            boolean degraded = degradedSteps[i] < MAX_DEGRADED_STEPS && (now - start > budgetNanos || pressured && session.getProgress() >= FAR_ALONG);
+
+            if(degraded)
+            {
+                degradedSteps[i]++;
+                degradedFrames++;
+            } else degradedSteps[i] = 0;
+
+            boolean going;
+
+            try {
+                going = session.step(degraded);
+            } catch (RuntimeException e) {
+                // A broken Crate shouldn't stop every other Crate from spinning, or stay registered
+                logger.log(Level.SEVERE, "Failed to step " + session.getUser().getName() + "'s opening of the " + session.getCrate().getName() + " Crate, cancelling it", e);
+                session.unregister();
+                going = false;
+            }
+
+            long stepped = System.nanoTime();
+            averageStepNanos += (stepped - now - averageStepNanos) >> 4;
+            now = stepped;
+            steps++;
+
+            // Swapping the last session into this slot and stepping it on this pass
+            if(!going)
+                remove(i--);
+        }
+
+        lastTickNanos = now - start;
+
+        if(steps > 0)
+            metrics.recordTick(lastTickNanos, steps, degradedFrames, lastTickNanos > budgetNanos);
+    }
+
+    private void remove(int index)
+    {
+        int last = --size;
+
+        sessions[index] = sessions[last];
+        countdowns[index] = countdowns[last];
+        degradedSteps[index] = degradedSteps[last];
+        sessions[last] = null;
+    }
+
+}
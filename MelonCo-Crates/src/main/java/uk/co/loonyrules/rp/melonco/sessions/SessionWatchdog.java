@@ -0,0 +1,103 @@
+package uk.co.loonyrules.rp.melonco.sessions;
+
+import org.bukkit.scheduler.BukkitRunnable;
+import uk.co.loonyrules.rp.melonco.enums.SessionState;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Periodically sweeps the {@link SessionRegistry} for openings that should have gone by now and reclaims them.
+ * Every terminal path already unregisters its opening, so anything found here is a leak and gets reported.
+ */
+public class SessionWatchdog extends BukkitRunnable
+{
+
+    /**
+     * How often the registry is swept, in ticks
+     */
+    public static final long PERIOD = 20L * 30;
+
+    /**
+     * Extra time an opening gets on top of its expected lifetime before it's considered orphaned, covers server lag
+     */
+    private static final long GRACE = TimeUnit.MINUTES.toMillis(1);
+
+    private final SessionRegistry sessionRegistry;
+    private final Logger logger;
+
+    private long sweeps, leaks;
+
+    public SessionWatchdog(SessionRegistry sessionRegistry, Logger logger)
+    {
+        this.sessionRegistry = sessionRegistry;
+        this.logger = logger;
+    }
+
+    /**
+     * Get the amount of orphaned openings that have been reclaimed
+     * @return Total leaks found
+     */
+    public long getLeaks()
+    {
+        return leaks;
+    }
+
+    /**
+     * Get the amount of times the registry has been swept
+     * @return Total sweeps
+     */
+    public long getSweeps()
+    {
+        return sweeps;
+    }
+
+    @Override
+    public void run()
+    {
+        long now = System.currentTimeMillis();
+        int found = 0;
+
+        for(CrateSession session : sessionRegistry.getSessions())
+        {
+            String reason = getOrphanReason(session, now);
+
+            // Opening is healthy
+            if(reason == null)
+                continue;
+
+            logger.warning("Reclaiming orphaned " + session.getCrate().getName() + " opening of " + session.getUser().getName() + " (" + session.getState() + "): " + reason);
+            session.unregister();
+            found++;
+        }
+
+        sweeps++;
+        leaks += found;
+
+        logger.log(found > 0 ? Level.WARNING : Level.FINE, "Session sweep: " + sessionRegistry.size() + "/" + sessionRegistry.getCapacity() + " active, " + sessionRegistry.getPeak() + " peak, "
+                + sessionRegistry.getRegistered() + " opened, " + sessionRegistry.getUnregistered() + " closed, " + sessionRegistry.getRejected() + " rejected, " + found + " reclaimed (" + leaks + " total)");
+    }
+
+    private String getOrphanReason(CrateSession session, long now)
+    {
+        SessionState state = session.getState();
+
+        if(state == SessionState.CLOSED)
+            return "closed but still registered";
+
+        if(!session.getUser().isOnline())
+            return "player is offline";
+
+        long age = now - session.getCreatedAt();
+
+        // Registered but never got going
+        if(state == SessionState.CREATED)
+            return age > GRACE ? "never started" : null;
+
+        // Ticks are 50ms each when the server isn't lagging
+        long expected = session.getExpectedTicks() * 50L;
+        return age > expected + GRACE ? "still " + state + " after " + TimeUnit.MILLISECONDS.toSeconds(age) + "s" : null;
+    }
+
+}
@@ -12,4 +12,15 @@ public class Items
             PLACEHOLDER = new ItemBuilder(Material.STAINED_GLASS_PANE).setDisplayName(" ").build(),
             POINTER = new ItemBuilder(Material.HOPPER).setDisplayName(ChatColor.YELLOW + "Selector").build();
 
+    /**
+     * Describe an item in plain text, for logs and reports
+     * @param itemStack The item
+     * @return Amount and display name, or type if it hasn't got a display name
+     */
+    public static String describe(ItemStack itemStack)
+    {
+        String name = itemStack.hasItemMeta() && itemStack.getItemMeta().hasDisplayName() ? ChatColor.stripColor(itemStack.getItemMeta().getDisplayName()) : itemStack.getType().toString();
+        return itemStack.getAmount() + "x " + name;
+    }
+
 }
\ No newline at end of file
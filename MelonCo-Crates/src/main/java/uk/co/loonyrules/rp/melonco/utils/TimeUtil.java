@@ -0,0 +1,49 @@
+package uk.co.loonyrules.rp.melonco.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class TimeUtil
+{
+
+    private static final Pattern DURATION = Pattern.compile("(\\d+)([smhdw])");
+
+    /**
+     * Parse a point in time, either how long ago like 30m, 12h, 7d or 2w, or a date like 2017-05-01
+     * @param text The text to parse
+     * @param now The current time in milliseconds
+     * @return The point in time in milliseconds
+     * @throws IllegalArgumentException If it isn't a duration or a date
+     */
+    public static long parseSince(String text, long now)
+    {
+        Matcher matcher = DURATION.matcher(text.toLowerCase());
+
+        if(matcher.matches())
+        {
+            long amount = Long.parseLong(matcher.group(1));
+
+            switch(matcher.group(2))
+            {
+                case "s": return now - TimeUnit.SECONDS.toMillis(amount);
+                case "m": return now - TimeUnit.MINUTES.toMillis(amount);
+                case "h": return now - TimeUnit.HOURS.toMillis(amount);
+                case "d": return now - TimeUnit.DAYS.toMillis(amount);
+                default: return now - TimeUnit.DAYS.toMillis(amount * 7);
+            }
+        }
+
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+            format.setLenient(false);
+
+            return format.parse(text).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(text + " isn't a duration like 7d or a date like 2017-05-01.");
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package uk.co.loonyrules.rp.melonco.sessions;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.co.loonyrules.rp.melonco.CratesPlugin;
+import uk.co.loonyrules.rp.melonco.checkpoint.CheckpointJournal;
+import uk.co.loonyrules.rp.melonco.crates.Crate;
+import uk.co.loonyrules.rp.melonco.delivery.DeliveryService;
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+import uk.co.loonyrules.rp.melonco.engine.SpinTimings;
+import uk.co.loonyrules.rp.melonco.enums.Rarity;
+import uk.co.loonyrules.rp.melonco.enums.SessionState;
+import uk.co.loonyrules.rp.melonco.keys.KeyService;
+import uk.co.loonyrules.rp.melonco.ledger.LedgerWriter;
+import uk.co.loonyrules.rp.melonco.metrics.CrateMetrics;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CrateSessionTest
+{
+
+    private static final long CHECKPOINT = 42;
+
+    private final UUID uuid = new UUID(1, 2);
+    private final SessionRegistry registry = new SessionRegistry(8);
+
+    private CratesPlugin plugin;
+    private KeyService keyService;
+    private DeliveryService deliveryService;
+    private SessionTicker sessionTicker;
+    private Player player;
+    private Crate crate;
+
+    @BeforeClass
+    public static void server()
+    {
+        // Inventories and the placeholder items are made through the server
+        if(Bukkit.getServer() == null)
+        {
+            Server server = mock(Server.class, RETURNS_DEEP_STUBS);
+            when(server.createInventory(any(InventoryHolder.class), anyInt(), anyString())).thenAnswer(invocation -> mock(Inventory.class));
+            Bukkit.setServer(server);
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        CheckpointJournal checkpoints = mock(CheckpointJournal.class);
+        when(checkpoints.open(anyLong(), eq(uuid), anyString(), anyLong(), anyInt())).thenReturn(CHECKPOINT);
+
+        keyService = mock(KeyService.class);
+        when(keyService.take(uuid, "ENDER")).thenReturn(true);
+
+        deliveryService = mock(DeliveryService.class);
+        sessionTicker = mock(SessionTicker.class);
+
+        plugin = mock(CratesPlugin.class);
+        when(plugin.getSessionRegistry()).thenReturn(registry);
+        when(plugin.getLedgerWriter()).thenReturn(mock(LedgerWriter.class));
+        when(plugin.getCheckpointJournal()).thenReturn(checkpoints);
+        when(plugin.getKeyService()).thenReturn(keyService);
+        when(plugin.getDeliveryService()).thenReturn(deliveryService);
+        when(plugin.getSessionTicker()).thenReturn(sessionTicker);
+        when(plugin.getMetrics()).thenReturn(mock(CrateMetrics.class));
+
+        player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(uuid);
+        when(player.getName()).thenReturn("Opener");
+
+        RewardTable<ItemStack> rewards = new RewardTable<>(new Object[] { new ItemStack(Material.DIAMOND), new ItemStack(Material.DIRT) },
+                new double[] { 1, 3 }, new Rarity[] { Rarity.COMMON, Rarity.COMMON });
+        crate = new Crate("ENDER", "Ender Crate", null, new ItemStack(Material.TRIPWIRE_HOOK), rewards, new SpinTimings(10, 20), true);
+    }
+
+    @Test
+    public void deliversWhenShowingFailsAfterTheKeyIsTaken()
+    {
+        doThrow(new IllegalStateException("Inventory already open")).when(player).openInventory(any(Inventory.class));
+        CrateSession session = new CrateSession(plugin, crate, player);
+
+        try {
+            session.start();
+            fail("The failure to show the opening should be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("Inventory already open", e.getMessage());
+        }
+
+        verify(keyService).take(uuid, "ENDER");
+        verify(deliveryService).deliver(uuid, session.getOutcome(), "ENDER", session.getTimeline().getWinner(), CHECKPOINT);
+        verify(sessionTicker, never()).add(session);
+
+        assertSame(SessionState.CLOSED, session.getState());
+        assertFalse(registry.get(uuid).isPresent());
+    }
+
+    @Test
+    public void deliversOnceWhenClosedMidSpin() throws IllegalAccessException
+    {
+        CrateSession session = new CrateSession(plugin, crate, player);
+
+        session.start();
+        assertSame(SessionState.SPINNING, session.getState());
+        verify(sessionTicker).add(session);
+
+        session.cancelOpening();
+        session.unregister();
+
+        verify(deliveryService).deliver(uuid, session.getOutcome(), "ENDER", session.getTimeline().getWinner(), CHECKPOINT);
+        assertFalse(registry.get(uuid).isPresent());
+    }
+
+}
@@ -0,0 +1,117 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of routing a single inventory click or interact with a number of openings in progress. The current routing
+ * resolves the session from the inventory's holder, whereas every session used to be its own Listener comparing
+ * inventory titles, so one click cost one check per active session.
+ * Run with <code>java -jar benchmarks.jar ClickRoutingBenchmark -prof gc</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClickRoutingBenchmark
+{
+
+    private static final String TITLE = "EnderCrate";
+
+    @Param({"1", "100", "10000"})
+    private int sessionCount;
+
+    private StandInSession[] sessions;
+    private Map<UUID, StandInSession> registry;
+    private StandInInventory foreign;
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        RewardTable<Object> rewards = Rewards.create(17);
+
+        sessions = new StandInSession[sessionCount];
+        registry = new ConcurrentHashMap<>();
+
+        for(int i = 0; i < sessionCount; i++)
+        {
+            StandInSession session = new StandInSession(rewards, new StandInPlayer(UUID.randomUUID()), TITLE, i);
+
+            sessions[i] = session;
+            registry.put(session.getUser().getUniqueId(), session);
+        }
+
+        // A chest that isn't a crate, like a player's own storage
+        foreign = new StandInInventory(new Object(), "Chest");
+    }
+
+    private StandInSession nextSession()
+    {
+        if(++next == sessions.length)
+            next = 0;
+
+        return sessions[next];
+    }
+
+    /**
+     * SessionListener: a click in a crate inventory, resolved through its holder.
+     */
+    @Benchmark
+    public boolean holder()
+    {
+        return nextSession().getInventory().getHolder() instanceof StandInSession;
+    }
+
+    /**
+     * SessionListener: a click in an inventory that isn't a crate.
+     */
+    @Benchmark
+    public boolean holderForeign()
+    {
+        return foreign.getHolder() instanceof StandInSession;
+    }
+
+    /**
+     * CratesPlugin: an interact from a player who may already be opening a crate.
+     */
+    @Benchmark
+    public StandInSession registry()
+    {
+        return registry.get(nextSession().getUser().getUniqueId());
+    }
+
+    /**
+     * The click as it was before, dispatched to every session's own Listener.
+     */
+    @Benchmark
+    public int legacyListeners()
+    {
+        StandInPlayer player = nextSession().getUser();
+        StandInInventory clicked = player.getOpenInventory();
+        int cancelled = 0;
+
+        for(StandInSession session : sessions)
+        {
+            if(!player.isOnline() || player.getOpenInventory() == null)
+                continue;
+
+            String storedTitle = session.getInventory().getTitle();
+
+            if(!player.getOpenInventory().getTitle().equals(storedTitle) || !clicked.getTitle().equals(storedTitle))
+                continue;
+
+            cancelled++;
+        }
+
+        return cancelled;
+    }
+
+}
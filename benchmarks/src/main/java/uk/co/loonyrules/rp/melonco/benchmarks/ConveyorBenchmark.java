@@ -0,0 +1,77 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.co.loonyrules.rp.melonco.engine.ConveyorRing;
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+import uk.co.loonyrules.rp.melonco.engine.SpinTimeline;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of moving the conveyor one slot and reading the whole row back, which is what a Crate does on a conveyor step.
+ * Run with <code>java -jar benchmarks.jar ConveyorBenchmark -prof gc</code>, the ring should report ~0 B/op for
+ * gc.alloc.rate.norm whereas the old LinkedList conveyor allocates on every refill.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConveyorBenchmark
+{
+
+    @Param({"17", "1000"})
+    private int rewardCount;
+
+    private RewardTable<Object> rewards;
+    private ConveyorRing ring;
+
+    // The conveyor as it was before the ring buffer
+    private Object[] legacyRewards;
+    private Iterator<Object> legacyIterator;
+
+    @Setup
+    public void setup()
+    {
+        rewards = Rewards.create(rewardCount);
+        legacyRewards = new Object[rewardCount];
+
+        for(int i = 0; i < rewardCount; i++)
+            legacyRewards[i] = rewards.get(i);
+
+        ring = new ConveyorRing(rewards, 42L, 0, -1);
+        ring.advance();
+    }
+
+    @Benchmark
+    public void ring(Blackhole blackhole)
+    {
+        ring.advance();
+
+        for(int column = 0; column < SpinTimeline.ROW; column++)
+            blackhole.consume(rewards.get(ring.get(column)));
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole)
+    {
+        for(int column = 0; column < SpinTimeline.ROW; column++)
+            blackhole.consume(legacyNext());
+    }
+
+    private synchronized Object legacyNext()
+    {
+        if(legacyIterator == null || !legacyIterator.hasNext())
+        {
+            List<Object> rewards = new ArrayList<>(Arrays.asList(legacyRewards.clone()));
+            Collections.shuffle(rewards);
+            legacyIterator = new LinkedList<>(rewards).iterator();
+        }
+
+        return legacyIterator.next();
+    }
+
+}
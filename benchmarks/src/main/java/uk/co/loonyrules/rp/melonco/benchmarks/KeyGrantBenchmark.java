@@ -0,0 +1,72 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.co.loonyrules.rp.melonco.keys.KeyGrant;
+import uk.co.loonyrules.rp.melonco.keys.KeyStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Throughput of bulk Key grants into a file-backed store, from streaming the UUIDs in to every shard being written.
+ * The same Players are granted Keys every invocation, so the shards are read and rewritten at their full size.
+ * Run with <code>java -jar benchmarks.jar KeyGrantBenchmark</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyGrantBenchmark
+{
+
+    private static final int PLAYERS = 200_000;
+
+    private File directory;
+    private KeyStore store;
+    private List<UUID> players;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        directory = Files.createTempDirectory("keys").toFile();
+        store = new KeyStore(directory);
+
+        UUID[] uuids = new UUID[PLAYERS];
+
+        for(int i = 0; i < PLAYERS; i++)
+            uuids[i] = UUID.randomUUID();
+
+        players = Arrays.asList(uuids);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        File[] files = directory.listFiles();
+
+        if(files != null)
+            for(File file : files)
+                file.delete();
+
+        directory.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PLAYERS)
+    public long grant()
+    {
+        KeyGrant grant = new KeyGrant(store, "ENDER", 1, new File(directory, "failed.txt"), (shard, uuids, count, version) -> {}, Logger.getLogger("KeyGrantBenchmark"));
+        grant.run(players.iterator());
+
+        return grant.getGranted();
+    }
+
+}
@@ -0,0 +1,71 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.co.loonyrules.rp.melonco.ledger.LedgerRecord;
+import uk.co.loonyrules.rp.melonco.ledger.LedgerWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Throughput of the ledger, from appending records to them being forced to disk. Each invocation appends a batch
+ * of records and waits for them to be durable, so the score is records per second end to end.
+ * Run with <code>java -jar benchmarks.jar LedgerBenchmark</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LedgerBenchmark
+{
+
+    private static final int BATCH = 10_000;
+
+    private File directory;
+    private LedgerWriter writer;
+    private LedgerRecord[] records;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        directory = Files.createTempDirectory("ledger").toFile();
+        writer = new LedgerWriter(directory, 64L * 1024 * 1024, 1000, Logger.getLogger("LedgerBenchmark"));
+        writer.start();
+
+        records = new LedgerRecord[BATCH];
+
+        for(int i = 0; i < BATCH; i++)
+            records[i] = new LedgerRecord(System.currentTimeMillis(), UUID.randomUUID(), "ENDER", i % 17, "1x DIAMOND", i);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        writer.close(10000);
+
+        File[] files = directory.listFiles();
+
+        if(files != null)
+            for(File file : files)
+                file.delete();
+
+        directory.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean appendAndFlush()
+    {
+        for(LedgerRecord record : records)
+            writer.append(record);
+
+        return writer.flush(10000);
+    }
+
+}
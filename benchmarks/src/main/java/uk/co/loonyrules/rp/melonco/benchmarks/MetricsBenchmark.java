@@ -0,0 +1,63 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.co.loonyrules.rp.melonco.metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cost of recording metrics on the hot paths. Run with <code>java -jar benchmarks.jar MetricsBenchmark -prof gc</code>,
+ * recording should report ~0 B/op for gc.alloc.rate.norm.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark
+{
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder counter = new LongAdder();
+
+    @State(Scope.Thread)
+    public static class Values
+    {
+        private long value = 12345;
+
+        long next()
+        {
+            // Spreading recordings over a few buckets
+            return value = value * 6364136223846793005L + 1442695040888963407L >>> 44;
+        }
+    }
+
+    @Benchmark
+    public void record(Values values)
+    {
+        histogram.record(values.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended(Values values)
+    {
+        histogram.record(values.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void counterContended()
+    {
+        counter.increment();
+    }
+
+    @Benchmark
+    public long percentile()
+    {
+        return histogram.getValueAtPercentile(99);
+    }
+
+}
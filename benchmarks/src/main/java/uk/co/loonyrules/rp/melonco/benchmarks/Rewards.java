@@ -0,0 +1,28 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import uk.co.loonyrules.rp.melonco.builders.RewardTableBuilder;
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+import uk.co.loonyrules.rp.melonco.enums.Rarity;
+
+/**
+ * Builds reward tables for the benchmarks, spreading rewards evenly over every Rarity.
+ */
+final class Rewards
+{
+
+    private Rewards()
+    {
+    }
+
+    static RewardTable<Object> create(int count)
+    {
+        RewardTableBuilder<Object> builder = new RewardTableBuilder<>();
+        Rarity[] rarities = Rarity.values();
+
+        for(int i = 0; i < count; i++)
+            builder.add(new Object(), rarities[i % rarities.length]);
+
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,80 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.co.loonyrules.rp.melonco.engine.BulkOutcome;
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+import uk.co.loonyrules.rp.melonco.engine.SpinTimeline;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of picking a reward. The alias table samples in constant time regardless of the number of rewards, the
+ * linear scan over the cumulative weights is kept as a baseline. Also measures generating a whole SpinTimeline,
+ * which is what starting an opening costs, against resolving a thousand openings at once as a bulk opening does.
+ * Run with <code>java -jar benchmarks.jar SamplingBenchmark -prof gc</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SamplingBenchmark
+{
+
+    @Param({"17", "1000"})
+    private int rewardCount;
+
+    private RewardTable<Object> rewards;
+    private SplittableRandom random;
+    private long seed;
+
+    @Setup
+    public void setup()
+    {
+        rewards = Rewards.create(rewardCount);
+        random = new SplittableRandom(42L);
+    }
+
+    @Benchmark
+    public int alias()
+    {
+        return rewards.sample(random);
+    }
+
+    @Benchmark
+    public int linear()
+    {
+        double target = random.nextDouble() * rewards.getTotalWeight();
+
+        for(int i = 0; i < rewards.size(); i++)
+        {
+            target -= rewards.getWeight(i);
+
+            if(target < 0)
+                return i;
+        }
+
+        return rewards.size() - 1;
+    }
+
+    @Benchmark
+    public int resolveWinner()
+    {
+        return SpinTimeline.resolveWinner(seed++, rewards);
+    }
+
+    @Benchmark
+    public SpinTimeline timeline()
+    {
+        return SpinTimeline.generate(seed++, rewards);
+    }
+
+    @Benchmark
+    public BulkOutcome bulk()
+    {
+        return BulkOutcome.resolve(random, rewards, 1000);
+    }
+
+}
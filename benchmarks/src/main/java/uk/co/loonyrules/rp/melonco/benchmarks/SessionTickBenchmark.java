@@ -0,0 +1,66 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one server tick of the SessionTicker with a number of openings in progress: each session steps every
+ * other tick, advancing its Spin and writing the changed slots into its inventory.
+ * Finished openings start over with a new seed, so the figures include creating a Spin once per opening.
+ * Run with <code>java -jar benchmarks.jar SessionTickBenchmark -prof gc</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionTickBenchmark
+{
+
+    // SessionTicker.STEP_INTERVAL
+    private static final int STEP_INTERVAL = 2;
+
+    @Param({"1", "100", "10000"})
+    private int sessionCount;
+
+    private StandInSession[] sessions;
+    private int[] countdowns;
+
+    @Setup
+    public void setup()
+    {
+        RewardTable<Object> rewards = Rewards.create(17);
+
+        sessions = new StandInSession[sessionCount];
+        countdowns = new int[sessionCount];
+
+        // Staggered so half the sessions step on each tick, like openings started at different times
+        for(int i = 0; i < sessionCount; i++)
+        {
+            sessions[i] = new StandInSession(rewards, new StandInPlayer(UUID.randomUUID()), "EnderCrate", i);
+            countdowns[i] = 1 + i % STEP_INTERVAL;
+        }
+    }
+
+    @Benchmark
+    public int tick()
+    {
+        int events = 0;
+
+        for(int i = 0; i < sessions.length; i++)
+        {
+            if(--countdowns[i] > 0)
+                continue;
+
+            countdowns[i] = STEP_INTERVAL;
+            events |= sessions[i].step();
+        }
+
+        return events;
+    }
+
+}
@@ -0,0 +1,42 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import uk.co.loonyrules.rp.melonco.engine.FrameBuffer;
+
+/**
+ * Lightweight stand-in for a Bukkit Inventory. Only keeps what the crate hot paths touch: the holder, the title
+ * and the slot contents.
+ */
+class StandInInventory
+{
+
+    private final Object holder;
+    private final String title;
+    private final Object[] contents = new Object[FrameBuffer.SIZE];
+
+    StandInInventory(Object holder, String title)
+    {
+        this.holder = holder;
+        this.title = title;
+    }
+
+    Object getHolder()
+    {
+        return holder;
+    }
+
+    String getTitle()
+    {
+        return title;
+    }
+
+    void setItem(int slot, Object item)
+    {
+        contents[slot] = item;
+    }
+
+    Object getItem(int slot)
+    {
+        return contents[slot];
+    }
+
+}
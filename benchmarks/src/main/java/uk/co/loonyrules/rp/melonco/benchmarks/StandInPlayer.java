@@ -0,0 +1,39 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import java.util.UUID;
+
+/**
+ * Lightweight stand-in for a Bukkit Player, just enough to route clicks and look up sessions.
+ */
+class StandInPlayer
+{
+
+    private final UUID uuid;
+    private StandInInventory openInventory;
+
+    StandInPlayer(UUID uuid)
+    {
+        this.uuid = uuid;
+    }
+
+    UUID getUniqueId()
+    {
+        return uuid;
+    }
+
+    boolean isOnline()
+    {
+        return true;
+    }
+
+    StandInInventory getOpenInventory()
+    {
+        return openInventory;
+    }
+
+    void openInventory(StandInInventory inventory)
+    {
+        this.openInventory = inventory;
+    }
+
+}
@@ -0,0 +1,72 @@
+package uk.co.loonyrules.rp.melonco.benchmarks;
+
+import uk.co.loonyrules.rp.melonco.engine.FrameBuffer;
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+import uk.co.loonyrules.rp.melonco.engine.Spin;
+
+/**
+ * Mirrors what a CrateSession does on each step against the stand-in inventory: advance the Spin and write the
+ * slots that changed. It's also the InventoryHolder of its inventory, so clicks can be routed the same way.
+ */
+class StandInSession
+{
+
+    // Stand-ins for Items.POINTER and Items.PLACEHOLDER
+    static final Object POINTER = new Object(), PLACEHOLDER = new Object();
+
+    private final RewardTable<Object> rewards;
+    private final StandInPlayer user;
+    private final StandInInventory inventory;
+    private final FrameBuffer.SlotWriter slotWriter = this::writeSlot;
+
+    private Spin spin;
+    private long seed;
+
+    StandInSession(RewardTable<Object> rewards, StandInPlayer user, String title, long seed)
+    {
+        this.rewards = rewards;
+        this.user = user;
+        this.inventory = new StandInInventory(this, title);
+        this.seed = seed;
+
+        restart();
+        user.openInventory(inventory);
+    }
+
+    StandInPlayer getUser()
+    {
+        return user;
+    }
+
+    StandInInventory getInventory()
+    {
+        return inventory;
+    }
+
+    /**
+     * Step the opening once, starting a new one when it finishes so a benchmark can run indefinitely.
+     * @return The events fired by the Spin
+     */
+    int step()
+    {
+        int events = spin.step();
+        spin.getFrame().flush(slotWriter);
+
+        if((events & Spin.FINISHED) != 0)
+            restart();
+
+        return events;
+    }
+
+    private void restart()
+    {
+        spin = new Spin(seed++, rewards);
+        spin.getFrame().flush(slotWriter);
+    }
+
+    private void writeSlot(int slot, int id)
+    {
+        inventory.setItem(slot, id >= 0 ? rewards.get(id) : id == FrameBuffer.POINTER ? POINTER : id == FrameBuffer.PLACEHOLDER ? PLACEHOLDER : null);
+    }
+
+}
@@ -0,0 +1,140 @@
+package uk.co.loonyrules.rp.melonco.audit;
+
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Outcome of an {@link OddsAuditor} run: how often each reward was won against how often it should've been.
+ */
+public class AuditResult
+{
+
+    /**
+     * Results with a p-value below this are flagged as not matching the advertised odds
+     */
+    public static final double SIGNIFICANCE = 0.001;
+
+    private final RewardTable<?> rewards;
+    private final long openings, seed, elapsedNanos;
+    private final long[] observed;
+    private final double[] expected;
+    private final double chiSquare, pValue;
+    private final int degreesOfFreedom;
+
+    AuditResult(RewardTable<?> rewards, long openings, long seed, long[] observed, long elapsedNanos)
+    {
+        this.rewards = rewards;
+        this.openings = openings;
+        this.seed = seed;
+        this.observed = observed;
+        this.elapsedNanos = elapsedNanos;
+        this.expected = new double[observed.length];
+
+        for(int i = 0; i < expected.length; i++)
+            expected[i] = rewards.getChance(i) * openings;
+
+        this.chiSquare = ChiSquare.statistic(observed, expected);
+        this.degreesOfFreedom = ChiSquare.degreesOfFreedom(expected);
+        this.pValue = ChiSquare.pValue(chiSquare, degreesOfFreedom);
+    }
+
+    public RewardTable<?> getRewards()
+    {
+        return rewards;
+    }
+
+    public long getOpenings()
+    {
+        return openings;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Get how many times a reward was won
+     * @param index Index of the reward
+     * @return Times it was won
+     */
+    public long getObserved(int index)
+    {
+        return observed[index];
+    }
+
+    /**
+     * Get how many times a reward should've been won
+     * @param index Index of the reward
+     * @return Times it's expected to be won
+     */
+    public double getExpected(int index)
+    {
+        return expected[index];
+    }
+
+    public double getChiSquare()
+    {
+        return chiSquare;
+    }
+
+    public int getDegreesOfFreedom()
+    {
+        return degreesOfFreedom;
+    }
+
+    public double getPValue()
+    {
+        return pValue;
+    }
+
+    /**
+     * Check whether the observed outcomes are consistent with the rewards' weights
+     * @return True: The odds hold up. False: The p-value is below {@link #SIGNIFICANCE}.
+     */
+    public boolean isConsistent()
+    {
+        return pValue >= SIGNIFICANCE;
+    }
+
+    public long getElapsedMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Format the result as a plain text report
+     * @param crateName Name of the audited Crate
+     * @param rewardName Describes a reward by its index
+     * @return Lines of the report
+     */
+    public List<String> toReport(String crateName, IntFunction<String> rewardName)
+    {
+        List<String> lines = new ArrayList<>();
+
+        lines.add("Odds audit for " + crateName);
+        lines.add(String.format(Locale.ROOT, "Openings: %,d  Seed: %d  Took: %,dms", openings, seed, getElapsedMillis()));
+        lines.add("");
+        lines.add(String.format(Locale.ROOT, "%-5s %-10s %-40s %10s %10s %15s %15s %10s", "#", "Rarity", "Reward", "Weight", "Expected%", "Expected", "Observed", "Deviation"));
+
+        for(int i = 0; i < observed.length; i++)
+        {
+            double deviation = expected[i] == 0 ? 0 : (observed[i] - expected[i]) / Math.sqrt(expected[i]);
+
+            lines.add(String.format(Locale.ROOT, "%-5d %-10s %-40s %10.2f %9.4f%% %15.1f %15d %+10.2f", i, rewards.getRarity(i).getDisplayName(), rewardName.apply(i),
+                    rewards.getWeight(i), rewards.getChance(i) * 100, expected[i], observed[i], deviation));
+        }
+
+        lines.add("");
+        lines.add(String.format(Locale.ROOT, "Chi-square: %.4f  Degrees of freedom: %d  p-value: %.6f", chiSquare, degreesOfFreedom, pValue));
+        lines.add(isConsistent() ? "Result: Consistent with the advertised odds" : String.format(Locale.ROOT, "Result: NOT consistent with the advertised odds (p < %s)", SIGNIFICANCE));
+
+        return lines;
+    }
+
+}
@@ -0,0 +1,162 @@
+package uk.co.loonyrules.rp.melonco.audit;
+
+/**
+ * Pearson's chi-square goodness of fit test, for checking observed reward counts against the weights they were
+ * configured with.
+ */
+public final class ChiSquare
+{
+
+    private static final int MAX_ITERATIONS = 1000;
+    private static final double EPSILON = 1e-15, TINY = 1e-300;
+
+    // Lanczos approximation coefficients (g = 7, n = 9)
+    private static final double[] LANCZOS = {
+            0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313, -176.61502916214059,
+            12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7
+    };
+
+    private ChiSquare()
+    {
+    }
+
+    /**
+     * Work out the chi-square statistic
+     * @param observed Observed count of each outcome
+     * @param expected Expected count of each outcome
+     * @return The statistic, or infinity if an outcome that can't happen was observed
+     */
+    public static double statistic(long[] observed, double[] expected)
+    {
+        if(observed.length != expected.length)
+            throw new IllegalArgumentException("Every observed count needs an expected count.");
+
+        double statistic = 0;
+
+        for(int i = 0; i < observed.length; i++)
+        {
+            // Outcomes that can never happen don't count towards the test, unless they did happen
+            if(expected[i] <= 0)
+            {
+                if(observed[i] > 0)
+                    return Double.POSITIVE_INFINITY;
+
+                continue;
+            }
+
+            double difference = observed[i] - expected[i];
+            statistic += difference * difference / expected[i];
+        }
+
+        return statistic;
+    }
+
+    /**
+     * Get the degrees of freedom of a test, one less than the amount of outcomes that can happen
+     * @param expected Expected count of each outcome
+     * @return Degrees of freedom
+     */
+    public static int degreesOfFreedom(double[] expected)
+    {
+        int possible = 0;
+
+        for(double count : expected)
+            if(count > 0)
+                possible++;
+
+        return Math.max(possible - 1, 0);
+    }
+
+    /**
+     * Get the chance of a statistic at least this large if the outcomes really follow the expected distribution
+     * @param statistic The chi-square statistic
+     * @param degreesOfFreedom Degrees of freedom
+     * @return The p-value between 0 and 1
+     */
+    public static double pValue(double statistic, int degreesOfFreedom)
+    {
+        if(Double.isInfinite(statistic))
+            return 0;
+
+        if(degreesOfFreedom <= 0 || statistic <= 0)
+            return 1;
+
+        return regularizedGammaQ(degreesOfFreedom / 2.0, statistic / 2.0);
+    }
+
+    /**
+     * Regularized upper incomplete gamma function Q(a, x), by its series below a + 1 and its continued fraction above.
+     */
+    static double regularizedGammaQ(double a, double x)
+    {
+        if(x < a + 1)
+            return 1 - gammaSeries(a, x);
+
+        return gammaContinuedFraction(a, x);
+    }
+
+    // P(a, x) as a series
+    private static double gammaSeries(double a, double x)
+    {
+        double term = 1 / a, sum = term;
+
+        for(int n = 1; n < MAX_ITERATIONS; n++)
+        {
+            term *= x / (a + n);
+            sum += term;
+
+            if(Math.abs(term) < Math.abs(sum) * EPSILON)
+                break;
+        }
+
+        return sum * Math.exp(-x + a * Math.log(x) - logGamma(a));
+    }
+
+    // Q(a, x) as a continued fraction, by the modified Lentz method
+    private static double gammaContinuedFraction(double a, double x)
+    {
+        double b = x + 1 - a, c = 1 / TINY, d = 1 / b, h = d;
+
+        for(int n = 1; n < MAX_ITERATIONS; n++)
+        {
+            double an = -n * (n - a);
+            b += 2;
+
+            d = an * d + b;
+            if(Math.abs(d) < TINY)
+                d = TINY;
+
+            c = b + an / c;
+            if(Math.abs(c) < TINY)
+                c = TINY;
+
+            d = 1 / d;
+            double delta = d * c;
+            h *= delta;
+
+            if(Math.abs(delta - 1) < EPSILON)
+                break;
+        }
+
+        return Math.exp(-x + a * Math.log(x) - logGamma(a)) * h;
+    }
+
+    /**
+     * Natural log of the gamma function, by the Lanczos approximation
+     */
+    static double logGamma(double x)
+    {
+        // Reflection for small values
+        if(x < 0.5)
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x);
+
+        x -= 1;
+        double sum = LANCZOS[0], t = x + 7.5;
+
+        for(int i = 1; i < LANCZOS.length; i++)
+            sum += LANCZOS[i] / (x + i);
+
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+
+}
@@ -0,0 +1,102 @@
+package uk.co.loonyrules.rp.melonco.audit;
+
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+import uk.co.loonyrules.rp.melonco.engine.SpinTimeline;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Simulates a large number of openings to check a Crate's odds. Every opening is resolved from its seed exactly as
+ * a real one is, split across a {@link ForkJoinPool} with each piece of work drawing seeds from its own split of
+ * the random.
+ */
+public class OddsAuditor
+{
+
+    /**
+     * Openings a single piece of work simulates before it's split any further
+     */
+    public static final long THRESHOLD = 1 << 20;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Initialise an OddsAuditor
+     * @param pool The pool simulations are spread across
+     */
+    public OddsAuditor(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Simulate openings and compare the outcomes against the rewards' weights. This blocks until every opening has
+     * been simulated, so shouldn't be called from the main thread.
+     * @param rewards The Crate's rewards
+     * @param openings Amount of openings to simulate
+     * @param seed Seed for the whole audit, the same seed always gives the same result
+     * @return The result of the audit
+     */
+    public AuditResult audit(RewardTable<?> rewards, long openings, long seed)
+    {
+        if(openings <= 0)
+            throw new IllegalArgumentException("Must simulate at least one opening, got " + openings);
+
+        long start = System.nanoTime();
+        long[] observed = pool.invoke(new SimulationTask(rewards, new SplittableRandom(seed), openings));
+
+        return new AuditResult(rewards, openings, seed, observed, System.nanoTime() - start);
+    }
+
+    /**
+     * Simulates a range of openings, splitting in half until it's small enough to run
+     */
+    private static class SimulationTask extends RecursiveTask<long[]>
+    {
+
+        // Only serializable because ForkJoinTask is, it's never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final RewardTable<?> rewards;
+        private final SplittableRandom random;
+        private final long openings;
+
+        private SimulationTask(RewardTable<?> rewards, SplittableRandom random, long openings)
+        {
+            this.rewards = rewards;
+            this.random = random;
+            this.openings = openings;
+        }
+
+        @Override
+        protected long[] compute()
+        {
+            if(openings > THRESHOLD)
+            {
+                // Splitting before forking keeps the seeds each half gets the same however the work is scheduled
+                long half = openings / 2;
+                SimulationTask left = new SimulationTask(rewards, random.split(), half);
+                SimulationTask right = new SimulationTask(rewards, random, openings - half);
+
+                left.fork();
+                long[] observed = right.compute(), other = left.join();
+
+                for(int i = 0; i < observed.length; i++)
+                    observed[i] += other[i];
+
+                return observed;
+            }
+
+            long[] observed = new long[rewards.size()];
+
+            for(long i = 0; i < openings; i++)
+                observed[SpinTimeline.resolveWinner(random.nextLong(), rewards)]++;
+
+            return observed;
+        }
+
+    }
+
+}
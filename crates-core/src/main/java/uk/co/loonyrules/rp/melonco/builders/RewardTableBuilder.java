@@ -0,0 +1,72 @@
+package uk.co.loonyrules.rp.melonco.builders;
+
+import uk.co.loonyrules.rp.melonco.engine.RewardTable;
+import uk.co.loonyrules.rp.melonco.enums.Rarity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builder for an immutable {@link RewardTable}.
+ * Rewards can be given their own weight or just a {@link Rarity} to use that rarity's default weight.
+ * @param <T> Type of the rewards
+ */
+public class RewardTableBuilder<T>
+{
+
+    private final List<T> rewards = new ArrayList<>();
+    private final List<Double> weights = new ArrayList<>();
+    private final List<Rarity> rarities = new ArrayList<>();
+
+    /**
+     * Add a reward using its rarity's default weight
+     * @param reward The reward
+     * @param rarity Rarity of the reward
+     * @return The builder instance
+     */
+    public RewardTableBuilder<T> add(T reward, Rarity rarity)
+    {
+        return add(reward, rarity.getWeight(), rarity);
+    }
+
+    /**
+     * Add a reward with its own weight
+     * @param reward The reward
+     * @param weight Weight of the reward
+     * @param rarity Rarity of the reward
+     * @return The builder instance
+     */
+    public RewardTableBuilder<T> add(T reward, double weight, Rarity rarity)
+    {
+        if(reward == null || rarity == null)
+            throw new IllegalArgumentException("Rewards and rarities cannot be null.");
+
+        rewards.add(reward);
+        weights.add(weight);
+        rarities.add(rarity);
+        return this;
+    }
+
+    /**
+     * Get the amount of rewards added so far
+     * @return Amount of rewards
+     */
+    public int size()
+    {
+        return rewards.size();
+    }
+
+    /**
+     * Compile the added rewards into a RewardTable
+     * @return The built RewardTable
+     */
+    public RewardTable<T> build()
+    {
+        double[] weights = new double[this.weights.size()];
+        for(int i = 0; i < weights.length; i++)
+            weights[i] = this.weights.get(i);
+
+        return new RewardTable<>(rewards.toArray(), weights, rarities.toArray(new Rarity[rarities.size()]));
+    }
+
+}
@@ -0,0 +1,172 @@
+package uk.co.loonyrules.rp.melonco.checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of a checkpoint journal. The journal starts with a header and is followed by records, framed the same way as
+ * the ledger: the body's length, the body, then a CRC32 of the body so a torn write at the tail can be spotted.
+ *
+ * A body starts with its type. Openings are checkpointed once when they start and tombstoned once delivered, their
+ * outcome is settled from the start so nothing in between is kept. Replaying the journal leaves only the openings
+ * that never were.
+ */
+final class CheckpointFile
+{
+
+    static final int MAGIC = 0x4D43434B; // MCCK
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 8;
+    static final int FRAME_SIZE = 4 + 4;
+
+    static final byte OPEN = 1, COMPLETE = 3;
+
+    // Version 1 also kept elapsed ticks, in progress records of up to 1024 openings that are skipped when replayed
+    private static final byte PROGRESS = 2;
+    private static final int V1_MAX_BODY_SIZE = 1 + 4 + 1024 * (8 + 4);
+
+    private CheckpointFile()
+    {
+    }
+
+    static void writeHeader(ByteBuffer buffer)
+    {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+    }
+
+    static void writeOpen(ByteBuffer buffer, SpinCheckpoint checkpoint, CRC32 crc)
+    {
+        int start = begin(buffer, OPEN);
+        checkpoint.write(buffer);
+        end(buffer, start, crc);
+    }
+
+    static void writeComplete(ByteBuffer buffer, long id, CRC32 crc)
+    {
+        int start = begin(buffer, COMPLETE);
+        buffer.putLong(id);
+        end(buffer, start, crc);
+    }
+
+    private static int begin(ByteBuffer buffer, byte type)
+    {
+        int start = buffer.position();
+
+        buffer.position(start + 4);
+        buffer.put(type);
+
+        return start;
+    }
+
+    private static void end(ByteBuffer buffer, int start, CRC32 crc)
+    {
+        int end = buffer.position(), length = end - start - 4;
+
+        // Checksumming the body through a view so the buffer's position isn't disturbed
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + 4).limit(end);
+        crc.reset();
+        crc.update(body);
+
+        buffer.putInt(start, length);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Most bytes a framed record can take up
+     * @return Size in bytes
+     */
+    static int maxRecordSize()
+    {
+        return FRAME_SIZE + 1 + Math.max(SpinCheckpoint.maxSize(), 8);
+    }
+
+    /**
+     * Replay a journal, stopping at the first torn or corrupt record
+     * @param file The journal, which may not exist
+     * @return Every opening checkpointed but not tombstoned, by id
+     * @throws IOException If the journal can't be read or isn't a journal
+     */
+    static Map<Long, SpinCheckpoint> replay(File file) throws IOException
+    {
+        Map<Long, SpinCheckpoint> live = new HashMap<>();
+
+        if(!file.exists())
+            return live;
+
+        ByteBuffer buffer;
+
+        // Compaction keeps the journal small, so it's read in one go
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException(file + " is too large to be a checkpoint journal.");
+
+            buffer = ByteBuffer.allocate((int) channel.size());
+
+            while(buffer.hasRemaining())
+            {
+                if(channel.read(buffer) < 0)
+                    break;
+            }
+
+            buffer.flip();
+        }
+
+        if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+            throw new IOException(file + " isn't a checkpoint journal.");
+
+        int version = buffer.getInt();
+
+        if(version != 1 && version != VERSION)
+            throw new IOException(file + " is version " + version + ", only versions 1 to " + VERSION + " are supported.");
+
+        CRC32 crc = new CRC32();
+        int maxBodySize = version == 1 ? V1_MAX_BODY_SIZE : maxRecordSize() - FRAME_SIZE;
+
+        while(buffer.remaining() >= FRAME_SIZE)
+        {
+            int start = buffer.position(), length = buffer.getInt();
+
+            if(length <= 0 || length > maxBodySize || buffer.remaining() < length + 4)
+                break;
+
+            crc.reset();
+            crc.update(buffer.array(), start + 4, length);
+
+            if((int) crc.getValue() != buffer.getInt(start + 4 + length))
+                break;
+
+            ByteBuffer body = buffer.duplicate();
+            body.position(start + 4).limit(start + 4 + length);
+            apply(body, version, live);
+
+            buffer.position(start + 4 + length + 4);
+        }
+
+        return live;
+    }
+
+    private static void apply(ByteBuffer body, int version, Map<Long, SpinCheckpoint> live)
+    {
+        switch(body.get())
+        {
+            case OPEN:
+                SpinCheckpoint checkpoint = SpinCheckpoint.read(body, version);
+                live.put(checkpoint.getId(), checkpoint);
+                break;
+            case PROGRESS:
+                break;
+            case COMPLETE:
+                live.remove(body.getLong());
+                break;
+        }
+    }
+
+}
@@ -0,0 +1,372 @@
+package uk.co.loonyrules.rp.melonco.checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Journal of the Crate openings in progress, so an opening the server stops part way through can be settled on the
+ * next start. Checkpointing only queues, a dedicated I/O thread writes everything queued with a single FileChannel
+ * write and forces it to disk periodically.
+ *
+ * Openings are only in the journal until they're delivered, so once it grows past a size the I/O thread rewrites it
+ * with just the openings still in progress. Every start does the same, which also drops a tail torn by a crash.
+ */
+public class CheckpointJournal
+{
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final File file, temporary;
+    private final long compactSize, forceIntervalNanos;
+    private final Logger logger;
+
+    private final ConcurrentLinkedQueue<Op> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextId = new AtomicLong(), queued = new AtomicLong();
+    private volatile long written, failed;
+    private volatile int inProgress;
+    private volatile boolean running, sleeping;
+
+    private Thread thread;
+
+    // Only touched by the I/O thread
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final Map<Long, SpinCheckpoint> live = new HashMap<>();
+    private FileChannel channel;
+    private long position, lastForce;
+    private int bufferedOps;
+    private boolean dirty;
+
+    /**
+     * Initialise a CheckpointJournal
+     * @param file The journal file
+     * @param compactSize Size the journal can grow to before it's rewritten with only the openings in progress, in bytes
+     * @param forceInterval How often checkpoints are forced to disk, in milliseconds
+     * @param logger Where I/O failures are reported
+     */
+    public CheckpointJournal(File file, long compactSize, long forceInterval, Logger logger)
+    {
+        this.file = file;
+        this.temporary = new File(file.getPath() + ".tmp");
+        this.compactSize = compactSize;
+        this.forceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(forceInterval);
+        this.logger = logger;
+    }
+
+    /**
+     * Replay the journal and start the I/O thread. The openings returned stay in the journal until they're completed,
+     * so they're recovered again if the server stops before they're settled.
+     * @return Openings that were in progress when the server last stopped, oldest first
+     * @throws IOException If the journal can't be read or rewritten
+     */
+    public synchronized List<SpinCheckpoint> start() throws IOException
+    {
+        if(thread != null)
+            throw new IllegalStateException("The checkpoint journal has already been started.");
+
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+
+        List<SpinCheckpoint> pending = new ArrayList<>(CheckpointFile.replay(file).values());
+        pending.sort(Comparator.comparingLong(SpinCheckpoint::getId));
+
+        for(SpinCheckpoint checkpoint : pending)
+            live.put(checkpoint.getId(), checkpoint);
+
+        nextId.set(pending.isEmpty() ? 0 : pending.get(pending.size() - 1).getId() + 1);
+        compact();
+
+        running = true;
+        thread = new Thread(this::run, "Crates-Checkpoints");
+        thread.setDaemon(true);
+        thread.start();
+
+        return pending;
+    }
+
+    /**
+     * Checkpoint an opening that's starting, safe to call from any thread
+     * @param startedAt When the opening started in milliseconds
+     * @param player UUID of the Player opening the Crate
+     * @param crate Name of the Crate
+     * @param seed Seed of the spin
+     * @param outcome Index of the reward the spin lands on
+     * @return Id of the checkpoint, for completing it
+     */
+    public long open(long startedAt, UUID player, String crate, long seed, int outcome)
+    {
+        long id = nextId.getAndIncrement();
+        offer(new Op(CheckpointFile.OPEN, new SpinCheckpoint(id, startedAt, player, crate, seed, outcome)));
+
+        return id;
+    }
+
+    /**
+     * Tombstone an opening that's been settled, safe to call from any thread
+     * @param id Id of the checkpoint
+     */
+    public void complete(long id)
+    {
+        offer(new Op(CheckpointFile.COMPLETE, id));
+    }
+
+    /**
+     * Write everything still queued, force it to disk and stop the I/O thread
+     * @param timeout Longest to wait in milliseconds
+     */
+    public synchronized void close(long timeout)
+    {
+        if(thread == null || !running)
+            return;
+
+        running = false;
+        LockSupport.unpark(thread);
+
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if(thread.isAlive())
+            logger.warning("Timed out closing the checkpoint journal, " + getPending() + " checkpoints may not have been written.");
+    }
+
+    /**
+     * Get the amount of openings in progress as of the last write
+     * @return Openings checkpointed but not completed
+     */
+    public int getInProgress()
+    {
+        return inProgress;
+    }
+
+    /**
+     * Get the amount of checkpoints waiting to be written
+     * @return Checkpoints queued or buffered
+     */
+    public long getPending()
+    {
+        return queued.get() - written - failed;
+    }
+
+    /**
+     * Get the amount of checkpoints lost to I/O failures
+     * @return Total checkpoints lost
+     */
+    public long getFailed()
+    {
+        return failed;
+    }
+
+    private void offer(Op op)
+    {
+        if(!running)
+            throw new IllegalStateException("The checkpoint journal isn't running.");
+
+        queue.offer(op);
+        queued.incrementAndGet();
+
+        if(sleeping)
+            LockSupport.unpark(thread);
+    }
+
+    private void run()
+    {
+        lastForce = System.nanoTime();
+
+        while(true)
+        {
+            Op op = queue.poll();
+
+            if(op != null)
+            {
+                buffer(op);
+                continue;
+            }
+
+            // Queue is drained, writing everything gathered in one go
+            writeBuffer();
+
+            if(position > compactSize)
+            {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Failed to compact the checkpoint journal", e);
+                }
+            }
+
+            if(dirty && (System.nanoTime() - lastForce >= forceIntervalNanos || !running))
+                force();
+
+            if(!running && queue.isEmpty())
+                break;
+
+            // Sleeping until something is queued, checking the queue again after saying so to not miss a wake up
+            sleeping = true;
+
+            if(queue.isEmpty() && running)
+                LockSupport.parkNanos(this, dirty ? Math.min(IDLE_PARK, forceIntervalNanos) : IDLE_PARK);
+
+            sleeping = false;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to close the checkpoint journal", e);
+        }
+    }
+
+    private void buffer(Op op)
+    {
+        if(buffer.remaining() < CheckpointFile.maxRecordSize())
+            writeBuffer();
+
+        switch(op.type)
+        {
+            case CheckpointFile.OPEN:
+                live.put(op.checkpoint.getId(), op.checkpoint);
+                CheckpointFile.writeOpen(buffer, op.checkpoint, crc);
+                break;
+            case CheckpointFile.COMPLETE:
+                live.remove(op.id);
+                CheckpointFile.writeComplete(buffer, op.id, crc);
+                break;
+        }
+
+        bufferedOps++;
+    }
+
+    private void writeBuffer()
+    {
+        if(buffer.position() == 0)
+            return;
+
+        buffer.flip();
+
+        try {
+            while(buffer.hasRemaining())
+                position += channel.write(buffer);
+
+            dirty = true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to write " + bufferedOps + " checkpoints, rewriting the journal", e);
+            failed += bufferedOps;
+            bufferedOps = 0;
+
+            // A failed write may have left part of a record behind, the openings in progress are all still known
+            try {
+                compact();
+            } catch (IOException again) {
+                logger.log(Level.SEVERE, "Failed to rewrite the checkpoint journal", again);
+            }
+        }
+
+        written += bufferedOps;
+        inProgress = live.size();
+        buffer.clear();
+        bufferedOps = 0;
+    }
+
+    // Rewriting the journal aside with only the openings in progress, then moving it into place
+    private void compact() throws IOException
+    {
+        try(FileChannel compacted = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+            CheckpointFile.writeHeader(out);
+
+            for(SpinCheckpoint checkpoint : live.values())
+            {
+                if(out.remaining() < CheckpointFile.maxRecordSize())
+                    drain(out, compacted);
+
+                CheckpointFile.writeOpen(out, checkpoint, crc);
+            }
+
+            drain(out, compacted);
+            compacted.force(false);
+        }
+
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if(channel != null)
+            channel.close();
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        position = channel.size();
+        channel.position(position);
+
+        inProgress = live.size();
+        dirty = false;
+        lastForce = System.nanoTime();
+    }
+
+    private static void drain(ByteBuffer out, FileChannel channel) throws IOException
+    {
+        out.flip();
+
+        while(out.hasRemaining())
+            channel.write(out);
+
+        out.clear();
+    }
+
+    private void force()
+    {
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to force the checkpoint journal to disk", e);
+        }
+
+        lastForce = System.nanoTime();
+    }
+
+    private static final class Op
+    {
+
+        private final byte type;
+        private final SpinCheckpoint checkpoint;
+        private final long id;
+
+        private Op(byte type, SpinCheckpoint checkpoint)
+        {
+            this(type, checkpoint, -1);
+        }
+
+        private Op(byte type, long id)
+        {
+            this(type, null, id);
+        }
+
+        private Op(byte type, SpinCheckpoint checkpoint, long id)
+        {
+            this.type = type;
+            this.checkpoint = checkpoint;
+            this.id = id;
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+package uk.co.loonyrules.rp.melonco.checkpoint;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A Crate opening that's in progress, as it's kept in the {@link CheckpointJournal}. Holds everything needed to settle
+ * the opening if the server stops before it's delivered. Immutable.
+ */
+public final class SpinCheckpoint
+{
+
+    /**
+     * Longest a Crate name can be before it's cut short, in characters
+     */
+    public static final int MAX_CRATE_LENGTH = 64;
+
+    private final long id;
+    private final long startedAt;
+    private final UUID player;
+    private final String crate;
+    private final long seed;
+    private final int outcome;
+
+    /**
+     * Initialise a SpinCheckpoint
+     * @param id Id of the checkpoint, unique within its journal
+     * @param startedAt When the opening started in milliseconds
+     * @param player UUID of the Player opening the Crate
+     * @param crate Name of the Crate
+     * @param seed Seed of the spin
+     * @param outcome Index of the reward the spin lands on
+     */
+    public SpinCheckpoint(long id, long startedAt, UUID player, String crate, long seed, int outcome)
+    {
+        this.id = id;
+        this.startedAt = startedAt;
+        this.player = player;
+        this.crate = crate.length() > MAX_CRATE_LENGTH ? crate.substring(0, MAX_CRATE_LENGTH) : crate;
+        this.seed = seed;
+        this.outcome = outcome;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public long getStartedAt()
+    {
+        return startedAt;
+    }
+
+    public UUID getPlayer()
+    {
+        return player;
+    }
+
+    public String getCrate()
+    {
+        return crate;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    public int getOutcome()
+    {
+        return outcome;
+    }
+
+    /**
+     * Write this checkpoint's fields
+     * @param buffer Where it's written, needs at least {@link #maxSize()} bytes remaining
+     */
+    void write(ByteBuffer buffer)
+    {
+        byte[] name = crate.getBytes(StandardCharsets.UTF_8);
+
+        buffer.putLong(id);
+        buffer.putLong(startedAt);
+        buffer.putLong(player.getMostSignificantBits());
+        buffer.putLong(player.getLeastSignificantBits());
+        buffer.putLong(seed);
+        buffer.putInt(outcome);
+        buffer.put((byte) name.length);
+        buffer.put(name);
+    }
+
+    /**
+     * Read a checkpoint's fields
+     * @param buffer Positioned at the start of the fields
+     * @param version Version of the journal it's read from, version 1 also kept the elapsed ticks
+     * @return The checkpoint
+     */
+    static SpinCheckpoint read(ByteBuffer buffer, int version)
+    {
+        long id = buffer.getLong(), startedAt = buffer.getLong();
+        UUID player = new UUID(buffer.getLong(), buffer.getLong());
+        long seed = buffer.getLong();
+        int outcome = buffer.getInt();
+
+        if(version == 1)
+            buffer.getInt();
+
+        byte[] name = new byte[buffer.get() & 0xFF];
+        buffer.get(name);
+
+        return new SpinCheckpoint(id, startedAt, player, new String(name, StandardCharsets.UTF_8), seed, outcome);
+    }
+
+    /**
+     * Most bytes a checkpoint's fields can take up
+     * @return Size in bytes
+     */
+    static int maxSize()
+    {
+        // Fixed fields, then a length prefixed name of up to 3 bytes a character
+        return 8 * 5 + 4 + 1 + MAX_CRATE_LENGTH * 3;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SpinCheckpoint{id=" + id + ", startedAt=" + startedAt + ", player=" + player + ", crate=" + crate + ", seed=" + seed + ", outcome=" + outcome + "}";
+    }
+
+}
@@ -0,0 +1,115 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * Vose's alias method. Built once in O(n) and then every sample is O(1) no matter how many weights there are.
+ * Each column holds its own index and an alias, a sample picks a column and flips a biased coin between the two.
+ */
+public final class AliasTable
+{
+
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * Build an alias table from a set of weights
+     * @param weights Relative weights, these don't need to add up to anything in particular
+     */
+    public AliasTable(double[] weights)
+    {
+        int size = weights.length;
+
+        if(size == 0)
+            throw new IllegalArgumentException("Cannot build an alias table without any weights.");
+
+        double total = 0;
+        int heaviest = 0;
+
+        for(int i = 0; i < size; i++)
+        {
+            double weight = weights[i];
+
+            if(weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight))
+                throw new IllegalArgumentException("Weights must be finite and not negative, got " + weight);
+
+            if(weight > weights[heaviest])
+                heaviest = i;
+
+            total += weight;
+        }
+
+        if(total <= 0)
+            throw new IllegalArgumentException("At least one weight must be above 0.");
+
+        this.probability = new double[size];
+        this.alias = new int[size];
+
+        // Scaling so the average column is exactly 1
+        double[] scaled = new double[size];
+        int[] small = new int[size], large = new int[size];
+        int smallSize = 0, largeSize = 0;
+
+        for(int i = 0; i < size; i++)
+        {
+            scaled[i] = weights[i] * size / total;
+
+            if(scaled[i] < 1)
+                small[smallSize++] = i;
+            else large[largeSize++] = i;
+        }
+
+        // Topping up every small column with part of a large one
+        while(smallSize > 0 && largeSize > 0)
+        {
+            int less = small[--smallSize], more = large[--largeSize];
+
+            probability[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+
+            if(scaled[more] < 1)
+                small[smallSize++] = more;
+            else large[largeSize++] = more;
+        }
+
+        // Whatever's left over is full, small leftovers only happen through rounding
+        while(largeSize > 0)
+        {
+            int index = large[--largeSize];
+            probability[index] = 1;
+            alias[index] = index;
+        }
+
+        while(smallSize > 0)
+        {
+            int index = small[--smallSize];
+
+            // A reward with no weight must never be picked, even through rounding
+            probability[index] = weights[index] > 0 ? 1 : 0;
+            alias[index] = weights[index] > 0 ? index : heaviest;
+        }
+    }
+
+    /**
+     * Get the amount of columns in this table
+     * @return Amount of weights the table was built from
+     */
+    public int size()
+    {
+        return alias.length;
+    }
+
+    /**
+     * Pick an index, weighted by the weights this table was built with
+     * @param random Source of randomness
+     * @return The picked index
+     */
+    public int sample(SplittableRandom random)
+    {
+        int column = random.nextInt(alias.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+}
@@ -0,0 +1,107 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * The outcomes of many openings of one Crate at once, with none of them animated.
+ *
+ * Each opening still gets its own seed, and its reward is the one {@link SpinTimeline#resolveWinner(long, RewardTable)}
+ * resolves that seed to, so every opening replays and recovers exactly like a spin would. Nothing but the outcome is
+ * worked out, two draws and an alias table sample each, and the rewards are counted as they're picked so identical
+ * rewards are handed out together.
+ */
+public final class BulkOutcome
+{
+
+    private final long[] seeds;
+    private final int[] winners;
+    private final int[] counts;
+
+    private BulkOutcome(long[] seeds, int[] winners, int[] counts)
+    {
+        this.seeds = seeds;
+        this.winners = winners;
+        this.counts = counts;
+    }
+
+    /**
+     * Work out the outcomes of openings in one pass
+     * @param random Where each opening's seed comes from
+     * @param rewards The Crate's rewards
+     * @param openings Amount of openings
+     * @return The outcomes
+     */
+    public static BulkOutcome resolve(SplittableRandom random, RewardTable<?> rewards, int openings)
+    {
+        if(openings <= 0)
+            throw new IllegalArgumentException("There has to be at least one opening, got " + openings);
+
+        long[] seeds = new long[openings];
+        int[] winners = new int[openings];
+        int[] counts = new int[rewards.size()];
+
+        for(int i = 0; i < openings; i++)
+        {
+            seeds[i] = random.nextLong();
+            winners[i] = SpinTimeline.resolveWinner(seeds[i], rewards);
+            counts[winners[i]]++;
+        }
+
+        return new BulkOutcome(seeds, winners, counts);
+    }
+
+    /**
+     * Get the amount of openings
+     * @return Amount of openings
+     */
+    public int size()
+    {
+        return seeds.length;
+    }
+
+    /**
+     * Get the seed of an opening
+     * @param opening Index of the opening
+     * @return Its seed
+     */
+    public long getSeed(int opening)
+    {
+        return seeds[opening];
+    }
+
+    /**
+     * Get the reward an opening won
+     * @param opening Index of the opening
+     * @return Index of the reward
+     */
+    public int getWinner(int opening)
+    {
+        return winners[opening];
+    }
+
+    /**
+     * Get how many of the openings won a reward
+     * @param reward Index of the reward
+     * @return Times it was won, 0 if it wasn't
+     */
+    public int getCount(int reward)
+    {
+        return counts[reward];
+    }
+
+    /**
+     * Get the amount of different rewards won
+     * @return Rewards won at least once
+     */
+    public int getDistinct()
+    {
+        int distinct = 0;
+
+        for(int count : counts)
+            if(count > 0)
+                distinct++;
+
+        return distinct;
+    }
+
+}
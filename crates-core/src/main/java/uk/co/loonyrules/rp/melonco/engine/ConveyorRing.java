@@ -0,0 +1,91 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * The conveyor row of a Crate as a fixed ring of reward indexes.
+ * Moving the conveyor overwrites the slot that just fell off the left with a new reward and bumps the head, so a spin
+ * never allocates past construction no matter how long it runs.
+ */
+public final class ConveyorRing
+{
+
+    private final int[] slots = new int[SpinTimeline.ROW];
+    private final RewardTable<?> rewards;
+    private final SplittableRandom random;
+    private final int winner, winningPosition;
+
+    private int head, moves;
+
+    /**
+     * Create the conveyor for a spin
+     * @param timeline The spin this conveyor is for
+     * @param rewards The rewards the conveyor's filler is drawn from
+     */
+    public ConveyorRing(SpinTimeline timeline, RewardTable<?> rewards)
+    {
+        this(rewards, timeline.getConveyorSeed(), timeline.getWinner(), timeline.getWinningPosition());
+    }
+
+    /**
+     * Create a conveyor
+     * @param rewards The rewards the conveyor's filler is drawn from
+     * @param seed Seed for the filler
+     * @param winner Index of the reward that has to show up at the winning position
+     * @param winningPosition How many rewards into the conveyor the winner is, -1 for none
+     */
+    public ConveyorRing(RewardTable<?> rewards, long seed, int winner, int winningPosition)
+    {
+        this.rewards = rewards;
+        this.random = new SplittableRandom(seed);
+        this.winner = winner;
+        this.winningPosition = winningPosition;
+    }
+
+    /**
+     * Move the conveyor one slot to the left, the first move fills the whole row
+     */
+    public void advance()
+    {
+        if(moves++ == 0)
+        {
+            for(int i = 0; i < slots.length; i++)
+                slots[i] = next(i);
+
+            return;
+        }
+
+        // The slot at the head has just fallen off the left, reusing it for the new item on the right
+        slots[head] = next(moves + slots.length - 2);
+        head = head == slots.length - 1 ? 0 : head + 1;
+    }
+
+    private int next(int position)
+    {
+        return position == winningPosition ? winner : rewards.sample(random);
+    }
+
+    /**
+     * Get the amount of times the conveyor has moved
+     * @return Amount of moves
+     */
+    public int getMoves()
+    {
+        return moves;
+    }
+
+    /**
+     * Get the reward shown in a column of the conveyor
+     * @param column Column between 0 and 8
+     * @return Index into the rewards, -1 if the conveyor hasn't been filled yet
+     */
+    public int get(int column)
+    {
+        if(moves == 0)
+            return -1;
+
+        int index = head + column;
+        return slots[index >= slots.length ? index - slots.length : index];
+    }
+
+}
@@ -0,0 +1,143 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import java.util.Arrays;
+
+/**
+ * What a Crate's inventory should look like, kept as ints so frames can be diffed without touching any ItemStacks.
+ * Every slot that differs from what was last flushed is marked dirty, flushing only writes those slots so the client is
+ * only sent the slots that actually changed.
+ */
+public final class FrameBuffer
+{
+
+    /**
+     * Amount of slots in a Crate's inventory
+     */
+    public static final int SIZE = SpinTimeline.ROW * 3;
+
+    public static final int EMPTY = -1, PLACEHOLDER = -2, POINTER = -3;
+
+    /**
+     * Receives the slots that need writing when a frame is flushed
+     */
+    public interface SlotWriter
+    {
+
+        /**
+         * Write a slot
+         * @param slot The slot that changed
+         * @param id What should now be in the slot, a reward index or one of the FrameBuffer constants
+         */
+        void write(int slot, int id);
+
+    }
+
+    private final int[] rendered = new int[SIZE], pending = new int[SIZE];
+    private int dirty;
+
+    private int pointer = -1, conveyorMoves;
+
+    public FrameBuffer()
+    {
+        Arrays.fill(rendered, EMPTY);
+        Arrays.fill(pending, EMPTY);
+    }
+
+    /**
+     * Set what a slot should show in the next frame
+     * @param slot The slot
+     * @param id A reward index or one of the FrameBuffer constants
+     */
+    public void set(int slot, int id)
+    {
+        pending[slot] = id;
+
+        if(rendered[slot] == id)
+            dirty &= ~(1 << slot);
+        else dirty |= 1 << slot;
+    }
+
+    /**
+     * Fill a range of slots
+     * @param start First slot
+     * @param finish Last slot, inclusive
+     * @param id A reward index or one of the FrameBuffer constants
+     */
+    public void fill(int start, int finish, int id)
+    {
+        for(int slot = start; slot <= finish; slot++)
+            set(slot, id);
+    }
+
+    /**
+     * Move the pointer, nothing is marked if it's already there
+     * @param slot Top row slot between 0 and 8
+     */
+    public void setPointer(int slot)
+    {
+        if(slot == pointer)
+            return;
+
+        if(pointer >= 0)
+            set(pointer, PLACEHOLDER);
+
+        set(slot, POINTER);
+        pointer = slot;
+    }
+
+    /**
+     * Get the slot the pointer is in
+     * @return Top row slot, -1 if the pointer hasn't been placed
+     */
+    public int getPointer()
+    {
+        return pointer;
+    }
+
+    /**
+     * Copy the conveyor into the middle row, nothing is marked if it hasn't moved since it was last copied
+     * @param conveyor The conveyor
+     */
+    public void setConveyor(ConveyorRing conveyor)
+    {
+        if(conveyor.getMoves() == conveyorMoves)
+            return;
+
+        for(int column = 0; column < SpinTimeline.ROW; column++)
+            set(SpinTimeline.ROW + column, conveyor.get(column));
+
+        conveyorMoves = conveyor.getMoves();
+    }
+
+    /**
+     * Find out whether the next flush will write anything
+     * @return True if any slot has changed
+     */
+    public boolean isDirty()
+    {
+        return dirty != 0;
+    }
+
+    /**
+     * Write every changed slot and mark the frame as rendered
+     * @param writer Receives each changed slot
+     * @return Amount of slots written
+     */
+    public int flush(SlotWriter writer)
+    {
+        int written = 0;
+
+        while(dirty != 0)
+        {
+            int slot = Integer.numberOfTrailingZeros(dirty);
+            dirty &= dirty - 1;
+
+            rendered[slot] = pending[slot];
+            writer.write(slot, pending[slot]);
+            written++;
+        }
+
+        return written;
+    }
+
+}
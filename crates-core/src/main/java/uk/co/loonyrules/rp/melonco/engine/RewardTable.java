@@ -0,0 +1,112 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import uk.co.loonyrules.rp.melonco.enums.Rarity;
+
+import java.util.SplittableRandom;
+
+/**
+ * An immutable, weighted set of rewards. Sampling goes through an {@link AliasTable} so it's O(1) however many rewards there are.
+ * @param <T> Type of the rewards
+ */
+public final class RewardTable<T>
+{
+
+    private final Object[] rewards;
+    private final double[] weights;
+    private final Rarity[] rarities;
+    private final double totalWeight;
+    private final AliasTable aliasTable;
+
+    /**
+     * Compile a RewardTable, these should be built with a {@link uk.co.loonyrules.rp.melonco.builders.RewardTableBuilder}
+     * @param rewards The rewards
+     * @param weights Weight of each reward
+     * @param rarities Rarity of each reward
+     */
+    public RewardTable(Object[] rewards, double[] weights, Rarity[] rarities)
+    {
+        if(rewards.length != weights.length || rewards.length != rarities.length)
+            throw new IllegalArgumentException("Every reward needs a weight and a rarity.");
+
+        this.rewards = rewards.clone();
+        this.weights = weights.clone();
+        this.rarities = rarities.clone();
+        this.aliasTable = new AliasTable(this.weights);
+
+        double totalWeight = 0;
+        for(double weight : this.weights)
+            totalWeight += weight;
+
+        this.totalWeight = totalWeight;
+    }
+
+    /**
+     * Get the amount of rewards in this table
+     * @return Amount of rewards
+     */
+    public int size()
+    {
+        return rewards.length;
+    }
+
+    /**
+     * Get a reward
+     * @param index Index of the reward
+     * @return The reward
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index)
+    {
+        return (T) rewards[index];
+    }
+
+    /**
+     * Get the weight of a reward
+     * @param index Index of the reward
+     * @return The weight it was added with
+     */
+    public double getWeight(int index)
+    {
+        return weights[index];
+    }
+
+    /**
+     * Get the chance of a reward being picked
+     * @param index Index of the reward
+     * @return Chance between 0 and 1
+     */
+    public double getChance(int index)
+    {
+        return weights[index] / totalWeight;
+    }
+
+    /**
+     * Get the rarity of a reward
+     * @param index Index of the reward
+     * @return The rarity
+     */
+    public Rarity getRarity(int index)
+    {
+        return rarities[index];
+    }
+
+    /**
+     * Get all of the weights added together
+     * @return The total weight
+     */
+    public double getTotalWeight()
+    {
+        return totalWeight;
+    }
+
+    /**
+     * Pick a reward, weighted by each reward's weight
+     * @param random Source of randomness
+     * @return Index of the picked reward
+     */
+    public int sample(SplittableRandom random)
+    {
+        return aliasTable.sample(random);
+    }
+
+}
@@ -0,0 +1,181 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+/**
+ * The state machine behind a single Crate spin, with nothing tied to a server.
+ * Each call to {@link #step()} replays one step of the {@link SpinTimeline} into a {@link FrameBuffer} and reports what
+ * happened, whoever is driving the spin decides what to do with the frame and the events.
+ */
+public final class Spin
+{
+
+    /**
+     * The pointer moved this step
+     */
+    public static final int POINTER_MOVED = 1;
+
+    /**
+     * The reward was revealed this step
+     */
+    public static final int REVEALED = 1 << 1;
+
+    /**
+     * The spin is over and can be dropped
+     */
+    public static final int FINISHED = 1 << 2;
+
+    /**
+     * Steps to wait after the reveal before finishing
+     */
+    public static final int LINGER_STEPS = 10;
+
+    private final SpinTimeline timeline;
+    private final RewardTable<?> rewards;
+    private final ConveyorRing conveyor;
+    private final FrameBuffer frame = new FrameBuffer();
+
+    private int stepIndex;
+    private int lingerSteps = -1;
+    private boolean finished;
+
+    /**
+     * Create a spin and draw its first frame
+     * @param seed Seed the whole spin is derived from
+     * @param rewards The rewards being spun for
+     */
+    public Spin(long seed, RewardTable<?> rewards)
+    {
+        this(SpinTimeline.generate(seed, rewards), rewards);
+    }
+
+    /**
+     * Create a spin with its own timings and draw its first frame
+     * @param seed Seed the whole spin is derived from
+     * @param rewards The rewards being spun for
+     * @param timings How long the spin lasts
+     */
+    public Spin(long seed, RewardTable<?> rewards, SpinTimings timings)
+    {
+        this(SpinTimeline.generate(seed, rewards, timings), rewards);
+    }
+
+    /**
+     * Create a spin from an already worked out timeline and draw its first frame
+     * @param timeline The precomputed spin
+     * @param rewards The rewards the timeline was generated from
+     */
+    public Spin(SpinTimeline timeline, RewardTable<?> rewards)
+    {
+        this.timeline = timeline;
+        this.rewards = rewards;
+        this.conveyor = new ConveyorRing(timeline, rewards);
+
+        // First frame, placeholders on the top and bottom rows with the pointer on the far left
+        frame.fill(0, SpinTimeline.ROW - 1, FrameBuffer.PLACEHOLDER);
+        frame.fill(SpinTimeline.ROW * 2, FrameBuffer.SIZE - 1, FrameBuffer.PLACEHOLDER);
+        frame.setPointer(0);
+    }
+
+    /**
+     * Move the spin on by one step
+     * @return What happened, a combination of {@link #POINTER_MOVED}, {@link #REVEALED} and {@link #FINISHED}
+     */
+    public int step()
+    {
+        if(finished)
+            return FINISHED;
+
+        // Reward has been revealed, waiting a little before finishing
+        if(lingerSteps >= 0)
+        {
+            if(lingerSteps-- > 0)
+                return 0;
+
+            finished = true;
+            return FINISHED;
+        }
+
+        int step = stepIndex++;
+
+        if(timeline.isConveyorMoved(step))
+            conveyor.advance();
+
+        frame.setConveyor(conveyor);
+        frame.setPointer(timeline.getPointer(step));
+
+        if(!timeline.isPointerMoved(step))
+            return 0;
+
+        // Last step is always a pointer move, that's where the pointer stops
+        if(stepIndex == timeline.getSteps())
+        {
+            lingerSteps = LINGER_STEPS;
+            return POINTER_MOVED | REVEALED;
+        }
+
+        return POINTER_MOVED;
+    }
+
+    /**
+     * Get the frame the spin is drawing into
+     * @return The FrameBuffer, flush it to render the latest steps
+     */
+    public FrameBuffer getFrame()
+    {
+        return frame;
+    }
+
+    /**
+     * Get the precomputed spin
+     * @return The timeline being replayed
+     */
+    public SpinTimeline getTimeline()
+    {
+        return timeline;
+    }
+
+    /**
+     * Get the rewards being spun for
+     * @return The RewardTable
+     */
+    public RewardTable<?> getRewards()
+    {
+        return rewards;
+    }
+
+    /**
+     * Get the amount of steps taken so far, not counting lingering after the reveal
+     * @return Steps taken
+     */
+    public int getStepIndex()
+    {
+        return stepIndex;
+    }
+
+    /**
+     * Get the amount of steps from the first to finishing, including lingering after the reveal
+     * @return Total steps
+     */
+    public int getTotalSteps()
+    {
+        return timeline.getSteps() + LINGER_STEPS + 1;
+    }
+
+    /**
+     * Find out whether the reward has been revealed
+     * @return True once the reveal step has been taken
+     */
+    public boolean isRevealed()
+    {
+        return lingerSteps >= 0 || finished;
+    }
+
+    /**
+     * Find out whether the spin is over
+     * @return True once the spin has finished lingering after the reveal
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+}
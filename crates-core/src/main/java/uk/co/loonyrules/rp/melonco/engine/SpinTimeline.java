@@ -0,0 +1,230 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * The whole animation of a Crate opening, worked out before the first frame is shown.
+ * The outcome, the reveal time, the conveyor's filler and the path of the pointer all come from a single seed so the same
+ * seed always replays the same spin. Each step is packed into one int in a keyframe table that the renderer just reads.
+ */
+public final class SpinTimeline
+{
+
+    /**
+     * Amount of slots in a row of the Crate's inventory (pointer row, conveyor row and bottom row)
+     */
+    public static final int ROW = 9;
+
+    /**
+     * With this many steps left the conveyor and pointer start to slow down
+     */
+    public static final int SLOWDOWN_STEPS = 50;
+
+    private static final int POINTER_MASK = 0xF;
+    private static final int POINTER_MOVED = 1 << 4;
+    private static final int CONVEYOR_MOVED = 1 << 5;
+    private static final int OFFSET_SHIFT = 8;
+
+    private final long seed;
+    private final long conveyorSeed;
+    private final int[] frames;
+    private final int winner, winningPosition;
+
+    private SpinTimeline(long seed, long conveyorSeed, int[] frames, int winner, int winningPosition)
+    {
+        this.seed = seed;
+        this.conveyorSeed = conveyorSeed;
+        this.frames = frames;
+        this.winner = winner;
+        this.winningPosition = winningPosition;
+    }
+
+    /**
+     * Work out a spin for a Crate with the default timings
+     * @param seed Seed the whole spin is derived from
+     * @param rewards The Crate's rewards, used for the outcome and for the conveyor's filler
+     * @return The precomputed spin
+     */
+    public static SpinTimeline generate(long seed, RewardTable<?> rewards)
+    {
+        return generate(seed, rewards, SpinTimings.DEFAULT);
+    }
+
+    /**
+     * Work out a spin for a Crate
+     * @param seed Seed the whole spin is derived from
+     * @param rewards The Crate's rewards, used for the outcome and for the conveyor's filler
+     * @param timings How long the Crate's spins last
+     * @return The precomputed spin
+     */
+    public static SpinTimeline generate(long seed, RewardTable<?> rewards, SpinTimings timings)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+
+        // Randomising reveal time, this is the amount of steps the spin lasts for
+        int steps = timings.steps(random.nextInt(SpinTimings.lengths()));
+        int[] frames = new int[steps];
+
+        int pointer = 0, offset = -1;
+        boolean forwards = true;
+
+        for(int step = 0; step < steps; step++)
+        {
+            int remaining = steps - 1 - step;
+            int frame = 0;
+
+            if(isConveyorStep(remaining))
+            {
+                offset++;
+                frame |= CONVEYOR_MOVED;
+            }
+
+            if(isPointerStep(remaining))
+            {
+                // Bouncing between the first and last slot of the top row
+                if(forwards && pointer == ROW - 1)
+                    forwards = false;
+                else if(!forwards && pointer == 0)
+                    forwards = true;
+
+                pointer += forwards ? 1 : -1;
+                frame |= POINTER_MOVED;
+            }
+
+            frames[step] = frame | pointer | (offset << OFFSET_SHIFT);
+        }
+
+        // Deciding the outcome, the conveyor places it under where the pointer stops
+        int winner = rewards.sample(random);
+
+        return new SpinTimeline(seed, random.nextLong(), frames, winner, offset + pointer);
+    }
+
+    /**
+     * Work out only the outcome of a spin, without building the rest of it. Always matches
+     * {@link #generate(long, RewardTable, SpinTimings)}'s winner, whatever the timings.
+     * @param seed Seed the spin is derived from
+     * @param rewards The Crate's rewards
+     * @return Index of the reward that's won
+     */
+    public static int resolveWinner(long seed, RewardTable<?> rewards)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+
+        // Same draws in the same order as generate
+        random.nextInt(SpinTimings.lengths());
+        return rewards.sample(random);
+    }
+
+    /*
+     * - More than SLOWDOWN_STEPS steps left means full speed
+     * - Slowing down speed depends on how long until reveal
+     *   Closer it gets the more it slows down
+     * - The pointer is affected by the slowdown too, but not as strongly to make a more random outcome
+     */
+
+    private static boolean isConveyorStep(int remaining)
+    {
+        return remaining > SLOWDOWN_STEPS || remaining % (remaining > 40 ? 2 : remaining > 30 ? 6 : remaining > 20 ? 8 : 14) == 0;
+    }
+
+    private static boolean isPointerStep(int remaining)
+    {
+        return remaining > SLOWDOWN_STEPS || remaining % (remaining > 40 ? 2 : remaining > 30 ? 5 : remaining > 20 ? 6 : 10) == 0;
+    }
+
+    /**
+     * Get the seed this spin was generated from
+     * @return The seed
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Get the seed the conveyor's filler is drawn with
+     * @return The seed for a {@link ConveyorRing}
+     */
+    public long getConveyorSeed()
+    {
+        return conveyorSeed;
+    }
+
+    /**
+     * Get the amount of steps before the reward is revealed
+     * @return Amount of steps, the last one being the reveal
+     */
+    public int getSteps()
+    {
+        return frames.length;
+    }
+
+    /**
+     * Get the index of the reward that's won
+     * @return Index into the Crate's rewards
+     */
+    public int getWinner()
+    {
+        return winner;
+    }
+
+    /**
+     * Get how many rewards into the conveyor the winner sits, this ends up right under the pointer
+     * @return Position of the winner on the conveyor
+     */
+    public int getWinningPosition()
+    {
+        return winningPosition;
+    }
+
+    /**
+     * Get the top row slot the pointer ends on
+     * @return Slot between 0 and 8
+     */
+    public int getFinalPointer()
+    {
+        return getPointer(frames.length - 1);
+    }
+
+    /**
+     * Get the slot the pointer is in at a step
+     * @param step The step
+     * @return Slot between 0 and 8
+     */
+    public int getPointer(int step)
+    {
+        return frames[step] & POINTER_MASK;
+    }
+
+    /**
+     * Find out whether the pointer moves on a step
+     * @param step The step
+     * @return True if the pointer moves
+     */
+    public boolean isPointerMoved(int step)
+    {
+        return (frames[step] & POINTER_MOVED) != 0;
+    }
+
+    /**
+     * Find out whether the conveyor moves on a step
+     * @param step The step
+     * @return True if the conveyor moves
+     */
+    public boolean isConveyorMoved(int step)
+    {
+        return (frames[step] & CONVEYOR_MOVED) != 0;
+    }
+
+    /**
+     * Get how many times the conveyor has moved by the end of a step
+     * @param step The step
+     * @return Amount of conveyor moves so far
+     */
+    public int getConveyorMoves(int step)
+    {
+        return (frames[step] >> OFFSET_SHIFT) + 1;
+    }
+
+}
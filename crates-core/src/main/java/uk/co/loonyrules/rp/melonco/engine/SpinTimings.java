@@ -0,0 +1,77 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+/**
+ * How long a Crate's spins last. A spin's length is drawn from its seed as one of four lengths spread evenly from
+ * the shortest to the longest, always with the same single draw so the outcome of a seed never depends on the timings.
+ */
+public final class SpinTimings
+{
+
+    /**
+     * Spins of 180 to 240 steps, 18 to 24 seconds at the plugin's step every 2 ticks
+     */
+    public static final SpinTimings DEFAULT = new SpinTimings(180, 240);
+
+    // Amount of lengths a spin is drawn from, the draw is the same bound whatever the timings
+    private static final int LENGTHS = 4;
+
+    private final int minSteps, maxSteps;
+
+    /**
+     * Initialise SpinTimings
+     * @param minSteps Steps in the shortest spin
+     * @param maxSteps Steps in the longest spin
+     */
+    public SpinTimings(int minSteps, int maxSteps)
+    {
+        if(minSteps <= 0 || maxSteps < minSteps)
+            throw new IllegalArgumentException("A spin has to last at least one step, and the longest can't be shorter than the shortest.");
+
+        this.minSteps = minSteps;
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Get the steps in the shortest spin
+     * @return Steps in the shortest spin
+     */
+    public int getMinSteps()
+    {
+        return minSteps;
+    }
+
+    /**
+     * Get the steps in the longest spin
+     * @return Steps in the longest spin
+     */
+    public int getMaxSteps()
+    {
+        return maxSteps;
+    }
+
+    /**
+     * Get the amount of lengths a spin's length is drawn from
+     * @return Bound of the draw
+     */
+    static int lengths()
+    {
+        return LENGTHS;
+    }
+
+    /**
+     * Get the length of a spin
+     * @param draw What was drawn, from 0 to {@link #lengths()} exclusive
+     * @return Steps in the spin
+     */
+    int steps(int draw)
+    {
+        return minSteps + draw * (maxSteps - minSteps) / (LENGTHS - 1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SpinTimings{minSteps=" + minSteps + ", maxSteps=" + maxSteps + "}";
+    }
+
+}
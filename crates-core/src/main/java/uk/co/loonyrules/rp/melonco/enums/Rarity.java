@@ -0,0 +1,45 @@
+package uk.co.loonyrules.rp.melonco.enums;
+
+/**
+ * How rare a Crate reward is. Each tier comes with a default weight for rewards that don't set their own.
+ */
+public enum Rarity
+{
+
+    COMMON("Common", 'f', 100),
+    UNCOMMON("Uncommon", 'a', 50),
+    RARE("Rare", '9', 20),
+    EPIC("Epic", '5', 8),
+    LEGENDARY("Legendary", '6', 2);
+
+    private final String displayName;
+    private final char colourCode;
+    private final double weight;
+
+    Rarity(String displayName, char colourCode, double weight)
+    {
+        this.displayName = displayName;
+        this.colourCode = colourCode;
+        this.weight = weight;
+    }
+
+    public String getDisplayName()
+    {
+        return displayName;
+    }
+
+    /**
+     * Get the colour code used when showing this Rarity, without the section sign
+     * @return The colour code character
+     */
+    public char getColourCode()
+    {
+        return colourCode;
+    }
+
+    public double getWeight()
+    {
+        return weight;
+    }
+
+}
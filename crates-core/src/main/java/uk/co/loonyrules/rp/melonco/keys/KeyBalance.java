@@ -0,0 +1,117 @@
+package uk.co.loonyrules.rp.melonco.keys;
+
+/**
+ * A Player's cached virtual Key balances, along with the changes that haven't been written to the {@link KeyStore}
+ * yet. Checking and taking Keys is purely in memory. Not thread safe, only ever touched on one thread at a time.
+ */
+public final class KeyBalance
+{
+
+    private final ObjectIntMap<String> balances;
+    private final long loadedAt;
+    private ObjectIntMap<String> changes = new ObjectIntMap<>();
+
+    /**
+     * Initialise a balance as it was loaded
+     * @param balances Balance for each Crate, by Crate name. Owned by this balance from here on.
+     * @param loadedAt Version of the Player's {@link KeyStore} shard this balance was loaded at
+     */
+    public KeyBalance(ObjectIntMap<String> balances, long loadedAt)
+    {
+        this.balances = balances;
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * Get how many Keys for a Crate the Player has
+     * @param crate Name of the Crate
+     * @return Amount of Keys, never negative
+     */
+    public int get(String crate)
+    {
+        return Math.max(0, balances.get(crate));
+    }
+
+    /**
+     * Take a Key for a Crate if the Player has one
+     * @param crate Name of the Crate
+     * @return True: A Key was taken. False: They haven't got one.
+     */
+    public boolean take(String crate)
+    {
+        if(balances.get(crate) <= 0)
+            return false;
+
+        balances.add(crate, -1);
+        changes.add(crate, -1);
+
+        return true;
+    }
+
+    /**
+     * Take up to an amount of Keys for a Crate, as many as the Player has
+     * @param crate Name of the Crate
+     * @param amount Most Keys to take
+     * @return Amount of Keys taken, 0 if they haven't got any
+     */
+    public int take(String crate, int amount)
+    {
+        int taken = Math.min(amount, get(crate));
+
+        if(taken <= 0)
+            return 0;
+
+        balances.add(crate, -taken);
+        changes.add(crate, -taken);
+
+        return taken;
+    }
+
+    /**
+     * Give the Player Keys for a Crate
+     * @param crate Name of the Crate
+     * @param amount Amount of Keys to give, negative to take them
+     */
+    public void add(String crate, int amount)
+    {
+        balances.add(crate, amount);
+        changes.add(crate, amount);
+    }
+
+    /**
+     * Apply a change that was written straight to the store, unless this balance was loaded after it and has it already
+     * @param crate Name of the Crate
+     * @param amount Amount of Keys given, negative if they were taken
+     * @param writtenAt Version of the Player's {@link KeyStore} shard the change was written at
+     */
+    public void addWritten(String crate, int amount, long writtenAt)
+    {
+        if(writtenAt > loadedAt)
+            balances.add(crate, amount);
+    }
+
+    /**
+     * Find out whether this balance has changes to be written
+     * @return True if it has changed since the last {@link #drainChanges()}
+     */
+    public boolean isDirty()
+    {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Take the changes made since the last call, for writing to the store
+     * @return Change to each Crate's balance, null if nothing changed
+     */
+    public ObjectIntMap<String> drainChanges()
+    {
+        if(changes.isEmpty())
+            return null;
+
+        ObjectIntMap<String> drained = changes;
+        changes = new ObjectIntMap<>();
+
+        return drained;
+    }
+
+}
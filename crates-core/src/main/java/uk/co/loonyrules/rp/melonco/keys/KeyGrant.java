@@ -0,0 +1,450 @@
+package uk.co.loonyrules.rp.melonco.keys;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gives Keys for one Crate to a long list of Players, most of them offline, straight into the {@link KeyStore}.
+ *
+ * The Players are streamed through a bounded pipeline. The thread running the grant reads UUIDs into chunks and hands
+ * them over a bounded queue to a writer thread, so however long the list is only a few chunks are ever held. The
+ * writer buckets the UUIDs by shard and writes a shard once {@link #SHARD_BATCH} of its Players are waiting, then
+ * every shard left at the end, so each shard write gives Keys to thousands of Players at once.
+ *
+ * A shard that fails to be written is logged and its Players are written to a failures file, so the grant can be run
+ * again for just them.
+ */
+public class KeyGrant
+{
+
+    /**
+     * UUIDs handed to the writer at a time
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * Most chunks waiting for the writer before reading waits for it
+     */
+    private static final int QUEUE_CHUNKS = 64;
+
+    /**
+     * Players waiting for a shard before it's written
+     */
+    private static final int SHARD_BATCH = 4096;
+
+    /**
+     * How often handing a chunk to the writer checks it's still alive, in milliseconds
+     */
+    private static final long PUT_CHECK = 100;
+
+    // Marks the end of the UUIDs
+    private static final long[] END = new long[0];
+
+    private final KeyStore store;
+    private final String crate;
+    private final int amount;
+    private final File failures;
+    private final Listener listener;
+    private final Logger logger;
+
+    private final BlockingQueue<long[]> queue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+    private final AtomicLong read = new AtomicLong(), skipped = new AtomicLong(), granted = new AtomicLong(), failed = new AtomicLong();
+    private final CompletableFuture<KeyGrant> completion = new CompletableFuture<>();
+    private volatile boolean cancelled;
+    private volatile long startedAt, finishedAt;
+
+    // Only touched by the writer thread
+    private BufferedWriter failureWriter;
+
+    /**
+     * Initialise a KeyGrant
+     * @param store Where the Keys are written
+     * @param crate Name of the Crate the Keys are for
+     * @param amount Amount of Keys given to each Player, more than 0
+     * @param failures Where the Players of any shard that fails to be written are written, one UUID per line
+     * @param listener Told about each shard once it's written
+     * @param logger Where failures are logged
+     */
+    public KeyGrant(KeyStore store, String crate, int amount, File failures, Listener listener, Logger logger)
+    {
+        if(amount <= 0)
+            throw new IllegalArgumentException("A grant has to give at least one Key, got " + amount);
+
+        this.store = store;
+        this.crate = crate;
+        this.amount = amount;
+        this.failures = failures;
+        this.listener = listener;
+        this.logger = logger;
+    }
+
+    /**
+     * Give the Keys to every Player in a file, blocking until they're written
+     * @param source One UUID per line. Blank lines and lines starting with # are ignored, anything else that isn't a
+     *               UUID is skipped.
+     * @throws IOException If the file can't be read, any Players already read are still given their Keys
+     */
+    public void run(BufferedReader source) throws IOException
+    {
+        run(() ->
+        {
+            String line;
+
+            while((line = source.readLine()) != null)
+            {
+                line = line.trim();
+
+                if(line.isEmpty() || line.charAt(0) == '#')
+                    continue;
+
+                try {
+                    return UUID.fromString(line);
+                } catch (IllegalArgumentException e) {
+                    skipped.incrementAndGet();
+                }
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Give the Keys to every Player, blocking until they're written
+     * @param source The Players' UUIDs
+     */
+    public void run(Iterator<UUID> source)
+    {
+        try {
+            run(() -> source.hasNext() ? source.next() : null);
+        } catch (IOException e) {
+            // Only thrown reading a file
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stop reading Players, the Players already read are still given their Keys
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Get the future completed once this grant has finished
+     * @return Completed with this grant, exceptionally if reading the Players failed
+     */
+    public CompletableFuture<KeyGrant> getCompletion()
+    {
+        return completion;
+    }
+
+    /**
+     * Find out whether this grant has finished
+     * @return True once every Player read has been written or has failed
+     */
+    public boolean isDone()
+    {
+        return completion.isDone();
+    }
+
+    /**
+     * Get the name of the Crate the Keys are for
+     * @return Name of the Crate
+     */
+    public String getCrate()
+    {
+        return crate;
+    }
+
+    /**
+     * Get the amount of Keys given to each Player
+     * @return Amount of Keys
+     */
+    public int getAmount()
+    {
+        return amount;
+    }
+
+    /**
+     * Get the amount of Players read so far
+     * @return Players read
+     */
+    public long getRead()
+    {
+        return read.get();
+    }
+
+    /**
+     * Get the amount of lines skipped as they weren't UUIDs
+     * @return Lines skipped
+     */
+    public long getSkipped()
+    {
+        return skipped.get();
+    }
+
+    /**
+     * Get the amount of Players given their Keys so far
+     * @return Players whose Keys are written
+     */
+    public long getGranted()
+    {
+        return granted.get();
+    }
+
+    /**
+     * Get the amount of Players whose Keys failed to be written, they're listed in the failures file
+     * @return Players whose Keys weren't written
+     */
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    /**
+     * Get the time this grant has been running, or took if it's finished
+     * @return Time in milliseconds
+     */
+    public long getElapsedMillis()
+    {
+        if(startedAt == 0)
+            return 0;
+
+        return TimeUnit.NANOSECONDS.toMillis((finishedAt == 0 ? System.nanoTime() : finishedAt) - startedAt);
+    }
+
+    /**
+     * Get the rate Players are being given their Keys at
+     * @return Players granted per second
+     */
+    public double getRate()
+    {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : granted.get() * 1000D / elapsed;
+    }
+
+    private void run(Source source) throws IOException
+    {
+        startedAt = System.nanoTime();
+
+        Thread writer = new Thread(this::write, "Crates-Grants-Writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        long[] chunk = new long[CHUNK * 2];
+        int size = 0;
+        Exception failure = null;
+
+        try {
+            UUID uuid;
+
+            while(!cancelled && (uuid = source.next()) != null)
+            {
+                chunk[size * 2] = uuid.getMostSignificantBits();
+                chunk[size * 2 + 1] = uuid.getLeastSignificantBits();
+                read.incrementAndGet();
+
+                if(++size == CHUNK)
+                {
+                    if(!put(chunk, writer))
+                        throw new IllegalStateException("The grant's writer stopped, " + read.get() + " Player(s) were read.");
+
+                    chunk = new long[CHUNK * 2];
+                    size = 0;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            // Whatever was read is still written
+            boolean handedOver = (size == 0 || put(Arrays.copyOf(chunk, size * 2), writer)) && put(END, writer);
+
+            join(writer);
+            finishedAt = System.nanoTime();
+
+            if(failure == null && !handedOver)
+                failure = new IllegalStateException("The grant's writer stopped before every Player read was written.");
+
+            if(failure == null)
+                completion.complete(this);
+            else completion.completeExceptionally(failure);
+        }
+    }
+
+    // Runs on the writer thread
+    private void write()
+    {
+        long[][] buckets = new long[KeyStore.SHARDS][];
+        int[] sizes = new int[KeyStore.SHARDS];
+
+        try {
+            long[] chunk;
+
+            while((chunk = take()) != END)
+            {
+                for(int i = 0; i < chunk.length; i += 2)
+                {
+                    UUID uuid = new UUID(chunk[i], chunk[i + 1]);
+                    int shard = KeyStore.shardOf(uuid);
+
+                    if(buckets[shard] == null)
+                        buckets[shard] = new long[SHARD_BATCH * 2];
+
+                    buckets[shard][sizes[shard] * 2] = chunk[i];
+                    buckets[shard][sizes[shard] * 2 + 1] = chunk[i + 1];
+
+                    if(++sizes[shard] == SHARD_BATCH)
+                    {
+                        flush(shard, buckets[shard], sizes[shard]);
+                        sizes[shard] = 0;
+                    }
+                }
+            }
+
+            for(int shard = 0; shard < KeyStore.SHARDS; shard++)
+                if(sizes[shard] > 0)
+                    flush(shard, buckets[shard], sizes[shard]);
+        } finally {
+            closeFailures();
+        }
+    }
+
+    private void flush(int shard, long[] uuids, int count)
+    {
+        try {
+            long version = store.grantShard(shard, uuids, count, crate, amount);
+            granted.addAndGet(count);
+
+            // The Keys are written either way, the writer has to carry on
+            try {
+                listener.granted(shard, uuids, count, version);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to pass on " + crate + " Keys given to " + count + " Player(s)", e);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Even a corrupt shard only fails its own Players, the writer carries on with the rest
+            logger.log(Level.SEVERE, "Failed to give " + count + " Player(s) " + crate + " Keys, they're listed in " + failures, e);
+            failed.addAndGet(count);
+            writeFailures(uuids, count);
+        }
+    }
+
+    private void writeFailures(long[] uuids, int count)
+    {
+        try {
+            if(failureWriter == null)
+                failureWriter = Files.newBufferedWriter(failures.toPath(), StandardCharsets.UTF_8);
+
+            for(int i = 0; i < count; i++)
+            {
+                failureWriter.write(new UUID(uuids[i * 2], uuids[i * 2 + 1]).toString());
+                failureWriter.newLine();
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to list the Players who weren't given " + crate + " Keys in " + failures, e);
+        }
+    }
+
+    private void closeFailures()
+    {
+        if(failureWriter == null)
+            return;
+
+        try {
+            failureWriter.close();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to list the Players who weren't given " + crate + " Keys in " + failures, e);
+        }
+    }
+
+    // Waiting out interrupts, the writer has to be handed every chunk or it never finishes. Gives up if the writer's
+    // died, as nothing would ever take the chunk.
+    private boolean put(long[] chunk, Thread writer)
+    {
+        boolean interrupted = false, put = false;
+
+        while(!put && writer.isAlive())
+        {
+            try {
+                put = queue.offer(chunk, PUT_CHECK, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if(interrupted)
+            Thread.currentThread().interrupt();
+
+        return put;
+    }
+
+    private long[] take()
+    {
+        while(true)
+        {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                // Only stopped by the end of the UUIDs
+            }
+        }
+    }
+
+    private void join(Thread writer)
+    {
+        boolean interrupted = false;
+
+        while(writer.isAlive())
+        {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if(interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Told about each shard as it's written, on the writer thread
+     */
+    public interface Listener
+    {
+
+        /**
+         * Called once Players in a shard have been given their Keys
+         * @param shard Index of the shard
+         * @param uuids The Players' UUIDs, most significant then least significant bits of each. Reused once this returns.
+         * @param count Amount of Players in uuids
+         * @param version The shard's version once they were written
+         */
+        void granted(int shard, long[] uuids, int count, long version);
+
+    }
+
+    private interface Source
+    {
+
+        UUID next() throws IOException;
+
+    }
+
+}
@@ -0,0 +1,306 @@
+package uk.co.loonyrules.rp.melonco.keys;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * File-backed store of every Player's virtual Key balances. Players are spread over {@link #SHARDS} shard files by
+ * their UUID, each with its own lock, so loads and writes to different shards never wait on each other.
+ *
+ * Balances are only ever changed by applying deltas, never by overwriting them, so changes made in different places
+ * (a Player's cached balance, a bulk grant) can't undo each other. A batch of deltas costs one read and one write
+ * per shard it touches, written aside, forced to disk and moved into place so a crash never leaves half a shard.
+ *
+ * Each shard has a version, bumped by every write to it under the shard's lock. A balance loaded at a lower version
+ * than a write doesn't have that write's changes yet, which lets changes written elsewhere be applied to cached
+ * balances exactly once.
+ *
+ * A shard is a header, the amount of Players, then each Player's UUID and their balance for each Crate.
+ */
+public class KeyStore
+{
+
+    /**
+     * Amount of shard files Players are spread over
+     */
+    public static final int SHARDS = 256;
+
+    private static final int MAGIC = 0x4D434B53; // MCKS
+    private static final int VERSION = 1;
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    private final File directory;
+    private final ReentrantLock[] locks = new ReentrantLock[SHARDS];
+    private final long[] versions = new long[SHARDS];
+
+    /**
+     * Initialise a KeyStore
+     * @param directory Where the shard files are kept
+     * @throws IOException If the directory can't be created
+     */
+    public KeyStore(File directory) throws IOException
+    {
+        this.directory = directory;
+
+        for(int i = 0; i < SHARDS; i++)
+            locks[i] = new ReentrantLock();
+
+        Files.createDirectories(directory.toPath());
+    }
+
+    /**
+     * Get the shard a Player's balances are kept in
+     * @param uuid The Player's UUID
+     * @return Index of the shard
+     */
+    public static int shardOf(UUID uuid)
+    {
+        long bits = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+        return (int) (bits ^ (bits >>> 32) ^ (bits >>> 48)) & (SHARDS - 1);
+    }
+
+    /**
+     * Group changes by the shard they belong in
+     * @param deltas Changes to Players' balances
+     * @return The changes for each shard, indexed by shard, null where a shard has none
+     */
+    public static Map<UUID, ObjectIntMap<String>>[] group(Map<UUID, ObjectIntMap<String>> deltas)
+    {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Map<UUID, ObjectIntMap<String>>[] byShard = new Map[SHARDS];
+
+        for(Map.Entry<UUID, ObjectIntMap<String>> entry : deltas.entrySet())
+        {
+            int shard = shardOf(entry.getKey());
+
+            if(byShard[shard] == null)
+                byShard[shard] = new HashMap<>();
+
+            byShard[shard].put(entry.getKey(), entry.getValue());
+        }
+
+        return byShard;
+    }
+
+    /**
+     * Load a Player's balances, blocking
+     * @param uuid The Player's UUID
+     * @param versions Set to the version their shard was loaded at, at the index of their shard
+     * @return Their balance for each Crate, by Crate name
+     * @throws IOException If their shard can't be read
+     */
+    public ObjectIntMap<String> load(UUID uuid, long[] versions) throws IOException
+    {
+        int shard = shardOf(uuid);
+        ReentrantLock lock = locks[shard];
+
+        lock.lock();
+
+        try {
+            versions[shard] = this.versions[shard];
+
+            ObjectIntMap<String> balances = read(shard).get(uuid);
+            return balances == null ? new ObjectIntMap<>() : balances;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apply changes to Players' balances that all live in one shard, blocking
+     * @param shard Index of the shard, see {@link #shardOf(UUID)}
+     * @param deltas Change to each Player's balance for each Crate, by Crate name
+     * @param versions Set to the shard's new version at the index of the shard, even if it fails to be written
+     * @throws IOException If the shard can't be read or written
+     */
+    public void applyShard(int shard, Map<UUID, ObjectIntMap<String>> deltas, long[] versions) throws IOException
+    {
+        ReentrantLock lock = locks[shard];
+
+        lock.lock();
+
+        try {
+            versions[shard] = ++this.versions[shard];
+
+            Map<UUID, ObjectIntMap<String>> players = read(shard);
+
+            for(Map.Entry<UUID, ObjectIntMap<String>> entry : deltas.entrySet())
+            {
+                ObjectIntMap<String> balances = players.computeIfAbsent(entry.getKey(), uuid -> new ObjectIntMap<>());
+                entry.getValue().forEach(balances::add);
+            }
+
+            write(shard, players);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give Keys for one Crate to Players that all live in one shard, blocking. Cheaper than
+     * {@link #applyShard(int, Map, long[])} for bulk grants as nothing is built per Player.
+     * @param shard Index of the shard, see {@link #shardOf(UUID)}
+     * @param uuids The Players' UUIDs, most significant then least significant bits of each. A Player in here twice
+     *              is given the Keys twice.
+     * @param count Amount of Players in uuids
+     * @param crate Name of the Crate
+     * @param amount Amount of Keys each Player is given
+     * @return The shard's new version
+     * @throws IOException If the shard can't be read or written
+     */
+    public long grantShard(int shard, long[] uuids, int count, String crate, int amount) throws IOException
+    {
+        ReentrantLock lock = locks[shard];
+
+        lock.lock();
+
+        try {
+            long version = ++versions[shard];
+            Map<UUID, ObjectIntMap<String>> players = read(shard);
+
+            for(int i = 0; i < count; i++)
+                players.computeIfAbsent(new UUID(uuids[i * 2], uuids[i * 2 + 1]), uuid -> new ObjectIntMap<>(1)).add(crate, amount);
+
+            write(shard, players);
+            return version;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private File file(int shard)
+    {
+        return new File(directory, String.format("shard-%02x.keys", shard));
+    }
+
+    private Map<UUID, ObjectIntMap<String>> read(int shard) throws IOException
+    {
+        File file = file(shard);
+
+        if(!file.exists())
+            return new HashMap<>();
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+        if(buffer.remaining() < 12 || buffer.getInt() != MAGIC)
+            throw new IOException(file + " isn't a key shard.");
+
+        int version = buffer.getInt();
+
+        if(version != VERSION)
+            throw new IOException(file + " is version " + version + ", only version " + VERSION + " is supported.");
+
+        int size = buffer.getInt();
+        Map<UUID, ObjectIntMap<String>> players = new HashMap<>(size * 4 / 3 + 1);
+
+        for(int i = 0; i < size; i++)
+        {
+            UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+            int crates = buffer.getShort() & 0xFFFF;
+            ObjectIntMap<String> balances = new ObjectIntMap<>(crates);
+
+            for(int j = 0; j < crates; j++)
+            {
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                balances.put(new String(name, StandardCharsets.UTF_8), buffer.getInt());
+            }
+
+            players.put(uuid, balances);
+        }
+
+        return players;
+    }
+
+    private void write(int shard, Map<UUID, ObjectIntMap<String>> players) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + players.size() * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        List<String> names = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(0);
+
+        int size = 0;
+
+        for(Map.Entry<UUID, ObjectIntMap<String>> entry : players.entrySet())
+        {
+            names.clear();
+            counts.clear();
+
+            // Crates they've no Keys for are dropped, as are Players left without any. Taking more Keys than they
+            // have leaves them with none rather than owing Keys.
+            entry.getValue().forEach((name, count) ->
+            {
+                if(count > 0)
+                {
+                    names.add(name);
+                    counts.add(count);
+                }
+            });
+
+            if(names.isEmpty())
+                continue;
+
+            out.writeLong(entry.getKey().getMostSignificantBits());
+            out.writeLong(entry.getKey().getLeastSignificantBits());
+            out.writeShort(names.size());
+
+            for(int i = 0; i < names.size(); i++)
+            {
+                byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeInt(counts.get(i));
+            }
+
+            size++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(8, size);
+
+        File file = file(shard), temporary = new File(file.getPath() + ".tmp");
+
+        // Forced before it's moved, a shard that's only partly on disk can't be read and blocks every login to it
+
+        try(FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+
+            channel.force(true);
+        }
+
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    private void forceDirectory() throws IOException
+    {
+        // Windows can't open a directory, its renames are as durable as they get there
+        if(WINDOWS)
+            return;
+
+        try(FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+}
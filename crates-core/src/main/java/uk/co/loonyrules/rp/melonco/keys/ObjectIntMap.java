@@ -0,0 +1,228 @@
+package uk.co.loonyrules.rp.melonco.keys;
+
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * An open addressing hash map from objects to primitive ints, so counts are never boxed. Linear probing with the
+ * table kept at most half full, removals shift the following entries back so there are no tombstones.
+ * Missing keys read as 0. Not thread safe.
+ * @param <K> Type of the keys, which must not be null
+ */
+public final class ObjectIntMap<K>
+{
+
+    private Object[] keys;
+    private int[] values;
+    private int size, mask;
+
+    /**
+     * Initialise an empty map with room for a handful of keys
+     */
+    public ObjectIntMap()
+    {
+        this(4);
+    }
+
+    /**
+     * Initialise an empty map
+     * @param expected Amount of keys it should hold without growing
+     */
+    public ObjectIntMap(int expected)
+    {
+        int capacity = Integer.highestOneBit(Math.max(2, expected) * 2 - 1) << 1;
+
+        keys = new Object[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the value of a key
+     * @param key The key
+     * @return Its value, 0 if it isn't in the map
+     */
+    public int get(K key)
+    {
+        int slot = find(key);
+        return slot < 0 ? 0 : values[slot];
+    }
+
+    /**
+     * Find out whether a key is in the map
+     * @param key The key
+     * @return True if it's in the map, even with a value of 0
+     */
+    public boolean containsKey(K key)
+    {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Set the value of a key
+     * @param key The key
+     * @param value Its new value
+     */
+    public void put(K key, int value)
+    {
+        values[insert(key)] = value;
+    }
+
+    /**
+     * Add to the value of a key, adding the key if it isn't in the map
+     * @param key The key
+     * @param delta Amount to add, can be negative
+     * @return The key's new value
+     */
+    public int add(K key, int delta)
+    {
+        int slot = insert(key);
+        return values[slot] += delta;
+    }
+
+    /**
+     * Remove a key
+     * @param key The key
+     * @return Its value, 0 if it wasn't in the map
+     */
+    public int remove(K key)
+    {
+        int slot = find(key);
+
+        if(slot < 0)
+            return 0;
+
+        int value = values[slot];
+        size--;
+
+        // Shifting back every entry after this one that would have landed at or before the gap
+        int gap = slot;
+
+        for(int i = (gap + 1) & mask; keys[i] != null; i = (i + 1) & mask)
+        {
+            int home = hash(keys[i]) & mask;
+
+            if(((i - home) & mask) >= ((i - gap) & mask))
+            {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+
+        keys[gap] = null;
+        values[gap] = 0;
+
+        return value;
+    }
+
+    /**
+     * Get the amount of keys in the map
+     * @return Amount of keys
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Find out whether the map is empty
+     * @return True if it has no keys
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Remove every key
+     */
+    public void clear()
+    {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    /**
+     * Call something for every key and value, in no particular order
+     * @param consumer Called with each key and its value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<? super K> consumer)
+    {
+        for(int i = 0; i < keys.length; i++)
+            if(keys[i] != null)
+                consumer.accept((K) keys[i], values[i]);
+    }
+
+    private int find(Object key)
+    {
+        for(int i = hash(key) & mask; keys[i] != null; i = (i + 1) & mask)
+            if(keys[i].equals(key))
+                return i;
+
+        return -1;
+    }
+
+    private int insert(Object key)
+    {
+        int i = hash(key) & mask;
+
+        for(; keys[i] != null; i = (i + 1) & mask)
+            if(keys[i].equals(key))
+                return i;
+
+        keys[i] = key;
+        size++;
+
+        if(size * 2 > keys.length)
+        {
+            grow();
+            return find(key);
+        }
+
+        return i;
+    }
+
+    private void grow()
+    {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new Object[oldKeys.length << 1];
+        values = new int[oldKeys.length << 1];
+        mask = keys.length - 1;
+
+        for(int i = 0; i < oldKeys.length; i++)
+        {
+            if(oldKeys[i] == null)
+                continue;
+
+            int slot = hash(oldKeys[i]) & mask;
+
+            while(keys[slot] != null)
+                slot = (slot + 1) & mask;
+
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    // Spreading the high bits down as the table is indexed by the low ones
+    private static int hash(Object key)
+    {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder("{");
+        forEach((key, value) -> builder.append(builder.length() == 1 ? "" : ", ").append(key).append('=').append(value));
+
+        return builder.append('}').toString();
+    }
+
+}
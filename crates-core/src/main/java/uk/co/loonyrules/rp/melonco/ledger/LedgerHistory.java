@@ -0,0 +1,106 @@
+package uk.co.loonyrules.rp.melonco.ledger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Answers history queries by finding records through the {@link LedgerIndex} and reading only those from the ledger.
+ * Queries do blocking I/O, so they shouldn't be run on the main thread.
+ */
+public class LedgerHistory
+{
+
+    private final File directory;
+    private final LedgerIndex index;
+
+    /**
+     * Initialise a LedgerHistory
+     * @param directory Directory the ledger's segments are in
+     * @param index Index over the ledger
+     */
+    public LedgerHistory(File directory, LedgerIndex index)
+    {
+        this.directory = directory;
+        this.index = index;
+    }
+
+    /**
+     * Get a Player's openings, newest first
+     * @param player UUID of the Player
+     * @param since Only openings at or after this time in milliseconds
+     * @param limit Most openings to return
+     * @return The openings
+     * @throws IOException If the ledger can't be read
+     */
+    public List<LedgerRecord> history(UUID player, long since, int limit) throws IOException
+    {
+        return read(index.history(player, since, limit));
+    }
+
+    /**
+     * Get every Player's openings in a time range, newest first
+     * @param since Only openings at or after this time in milliseconds
+     * @param limit Most openings to return
+     * @return The openings
+     * @throws IOException If the ledger can't be read
+     */
+    public List<LedgerRecord> range(long since, int limit) throws IOException
+    {
+        return read(index.range(since, limit));
+    }
+
+    /**
+     * Get how many openings a Player has
+     * @param player UUID of the Player
+     * @return Total openings
+     */
+    public long count(UUID player)
+    {
+        return index.count(player);
+    }
+
+    private List<LedgerRecord> read(List<LedgerIndex.Entry> entries) throws IOException
+    {
+        List<LedgerRecord> records = new ArrayList<>(entries.size());
+        Map<Integer, FileChannel> channels = new HashMap<>();
+
+        try {
+            for(LedgerIndex.Entry entry : entries)
+            {
+                int segment = LedgerIndex.segmentOf(entry.getAddress());
+                FileChannel channel = channels.get(segment);
+
+                if(channel == null)
+                {
+                    File file = LedgerSegment.file(directory, segment);
+
+                    // Segment has been removed since it was indexed
+                    if(!file.exists())
+                        continue;
+
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    channels.put(segment, channel);
+                }
+
+                LedgerRecord record = LedgerSegment.readRecord(channel, LedgerIndex.positionOf(entry.getAddress()));
+
+                // Indexed ahead of a write that never made it to disk
+                if(record != null)
+                    records.add(record);
+            }
+        } finally {
+            for(FileChannel channel : channels.values())
+                channel.close();
+        }
+
+        return records;
+    }
+
+}
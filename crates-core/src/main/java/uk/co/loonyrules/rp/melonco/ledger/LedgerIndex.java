@@ -0,0 +1,489 @@
+package uk.co.loonyrules.rp.melonco.ledger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Memory-mapped indexes over the ledger, so history can be queried without reading the ledger into heap.
+ *
+ * - entries.idx holds one fixed size entry per record in the order they were written: when it happened, where it
+ *   is in the ledger and the entry of the same Player's previous record. Written order is time order, so this is
+ *   also the time-range index and can be binary searched.
+ * - players.idx is an open addressing hash table from a Player's UUID to their newest entry. Following the chain
+ *   of previous entries from there gives their history newest first.
+ *
+ * Only the ledger's I/O thread adds to the index, queries can come from any thread.
+ */
+public class LedgerIndex implements Closeable
+{
+
+    private static final int MAGIC = 0x4D434C49; // MCLI
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    // Entry: timestamp, address, previous entry, padding
+    private static final int ENTRY_SIZE = 32;
+    private static final long REGION_SIZE = 64L * 1024 * 1024;
+    private static final int ENTRIES_PER_REGION = (int) (REGION_SIZE / ENTRY_SIZE);
+
+    // Slot: UUID most and least significant bits, newest entry, amount of entries
+    private static final int SLOT_SIZE = 32;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private final File entriesFile, playersFile;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FileChannel entriesChannel;
+    private MappedByteBuffer entriesHeader;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private long entryCount, lastAddress;
+
+    private MappedByteBuffer players;
+    private int capacity, playerCount;
+
+    /**
+     * Open the index, creating it if it doesn't exist
+     * @param directory Directory the index files are kept in
+     * @throws IOException If the files can't be opened or aren't an index
+     */
+    public LedgerIndex(File directory) throws IOException
+    {
+        Files.createDirectories(directory.toPath());
+
+        this.entriesFile = new File(directory, "entries.idx");
+        this.playersFile = new File(directory, "players.idx");
+
+        openEntries();
+        openPlayers();
+    }
+
+    /**
+     * Pack where a record is into a single address
+     * @param segment Id of the segment it's in
+     * @param position Byte offset in the segment
+     * @return The address
+     */
+    public static long address(int segment, long position)
+    {
+        return (long) segment << 32 | position;
+    }
+
+    public static int segmentOf(long address)
+    {
+        return (int) (address >>> 32);
+    }
+
+    public static long positionOf(long address)
+    {
+        return address & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Get the address of the newest record in the index
+     * @return The address, -1 if the index is empty
+     */
+    public long getLastAddress()
+    {
+        lock.readLock().lock();
+
+        try {
+            return lastAddress;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the amount of records in the index
+     * @return Total entries
+     */
+    public long size()
+    {
+        lock.readLock().lock();
+
+        try {
+            return entryCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the amount of Players in the index
+     * @return Total Players
+     */
+    public int getPlayers()
+    {
+        lock.readLock().lock();
+
+        try {
+            return playerCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add a record to the index, called by the ledger's I/O thread once it's been written
+     * @param player UUID of the Player
+     * @param timestamp When the record happened
+     * @param address Where the record is in the ledger
+     * @throws IOException If the index couldn't grow
+     */
+    public void add(UUID player, long timestamp, long address) throws IOException
+    {
+        lock.writeLock().lock();
+
+        try {
+            if(playerCount + 1 > capacity >> 1)
+                resizePlayers(capacity << 1);
+
+            int slot = findSlot(player.getMostSignificantBits(), player.getLeastSignificantBits());
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long count = players.getLong(offset + 24);
+            long previous = count == 0 ? -1 : players.getLong(offset + 16);
+
+            // Writing the entry before anything points at it
+            long entry = entryCount;
+            MappedByteBuffer region = region(entry);
+            int entryOffset = (int) (entry % ENTRIES_PER_REGION) * ENTRY_SIZE;
+
+            region.putLong(entryOffset, timestamp);
+            region.putLong(entryOffset + 8, address);
+            region.putLong(entryOffset + 16, previous);
+
+            if(count == 0)
+            {
+                players.putLong(offset, player.getMostSignificantBits());
+                players.putLong(offset + 8, player.getLeastSignificantBits());
+                players.putInt(8, ++playerCount);
+            }
+
+            players.putLong(offset + 16, entry);
+            players.putLong(offset + 24, count + 1);
+
+            entryCount = entry + 1;
+            lastAddress = address;
+            entriesHeader.putLong(8, entryCount);
+            entriesHeader.putLong(16, lastAddress);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get a Player's records, newest first
+     * @param player UUID of the Player
+     * @param since Only records at or after this time in milliseconds
+     * @param limit Most records to return
+     * @return Entries of the records, newest first
+     */
+    public List<Entry> history(UUID player, long since, int limit)
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        lock.readLock().lock();
+
+        try {
+            int slot = findSlot(player.getMostSignificantBits(), player.getLeastSignificantBits());
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+
+            if(players.getLong(offset + 24) == 0)
+                return entries;
+
+            long entry = players.getLong(offset + 16);
+
+            while(entry >= 0 && entries.size() < limit)
+            {
+                Entry read = readEntry(entry);
+
+                // Chain is newest first, so everything from here is older
+                if(read.getTimestamp() < since)
+                    break;
+
+                entries.add(read);
+                entry = read.getPrevious();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return entries;
+    }
+
+    /**
+     * Get how many records a Player has
+     * @param player UUID of the Player
+     * @return Total records
+     */
+    public long count(UUID player)
+    {
+        lock.readLock().lock();
+
+        try {
+            return players.getLong(HEADER_SIZE + findSlot(player.getMostSignificantBits(), player.getLeastSignificantBits()) * SLOT_SIZE + 24);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get every Player's records in a time range, newest first
+     * @param since Only records at or after this time in milliseconds
+     * @param limit Most records to return
+     * @return Entries of the records, newest first
+     */
+    public List<Entry> range(long since, int limit)
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        lock.readLock().lock();
+
+        try {
+            long first = firstAtOrAfter(since);
+
+            for(long entry = entryCount - 1; entry >= first && entries.size() < limit; entry--)
+                entries.add(readEntry(entry));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return entries;
+    }
+
+    // Binary search over the entries, which are in written order and so in time order
+    private long firstAtOrAfter(long timestamp)
+    {
+        long low = 0, high = entryCount;
+
+        while(low < high)
+        {
+            long middle = (low + high) >>> 1;
+
+            if(timestampOf(middle) < timestamp)
+                low = middle + 1;
+            else high = middle;
+        }
+
+        return low;
+    }
+
+    private long timestampOf(long entry)
+    {
+        return regions.get((int) (entry / ENTRIES_PER_REGION)).getLong((int) (entry % ENTRIES_PER_REGION) * ENTRY_SIZE);
+    }
+
+    private Entry readEntry(long entry)
+    {
+        MappedByteBuffer region = regions.get((int) (entry / ENTRIES_PER_REGION));
+        int offset = (int) (entry % ENTRIES_PER_REGION) * ENTRY_SIZE;
+
+        return new Entry(entry, region.getLong(offset), region.getLong(offset + 8), region.getLong(offset + 16));
+    }
+
+    /**
+     * Write any changes to disk
+     */
+    public void force()
+    {
+        lock.readLock().lock();
+
+        try {
+            for(MappedByteBuffer region : regions)
+                region.force();
+
+            entriesHeader.force();
+            players.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        force();
+        entriesChannel.close();
+    }
+
+    private void openEntries() throws IOException
+    {
+        boolean created = !entriesFile.exists();
+        entriesChannel = FileChannel.open(entriesFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        entriesHeader = entriesChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+
+        if(created)
+        {
+            entriesHeader.putInt(0, MAGIC);
+            entriesHeader.putInt(4, VERSION);
+            entriesHeader.putLong(8, 0);
+            entriesHeader.putLong(16, -1);
+        } else checkHeader(entriesHeader, entriesFile);
+
+        entryCount = entriesHeader.getLong(8);
+        lastAddress = entriesHeader.getLong(16);
+
+        for(long region = 0; region * ENTRIES_PER_REGION < entryCount; region++)
+            region(region * ENTRIES_PER_REGION);
+    }
+
+    private MappedByteBuffer region(long entry) throws IOException
+    {
+        int index = (int) (entry / ENTRIES_PER_REGION);
+
+        // Mapping past the end of the file grows it
+        while(regions.size() <= index)
+            regions.add(entriesChannel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + regions.size() * REGION_SIZE, REGION_SIZE));
+
+        return regions.get(index);
+    }
+
+    private void openPlayers() throws IOException
+    {
+        if(!playersFile.exists())
+        {
+            createPlayers(playersFile, INITIAL_CAPACITY);
+        }
+
+        players = map(playersFile);
+        checkHeader(players, playersFile);
+        capacity = players.getInt(12);
+        playerCount = players.getInt(8);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    private static MappedByteBuffer createPlayers(File file, int capacity) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, 0);
+            buffer.putInt(12, capacity);
+
+            return buffer;
+        }
+    }
+
+    // Rehashing into a bigger table on the side, then swapping it in
+    private void resizePlayers(int newCapacity) throws IOException
+    {
+        File temporary = new File(playersFile.getPath() + ".tmp");
+        MappedByteBuffer resized = createPlayers(temporary, newCapacity);
+
+        for(int slot = 0; slot < capacity; slot++)
+        {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long count = players.getLong(offset + 24);
+
+            if(count == 0)
+                continue;
+
+            long most = players.getLong(offset), least = players.getLong(offset + 8);
+            int target = HEADER_SIZE + probe(resized, newCapacity, most, least) * SLOT_SIZE;
+
+            resized.putLong(target, most);
+            resized.putLong(target + 8, least);
+            resized.putLong(target + 16, players.getLong(offset + 16));
+            resized.putLong(target + 24, count);
+        }
+
+        resized.putInt(8, playerCount);
+        resized.force();
+        Files.move(temporary.toPath(), playersFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        players = resized;
+        capacity = newCapacity;
+    }
+
+    private int findSlot(long most, long least)
+    {
+        return probe(players, capacity, most, least);
+    }
+
+    // Linear probing, stops at the Player's slot or the first empty one
+    private static int probe(MappedByteBuffer table, int capacity, long most, long least)
+    {
+        int mask = capacity - 1;
+        int slot = hash(most, least) & mask;
+
+        while(true)
+        {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+
+            if(table.getLong(offset + 24) == 0 || table.getLong(offset) == most && table.getLong(offset + 8) == least)
+                return slot;
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(long most, long least)
+    {
+        long hash = (most ^ least) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    private static void checkHeader(MappedByteBuffer buffer, File file) throws IOException
+    {
+        if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException(file + " isn't a version " + VERSION + " ledger index.");
+    }
+
+    /**
+     * A single record in the index
+     */
+    public static final class Entry
+    {
+
+        private final long index, timestamp, address, previous;
+
+        private Entry(long index, long timestamp, long address, long previous)
+        {
+            this.index = index;
+            this.timestamp = timestamp;
+            this.address = address;
+            this.previous = previous;
+        }
+
+        public long getIndex()
+        {
+            return index;
+        }
+
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        public long getAddress()
+        {
+            return address;
+        }
+
+        public long getPrevious()
+        {
+            return previous;
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package uk.co.loonyrules.rp.melonco.ledger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the records of a single ledger segment in the order they were written. Reading stops at the first record
+ * that's incomplete or fails its checksum, which is where a crash would have left the segment.
+ */
+public class LedgerReader implements Closeable
+{
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private final CRC32 crc = new CRC32();
+
+    // Position in the file of the start of the buffer, of the last record read, and of where the valid records end
+    private long bufferPosition, position = -1, validLength;
+    private boolean done;
+
+    /**
+     * Open a segment for reading
+     * @param file The segment's file
+     * @throws IOException If it can't be opened or isn't a segment
+     */
+    public LedgerReader(File file) throws IOException
+    {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        buffer.limit(0);
+        fill(LedgerSegment.HEADER_SIZE);
+        LedgerSegment.checkHeader(buffer, file);
+    }
+
+    /**
+     * Read the next record
+     * @return The record, or null if there aren't any more
+     * @throws IOException If the segment can't be read
+     */
+    public LedgerRecord next() throws IOException
+    {
+        if(done)
+            return null;
+
+        long start = bufferPosition + buffer.position();
+
+        if(!fill(4))
+            return end(start);
+
+        int length = buffer.getInt(buffer.position());
+
+        // Not a length we could have written, the tail is torn
+        if(length <= 0 || length > LedgerRecord.maxBodySize() || !fill(4 + length + 4))
+            return end(start);
+
+        buffer.position(buffer.position() + 4);
+
+        ByteBuffer body = buffer.slice();
+        body.limit(length);
+        crc.reset();
+        crc.update(body.duplicate());
+
+        buffer.position(buffer.position() + length);
+
+        if((int) crc.getValue() != buffer.getInt())
+            return end(start);
+
+        position = start;
+        return LedgerRecord.readBody(body);
+    }
+
+    /**
+     * Get where in the segment the last record read starts
+     * @return Byte offset of the last record, -1 if nothing has been read
+     */
+    public long getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Get where in the segment the valid records end. Only accurate once {@link #next()} has returned null.
+     * @return Byte offset just past the last valid record
+     */
+    public long getValidLength()
+    {
+        return done ? validLength : bufferPosition + buffer.position();
+    }
+
+    // The record that starts here is torn or corrupt, so the valid records end where it starts
+    private LedgerRecord end(long start)
+    {
+        validLength = start;
+        done = true;
+        return null;
+    }
+
+    // Making sure at least this many bytes are in the buffer, false if the file ends first
+    private boolean fill(int needed) throws IOException
+    {
+        if(buffer.remaining() >= needed)
+            return true;
+
+        bufferPosition += buffer.position();
+        buffer.compact();
+
+        while(buffer.position() < needed)
+        {
+            if(channel.read(buffer, bufferPosition + buffer.position()) < 0)
+            {
+                buffer.flip();
+                return false;
+            }
+        }
+
+        buffer.flip();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LedgerReader{" + file + "}";
+    }
+
+}
@@ -0,0 +1,141 @@
+package uk.co.loonyrules.rp.melonco.ledger;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A single Crate opening as it's kept in the ledger. Immutable.
+ */
+public final class LedgerRecord
+{
+
+    /**
+     * Longest a name or description can be before it's cut short, in characters
+     */
+    public static final int MAX_TEXT_LENGTH = 512;
+
+    private final long timestamp;
+    private final UUID player;
+    private final String crate;
+    private final int reward;
+    private final String rewardDescription;
+    private final long seed;
+
+    /**
+     * Initialise a LedgerRecord
+     * @param timestamp When the opening happened in milliseconds
+     * @param player UUID of the Player that opened the Crate
+     * @param crate Name of the Crate
+     * @param reward Index of the reward won
+     * @param rewardDescription Plain text description of the reward, indexes can change between definitions
+     * @param seed Seed of the spin, enough to replay the whole opening
+     */
+    public LedgerRecord(long timestamp, UUID player, String crate, int reward, String rewardDescription, long seed)
+    {
+        this.timestamp = timestamp;
+        this.player = player;
+        this.crate = truncate(crate);
+        this.reward = reward;
+        this.rewardDescription = truncate(rewardDescription);
+        this.seed = seed;
+    }
+
+    private static String truncate(String text)
+    {
+        return text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+    }
+
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public UUID getPlayer()
+    {
+        return player;
+    }
+
+    public String getCrate()
+    {
+        return crate;
+    }
+
+    public int getReward()
+    {
+        return reward;
+    }
+
+    public String getRewardDescription()
+    {
+        return rewardDescription;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Write this record's body
+     * @param buffer Where it's written, needs at least {@link #maxBodySize()} bytes remaining
+     */
+    void writeBody(ByteBuffer buffer)
+    {
+        buffer.putLong(timestamp);
+        buffer.putLong(player.getMostSignificantBits());
+        buffer.putLong(player.getLeastSignificantBits());
+        buffer.putLong(seed);
+        buffer.putInt(reward);
+        putText(buffer, crate);
+        putText(buffer, rewardDescription);
+    }
+
+    /**
+     * Read a record's body
+     * @param buffer Positioned at the start of the body
+     * @return The record
+     */
+    static LedgerRecord readBody(ByteBuffer buffer)
+    {
+        long timestamp = buffer.getLong();
+        UUID player = new UUID(buffer.getLong(), buffer.getLong());
+        long seed = buffer.getLong();
+        int reward = buffer.getInt();
+
+        return new LedgerRecord(timestamp, player, getText(buffer), reward, getText(buffer), seed);
+    }
+
+    /**
+     * Most bytes any record's body can take up
+     * @return Size in bytes
+     */
+    static int maxBodySize()
+    {
+        // Fixed fields, then two length prefixed strings of up to 3 bytes a character
+        return 8 * 4 + 4 + 2 * (2 + MAX_TEXT_LENGTH * 3);
+    }
+
+    private static void putText(ByteBuffer buffer, String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getText(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LedgerRecord{timestamp=" + timestamp + ", player=" + player + ", crate=" + crate + ", reward=" + reward + ", rewardDescription=" + rewardDescription + ", seed=" + seed + "}";
+    }
+
+}
@@ -0,0 +1,171 @@
+package uk.co.loonyrules.rp.melonco.ledger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of a ledger segment file. Each segment starts with a header and is followed by records, each record is
+ * framed as its body's length, the body, then a CRC32 of the body so a torn write at the tail can be spotted.
+ */
+public final class LedgerSegment
+{
+
+    static final int MAGIC = 0x4D434C47; // MCLG
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+    /**
+     * Bytes a record takes up on top of its body
+     */
+    static final int FRAME_SIZE = 4 + 4;
+
+    private static final Pattern NAME = Pattern.compile("segment-(\\d{10})\\.ledger");
+
+    private LedgerSegment()
+    {
+    }
+
+    /**
+     * Get the file of a segment
+     * @param directory The ledger's directory
+     * @param id Id of the segment
+     * @return The segment's file
+     */
+    public static File file(File directory, int id)
+    {
+        return new File(directory, String.format("segment-%010d.ledger", id));
+    }
+
+    /**
+     * Get the ids of every segment in a ledger, oldest first
+     * @param directory The ledger's directory
+     * @return Segment ids in ascending order
+     */
+    public static int[] list(File directory)
+    {
+        String[] names = directory.list();
+
+        if(names == null)
+            return new int[0];
+
+        int[] ids = new int[names.length];
+        int size = 0;
+
+        for(String name : names)
+        {
+            Matcher matcher = NAME.matcher(name);
+
+            if(matcher.matches())
+                ids[size++] = Integer.parseInt(matcher.group(1));
+        }
+
+        ids = Arrays.copyOf(ids, size);
+        Arrays.sort(ids);
+
+        return ids;
+    }
+
+    static void writeHeader(ByteBuffer buffer)
+    {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+    }
+
+    static void checkHeader(ByteBuffer buffer, File file) throws IOException
+    {
+        if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+            throw new IOException(file + " isn't a ledger segment.");
+
+        int version = buffer.getInt();
+
+        if(version != VERSION)
+            throw new IOException(file + " is version " + version + ", only version " + VERSION + " is supported.");
+    }
+
+    /**
+     * Frame a record into a buffer
+     * @param buffer Where it's written, needs at least {@link #maxRecordSize()} bytes remaining
+     * @param record The record
+     * @param crc Reused to checksum the body
+     */
+    static void writeRecord(ByteBuffer buffer, LedgerRecord record, CRC32 crc)
+    {
+        int start = buffer.position();
+
+        buffer.position(start + 4);
+        record.writeBody(buffer);
+
+        int end = buffer.position(), length = end - start - 4;
+
+        // Checksumming the body through a view so the buffer's position isn't disturbed
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + 4).limit(end);
+        crc.reset();
+        crc.update(body);
+
+        buffer.putInt(start, length);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Read a single record from anywhere in a segment
+     * @param channel The segment
+     * @param position Byte offset of the record
+     * @return The record, or null if there isn't a valid record there
+     * @throws IOException If the segment can't be read
+     */
+    static LedgerRecord readRecord(FileChannel channel, long position) throws IOException
+    {
+        ByteBuffer length = ByteBuffer.allocate(4);
+
+        if(!readFully(channel, length, position))
+            return null;
+
+        int size = length.getInt(0);
+
+        if(size <= 0 || size > LedgerRecord.maxBodySize())
+            return null;
+
+        ByteBuffer frame = ByteBuffer.allocate(size + 4);
+
+        if(!readFully(channel, frame, position + 4))
+            return null;
+
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), 0, size);
+
+        if((int) crc.getValue() != frame.getInt(size))
+            return null;
+
+        frame.limit(size);
+        return LedgerRecord.readBody(frame);
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            if(channel.read(buffer, position + buffer.position()) < 0)
+                return false;
+        }
+
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Most bytes a framed record can take up
+     * @return Size in bytes
+     */
+    static int maxRecordSize()
+    {
+        return FRAME_SIZE + LedgerRecord.maxBodySize();
+    }
+
+}
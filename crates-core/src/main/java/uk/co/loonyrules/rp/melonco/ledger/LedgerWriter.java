@@ -0,0 +1,427 @@
+package uk.co.loonyrules.rp.melonco.ledger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Appends records to the ledger from a dedicated I/O thread. Appending only queues the record, so it never blocks.
+ * The thread drains everything queued into one buffer and writes it with a single FileChannel write (group commit),
+ * forcing it to disk periodically. Segments roll over once they reach a size, and every start begins a new segment
+ * so a segment torn by a crash is never appended to.
+ */
+public class LedgerWriter
+{
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final File directory;
+    private final LedgerIndex index;
+    private final long segmentSize, forceIntervalNanos;
+    private final Logger logger;
+
+    private final ConcurrentLinkedQueue<LedgerRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong appended = new AtomicLong();
+    private volatile long written, durable, failed;
+    private volatile boolean running, sleeping;
+    private volatile long forceRequested;
+
+    private Thread thread;
+
+    // Only touched by the I/O thread
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private int segment;
+    private long segmentPosition, lastForce;
+    private int bufferedRecords;
+
+    // Records in the buffer and where they'll be in the segment, for indexing once written
+    private LedgerRecord[] buffered = new LedgerRecord[1024];
+    private long[] bufferedPositions = new long[1024];
+
+    /**
+     * Initialise a LedgerWriter
+     * @param directory Directory the segments are kept in
+     * @param segmentSize Size a segment can grow to before a new one is started, in bytes
+     * @param forceInterval How often written records are forced to disk, in milliseconds
+     * @param logger Where I/O failures are reported
+     */
+    public LedgerWriter(File directory, long segmentSize, long forceInterval, Logger logger)
+    {
+        this(directory, null, segmentSize, forceInterval, logger);
+    }
+
+    /**
+     * Initialise a LedgerWriter that keeps an index up to date
+     * @param directory Directory the segments are kept in
+     * @param index Index to add every record to, can be null
+     * @param segmentSize Size a segment can grow to before a new one is started, in bytes
+     * @param forceInterval How often written records are forced to disk, in milliseconds
+     * @param logger Where I/O failures are reported
+     */
+    public LedgerWriter(File directory, LedgerIndex index, long segmentSize, long forceInterval, Logger logger)
+    {
+        if(segmentSize < BUFFER_SIZE)
+            throw new IllegalArgumentException("Segments must be at least " + BUFFER_SIZE + " bytes, got " + segmentSize);
+
+        this.directory = directory;
+        this.index = index;
+        this.segmentSize = segmentSize;
+        this.forceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(forceInterval);
+        this.logger = logger;
+    }
+
+    /**
+     * Open a new segment and start the I/O thread
+     * @throws IOException If the segment can't be created
+     */
+    public synchronized void start() throws IOException
+    {
+        if(thread != null)
+            throw new IllegalStateException("The ledger has already been started.");
+
+        Files.createDirectories(directory.toPath());
+
+        int[] segments = LedgerSegment.list(directory);
+        openSegment(segments.length == 0 ? 0 : segments[segments.length - 1] + 1);
+
+        running = true;
+        thread = new Thread(this::run, "Crates-Ledger");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a record to be written, safe to call from any thread
+     * @param record The record
+     */
+    public void append(LedgerRecord record)
+    {
+        if(!running)
+            throw new IllegalStateException("The ledger isn't running.");
+
+        queue.offer(record);
+        appended.incrementAndGet();
+
+        if(sleeping)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Wait until every record appended so far has been written and forced to disk
+     * @param timeout Longest to wait in milliseconds
+     * @return True: Everything is on disk. False: Timed out first.
+     */
+    public boolean flush(long timeout)
+    {
+        long target = appended.get(), deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        forceRequested = target;
+        LockSupport.unpark(thread);
+
+        while(durable + failed < target)
+        {
+            if(System.nanoTime() >= deadline || !thread.isAlive())
+                return false;
+
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        return true;
+    }
+
+    /**
+     * Write everything still queued, force it to disk and stop the I/O thread
+     * @param timeout Longest to wait in milliseconds
+     */
+    public synchronized void close(long timeout)
+    {
+        if(thread == null || !running)
+            return;
+
+        running = false;
+        LockSupport.unpark(thread);
+
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if(thread.isAlive())
+            logger.warning("Timed out closing the ledger, " + getPending() + " records may not have been written.");
+    }
+
+    /**
+     * Get the amount of records appended
+     * @return Total records appended
+     */
+    public long getAppended()
+    {
+        return appended.get();
+    }
+
+    /**
+     * Get the amount of records written to a segment
+     * @return Total records written
+     */
+    public long getWritten()
+    {
+        return written;
+    }
+
+    /**
+     * Get the amount of records forced to disk
+     * @return Total records on disk
+     */
+    public long getDurable()
+    {
+        return durable;
+    }
+
+    /**
+     * Get the amount of records lost to I/O failures
+     * @return Total records lost
+     */
+    public long getFailed()
+    {
+        return failed;
+    }
+
+    /**
+     * Get the amount of records waiting to be written
+     * @return Records queued or buffered
+     */
+    public long getPending()
+    {
+        return appended.get() - written - failed;
+    }
+
+    /**
+     * Get the id of the segment being written to
+     * @return Current segment id
+     */
+    public int getSegment()
+    {
+        return segment;
+    }
+
+    private void run()
+    {
+        if(index != null)
+            catchUp();
+
+        lastForce = System.nanoTime();
+
+        while(true)
+        {
+            LedgerRecord record = queue.poll();
+
+            if(record != null)
+            {
+                buffer(record);
+                continue;
+            }
+
+            // Queue is drained, writing everything gathered in one go
+            writeBuffer();
+
+            long now = System.nanoTime();
+
+            if(written > durable && (now - lastForce >= forceIntervalNanos || forceRequested > durable || !running))
+                force();
+
+            if(!running && queue.isEmpty())
+                break;
+
+            // Sleeping until something is appended, checking the queue again after saying so to not miss a wake up
+            sleeping = true;
+
+            if(queue.isEmpty() && running)
+                LockSupport.parkNanos(this, written > durable ? Math.min(IDLE_PARK, forceIntervalNanos) : IDLE_PARK);
+
+            sleeping = false;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to close ledger segment " + segment, e);
+        }
+    }
+
+    private void buffer(LedgerRecord record)
+    {
+        if(buffer.remaining() < LedgerSegment.maxRecordSize())
+            writeBuffer();
+
+        // Rolling over before this record could take the segment past its size
+        if(segmentPosition + buffer.position() + LedgerSegment.maxRecordSize() > segmentSize)
+        {
+            writeBuffer();
+
+            try {
+                rollOver();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to roll over ledger segment " + segment, e);
+                recover();
+            }
+        }
+
+        if(bufferedRecords == buffered.length)
+        {
+            buffered = Arrays.copyOf(buffered, bufferedRecords << 1);
+            bufferedPositions = Arrays.copyOf(bufferedPositions, bufferedRecords << 1);
+        }
+
+        buffered[bufferedRecords] = record;
+        bufferedPositions[bufferedRecords] = segmentPosition + buffer.position();
+        bufferedRecords++;
+
+        LedgerSegment.writeRecord(buffer, record, crc);
+    }
+
+    private void writeBuffer()
+    {
+        if(bufferedRecords == 0)
+            return;
+
+        buffer.flip();
+
+        try {
+            while(buffer.hasRemaining())
+                segmentPosition += channel.write(buffer);
+
+            written += bufferedRecords;
+            index();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to write " + bufferedRecords + " records to ledger segment " + segment, e);
+            failed += bufferedRecords;
+            recover();
+        }
+
+        buffer.clear();
+        Arrays.fill(buffered, 0, bufferedRecords, null);
+        bufferedRecords = 0;
+    }
+
+    private void index()
+    {
+        if(index == null)
+            return;
+
+        try {
+            for(int i = 0; i < bufferedRecords; i++)
+                index.add(buffered[i].getPlayer(), buffered[i].getTimestamp(), LedgerIndex.address(segment, bufferedPositions[i]));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to index records in ledger segment " + segment, e);
+        }
+    }
+
+    // Indexing anything written before this start that the index hasn't got yet
+    private void catchUp()
+    {
+        long last = index.getLastAddress();
+        int lastSegment = last < 0 ? -1 : LedgerIndex.segmentOf(last);
+        long lastPosition = last < 0 ? -1 : LedgerIndex.positionOf(last), indexed = 0;
+
+        for(int id : LedgerSegment.list(directory))
+        {
+            if(id < lastSegment || id >= segment)
+                continue;
+
+            try(LedgerReader reader = new LedgerReader(LedgerSegment.file(directory, id))) {
+                LedgerRecord record;
+
+                while((record = reader.next()) != null)
+                {
+                    if(id == lastSegment && reader.getPosition() <= lastPosition)
+                        continue;
+
+                    index.add(record.getPlayer(), record.getTimestamp(), LedgerIndex.address(id, reader.getPosition()));
+                    indexed++;
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to index ledger segment " + id, e);
+            }
+        }
+
+        if(indexed > 0)
+        {
+            index.force();
+            logger.info("Indexed " + indexed + " ledger records that were missing from the index.");
+        }
+    }
+
+    private void force()
+    {
+        long target = written;
+
+        try {
+            channel.force(false);
+            durable = target;
+
+            if(index != null)
+                index.force();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to force ledger segment " + segment + " to disk", e);
+        }
+
+        lastForce = System.nanoTime();
+    }
+
+    private void rollOver() throws IOException
+    {
+        channel.force(false);
+        durable = written;
+        channel.close();
+
+        openSegment(segment + 1);
+    }
+
+    // A failed write may have left part of a record behind, so carrying on in a fresh segment
+    private void recover()
+    {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+
+        try {
+            openSegment(segment + 1);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to open a new ledger segment", e);
+        }
+    }
+
+    private void openSegment(int id) throws IOException
+    {
+        File file = LedgerSegment.file(directory, id);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        ByteBuffer header = ByteBuffer.allocate(LedgerSegment.HEADER_SIZE);
+        LedgerSegment.writeHeader(header);
+        header.flip();
+
+        while(header.hasRemaining())
+            channel.write(header);
+
+        this.channel = channel;
+        this.segment = id;
+        this.segmentPosition = LedgerSegment.HEADER_SIZE;
+    }
+
+}
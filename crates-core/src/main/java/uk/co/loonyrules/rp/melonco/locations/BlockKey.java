@@ -0,0 +1,77 @@
+package uk.co.loonyrules.rp.melonco.locations;
+
+/**
+ * Packs block and chunk coordinates into single longs for {@link LongObjectMap} keys. A block is its x and z in 26
+ * bits each, enough for the 30 million block world border, and its y in the low 12 bits.
+ */
+public final class BlockKey
+{
+
+    private BlockKey()
+    {
+    }
+
+    /**
+     * Pack a block's coordinates
+     * @param x The block's x
+     * @param y The block's y
+     * @param z The block's z
+     * @return The packed coordinates
+     */
+    public static long of(int x, int y, int z)
+    {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * Get the x of packed block coordinates
+     * @param key The packed coordinates
+     * @return The block's x
+     */
+    public static int x(long key)
+    {
+        return (int) (key >> 38);
+    }
+
+    /**
+     * Get the y of packed block coordinates
+     * @param key The packed coordinates
+     * @return The block's y
+     */
+    public static int y(long key)
+    {
+        return (int) (key << 52 >> 52);
+    }
+
+    /**
+     * Get the z of packed block coordinates
+     * @param key The packed coordinates
+     * @return The block's z
+     */
+    public static int z(long key)
+    {
+        return (int) (key << 26 >> 38);
+    }
+
+    /**
+     * Pack a chunk's coordinates
+     * @param chunkX The chunk's x
+     * @param chunkZ The chunk's z
+     * @return The packed coordinates
+     */
+    public static long chunk(int chunkX, int chunkZ)
+    {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the packed coordinates of the chunk a block is in
+     * @param key The block's packed coordinates
+     * @return The chunk's packed coordinates
+     */
+    public static long chunkOf(long key)
+    {
+        return chunk(x(key) >> 4, z(key) >> 4);
+    }
+
+}
@@ -0,0 +1,342 @@
+package uk.co.loonyrules.rp.melonco.locations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where Crates have been placed, by world and packed block coordinates, see {@link BlockKey}.
+ *
+ * Every placed Crate is kept by chunk, but only the Crates in loaded chunks are in each world's live map, the one a
+ * click is looked up in. Looking up a block is one hash of its world's name and one probe of a primitive map, and
+ * Crates in unloaded chunks cost nothing until their chunk loads.
+ *
+ * The file is a header, then for each world its name, the names of the Crates placed in it and each placed Crate's
+ * packed coordinates and index into those names. Not thread safe, only ever touched on the main thread.
+ */
+public final class CrateLocations
+{
+
+    private static final int MAGIC = 0x4D434C43; // MCLC
+    private static final int VERSION = 1;
+
+    private final Map<String, WorldCrates> worlds = new HashMap<>();
+    private int size;
+
+    /**
+     * Get the Crate placed at a block, if its chunk is loaded
+     * @param world Name of the world
+     * @param x The block's x
+     * @param y The block's y
+     * @param z The block's z
+     * @return Name of the Crate, null if there isn't one or its chunk isn't loaded
+     */
+    public String get(String world, int x, int y, int z)
+    {
+        WorldCrates crates = worlds.get(world);
+        return crates == null ? null : crates.loaded.get(BlockKey.of(x, y, z));
+    }
+
+    /**
+     * Place a Crate at a block
+     * @param world Name of the world
+     * @param x The block's x
+     * @param y The block's y
+     * @param z The block's z
+     * @param crate Name of the Crate
+     * @param loaded Whether the block's chunk is loaded
+     * @return Name of the Crate that was placed there before, null if there wasn't one
+     */
+    public String put(String world, int x, int y, int z, String crate, boolean loaded)
+    {
+        WorldCrates crates = worlds.computeIfAbsent(world, name -> new WorldCrates());
+        long key = BlockKey.of(x, y, z);
+        long chunk = BlockKey.chunkOf(key);
+
+        LongObjectMap<String> inChunk = crates.chunks.get(chunk);
+
+        if(inChunk == null)
+            crates.chunks.put(chunk, inChunk = new LongObjectMap<>());
+
+        String old = inChunk.put(key, crate);
+
+        if(loaded)
+            crates.loaded.put(key, crate);
+
+        if(old == null)
+            size++;
+
+        return old;
+    }
+
+    /**
+     * Remove the Crate placed at a block
+     * @param world Name of the world
+     * @param x The block's x
+     * @param y The block's y
+     * @param z The block's z
+     * @return Name of the Crate that was there, null if there wasn't one
+     */
+    public String remove(String world, int x, int y, int z)
+    {
+        WorldCrates crates = worlds.get(world);
+
+        if(crates == null)
+            return null;
+
+        long key = BlockKey.of(x, y, z);
+        long chunk = BlockKey.chunkOf(key);
+        LongObjectMap<String> inChunk = crates.chunks.get(chunk);
+
+        if(inChunk == null)
+            return null;
+
+        String old = inChunk.remove(key);
+        crates.loaded.remove(key);
+
+        if(inChunk.isEmpty())
+            crates.chunks.remove(chunk);
+
+        if(old != null)
+            size--;
+
+        return old;
+    }
+
+    /**
+     * Make the Crates in a chunk clickable as it loads
+     * @param world Name of the world
+     * @param chunkX The chunk's x
+     * @param chunkZ The chunk's z
+     */
+    public void chunkLoaded(String world, int chunkX, int chunkZ)
+    {
+        WorldCrates crates = worlds.get(world);
+
+        if(crates == null)
+            return;
+
+        LongObjectMap<String> inChunk = crates.chunks.get(BlockKey.chunk(chunkX, chunkZ));
+
+        if(inChunk != null)
+            inChunk.forEach(crates.loaded::put);
+    }
+
+    /**
+     * Drop the Crates in a chunk from the live map as it unloads
+     * @param world Name of the world
+     * @param chunkX The chunk's x
+     * @param chunkZ The chunk's z
+     */
+    public void chunkUnloaded(String world, int chunkX, int chunkZ)
+    {
+        WorldCrates crates = worlds.get(world);
+
+        if(crates == null)
+            return;
+
+        LongObjectMap<String> inChunk = crates.chunks.get(BlockKey.chunk(chunkX, chunkZ));
+
+        if(inChunk != null)
+            inChunk.forEach((key, crate) -> crates.loaded.remove(key));
+    }
+
+    /**
+     * Drop every Crate in a world from the live map as it unloads
+     * @param world Name of the world
+     */
+    public void worldUnloaded(String world)
+    {
+        WorldCrates crates = worlds.get(world);
+
+        if(crates != null)
+            crates.loaded.clear();
+    }
+
+    /**
+     * Get the amount of Crates placed
+     * @return Crates placed in every world
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Get the amount of Crates in loaded chunks
+     * @return Crates that can be clicked
+     */
+    public int loadedSize()
+    {
+        int loaded = 0;
+
+        for(WorldCrates crates : worlds.values())
+            loaded += crates.loaded.size();
+
+        return loaded;
+    }
+
+    /**
+     * Call something for every placed Crate
+     * @param consumer Called with each world's name, the Crate's packed coordinates and its name
+     */
+    public void forEach(Consumer consumer)
+    {
+        for(Map.Entry<String, WorldCrates> entry : worlds.entrySet())
+            entry.getValue().chunks.forEach((chunk, inChunk) -> inChunk.forEach((key, crate) -> consumer.accept(entry.getKey(), key, crate)));
+    }
+
+    /**
+     * Write every placed Crate out, for saving off the main thread
+     * @return Contents of the file
+     */
+    public byte[] toBytes()
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + size * 10);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(worlds.size());
+
+            for(Map.Entry<String, WorldCrates> entry : worlds.entrySet())
+            {
+                // Each Crate's name is written once per world, every location just points at it
+                List<String> names = new ArrayList<>();
+                Map<String, Integer> indexes = new HashMap<>();
+                List<Long> keys = new ArrayList<>();
+                List<Integer> crates = new ArrayList<>();
+
+                entry.getValue().chunks.forEach((chunk, inChunk) -> inChunk.forEach((key, crate) ->
+                {
+                    keys.add(key);
+                    crates.add(indexes.computeIfAbsent(crate, name ->
+                    {
+                        names.add(name);
+                        return names.size() - 1;
+                    }));
+                }));
+
+                out.writeUTF(entry.getKey());
+                out.writeShort(names.size());
+
+                for(String name : names)
+                    out.writeUTF(name);
+
+                out.writeInt(keys.size());
+
+                for(int i = 0; i < keys.size(); i++)
+                {
+                    out.writeLong(keys.get(i));
+                    out.writeShort(crates.get(i));
+                }
+            }
+        } catch (IOException e) {
+            // Only ever writing to memory
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Save every placed Crate, written aside and moved into place so a crash never leaves half a file
+     * @param file The file
+     * @param contents What to save, from {@link #toBytes()}
+     * @throws IOException If the file can't be written
+     */
+    public static void save(File file, byte[] contents) throws IOException
+    {
+        File temporary = new File(file.getPath() + ".tmp");
+
+        Files.write(temporary.toPath(), contents);
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load every placed Crate, none of them in a loaded chunk until they're marked with {@link #chunkLoaded(String, int, int)}
+     * @param file The file, which may not exist yet
+     * @return The placed Crates, empty if the file doesn't exist
+     * @throws IOException If the file can't be read or isn't a locations file
+     */
+    public static CrateLocations load(File file) throws IOException
+    {
+        CrateLocations locations = new CrateLocations();
+
+        if(!file.exists())
+            return locations;
+
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath()))))
+        {
+            if(in.readInt() != MAGIC)
+                throw new IOException(file + " isn't a Crate locations file.");
+
+            int version = in.readInt();
+
+            if(version != VERSION)
+                throw new IOException(file + " is version " + version + ", only version " + VERSION + " is supported.");
+
+            int worlds = in.readInt();
+
+            for(int i = 0; i < worlds; i++)
+            {
+                String world = in.readUTF();
+                String[] names = new String[in.readUnsignedShort()];
+
+                for(int j = 0; j < names.length; j++)
+                    names[j] = in.readUTF();
+
+                int count = in.readInt();
+
+                for(int j = 0; j < count; j++)
+                {
+                    long key = in.readLong();
+                    int name = in.readUnsignedShort();
+
+                    if(name >= names.length)
+                        throw new IOException(file + " is corrupt, a Crate in " + world + " has no name.");
+
+                    locations.put(world, BlockKey.x(key), BlockKey.y(key), BlockKey.z(key), names[name], false);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException(file + " is cut short.", e);
+        }
+
+        return locations;
+    }
+
+    /**
+     * Called with each placed Crate
+     */
+    public interface Consumer
+    {
+
+        void accept(String world, long key, String crate);
+
+    }
+
+    private static final class WorldCrates
+    {
+
+        // Every Crate in the world, by chunk
+        private final LongObjectMap<LongObjectMap<String>> chunks = new LongObjectMap<>();
+
+        // Only the Crates in loaded chunks
+        private final LongObjectMap<String> loaded = new LongObjectMap<>();
+
+    }
+
+}
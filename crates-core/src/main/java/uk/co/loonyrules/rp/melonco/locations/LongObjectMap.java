@@ -0,0 +1,220 @@
+package uk.co.loonyrules.rp.melonco.locations;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from primitive longs to objects, so keys are never boxed. Linear probing with the
+ * table kept at most half full, removals shift the following entries back so there are no tombstones.
+ * Not thread safe.
+ * @param <V> Type of the values, which must not be null
+ */
+public final class LongObjectMap<V>
+{
+
+    private long[] keys;
+    private Object[] values;
+    private int size, mask;
+
+    /**
+     * Initialise an empty map with room for a handful of keys
+     */
+    public LongObjectMap()
+    {
+        this(4);
+    }
+
+    /**
+     * Initialise an empty map
+     * @param expected Amount of keys it should hold without growing
+     */
+    public LongObjectMap(int expected)
+    {
+        int capacity = Integer.highestOneBit(Math.max(2, expected) * 2 - 1) << 1;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the value of a key
+     * @param key The key
+     * @return Its value, null if it isn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        // An empty slot is one without a value, so no key has to be kept back to mark them
+        for(int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask)
+            if(keys[i] == key)
+                return (V) values[i];
+
+        return null;
+    }
+
+    /**
+     * Find out whether a key is in the map
+     * @param key The key
+     * @return True if it's in the map
+     */
+    public boolean containsKey(long key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * Set the value of a key
+     * @param key The key
+     * @param value Its new value
+     * @return Its old value, null if it wasn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value)
+    {
+        if(value == null)
+            throw new IllegalArgumentException("Values cannot be null.");
+
+        int i = hash(key) & mask;
+
+        for(; values[i] != null; i = (i + 1) & mask)
+        {
+            if(keys[i] == key)
+            {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+
+        if(++size * 2 > keys.length)
+            grow();
+
+        return null;
+    }
+
+    /**
+     * Remove a key
+     * @param key The key
+     * @return Its value, null if it wasn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        int slot = hash(key) & mask;
+
+        while(values[slot] != null && keys[slot] != key)
+            slot = (slot + 1) & mask;
+
+        if(values[slot] == null)
+            return null;
+
+        V value = (V) values[slot];
+        size--;
+
+        // Shifting back every entry after this one that would have landed at or before the gap
+        int gap = slot;
+
+        for(int i = (gap + 1) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            int home = hash(keys[i]) & mask;
+
+            if(((i - home) & mask) >= ((i - gap) & mask))
+            {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+
+        keys[gap] = 0;
+        values[gap] = null;
+
+        return value;
+    }
+
+    /**
+     * Get the amount of keys in the map
+     * @return Amount of keys
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Find out whether the map is empty
+     * @return True if it has no keys
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Remove every key
+     */
+    public void clear()
+    {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Call something for every key and value, in no particular order
+     * @param consumer Called with each key and its value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> consumer)
+    {
+        for(int i = 0; i < values.length; i++)
+            if(values[i] != null)
+                consumer.accept(keys[i], (V) values[i]);
+    }
+
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new long[oldKeys.length << 1];
+        values = new Object[oldKeys.length << 1];
+        mask = keys.length - 1;
+
+        for(int i = 0; i < oldKeys.length; i++)
+        {
+            if(oldValues[i] == null)
+                continue;
+
+            int slot = hash(oldKeys[i]) & mask;
+
+            while(values[slot] != null)
+                slot = (slot + 1) & mask;
+
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    // Packed coordinates differ mostly in their low bits of each part, so every bit is mixed in
+    private static int hash(long key)
+    {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Called with each key and value of a {@link LongObjectMap}
+     * @param <V> Type of the values
+     */
+    public interface Consumer<V>
+    {
+
+        void accept(long key, V value);
+
+    }
+
+}
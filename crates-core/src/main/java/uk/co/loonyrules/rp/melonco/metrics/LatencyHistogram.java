@@ -0,0 +1,136 @@
+package uk.co.loonyrules.rp.melonco.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in the style of an HDR histogram. Values are counted in log-linear buckets,
+ * each power of two split into {@link #SUB_BUCKETS} linear buckets, so any value is reported within 12.5% of what
+ * was recorded. Recording is a few atomic increments and never allocates, so it's safe for hot paths.
+ */
+public final class LatencyHistogram
+{
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * Linear buckets each power of two is split into
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Enough buckets for every positive long
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration
+     * @param nanos The duration in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos)
+    {
+        if(nanos < 0)
+            nanos = 0;
+
+        counts.incrementAndGet(bucketOf(nanos));
+        sum.add(nanos);
+
+        long current;
+        while(nanos > (current = max.get()) && !max.compareAndSet(current, nanos));
+    }
+
+    /**
+     * Get the amount of durations recorded
+     * @return Total count
+     */
+    public long getCount()
+    {
+        long count = 0;
+
+        for(int i = 0; i < BUCKETS; i++)
+            count += counts.get(i);
+
+        return count;
+    }
+
+    /**
+     * Get every duration recorded added together
+     * @return Total in nanoseconds
+     */
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    /**
+     * Get the longest duration recorded
+     * @return Longest in nanoseconds
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Get the duration a percentage of recordings were at or below
+     * @param percentile Percentile between 0 and 100
+     * @return Duration in nanoseconds, the top of the bucket it fell in. 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long count = getCount();
+
+        if(count == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100) / 100));
+        long seen = 0;
+
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts.get(i);
+
+            if(seen >= target)
+                return Math.min(highestOf(i), getMax());
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Forget every recorded duration. Recordings made while resetting may be partly lost.
+     */
+    public void reset()
+    {
+        for(int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+
+        sum.reset();
+        max.set(0);
+    }
+
+    static int bucketOf(long value)
+    {
+        // Small values get a bucket each
+        if(value < SUB_BUCKETS)
+            return (int) value;
+
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestOf(int bucket)
+    {
+        if(bucket < SUB_BUCKETS)
+            return bucket;
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+        return lowest + (1L << shift) - 1;
+    }
+
+}
@@ -0,0 +1,88 @@
+package uk.co.loonyrules.rp.melonco.metrics;
+
+import java.util.Locale;
+
+/**
+ * Writes metrics in the Prometheus text exposition format.
+ */
+public final class PrometheusWriter
+{
+
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final StringBuilder builder;
+
+    /**
+     * Initialise a PrometheusWriter
+     * @param builder Where the metrics are written to
+     */
+    public PrometheusWriter(StringBuilder builder)
+    {
+        this.builder = builder;
+    }
+
+    /**
+     * Write a value that only ever goes up
+     * @param name Name of the metric, should end in _total
+     * @param help Description of the metric
+     * @param value Current value
+     * @return This PrometheusWriter
+     */
+    public PrometheusWriter counter(String name, String help, double value)
+    {
+        header(name, help, "counter");
+        return sample(name, "", value);
+    }
+
+    /**
+     * Write a value that can go up and down
+     * @param name Name of the metric
+     * @param help Description of the metric
+     * @param value Current value
+     * @return This PrometheusWriter
+     */
+    public PrometheusWriter gauge(String name, String help, double value)
+    {
+        header(name, help, "gauge");
+        return sample(name, "", value);
+    }
+
+    /**
+     * Write a histogram of durations as a summary in seconds
+     * @param name Name of the metric, should end in _seconds
+     * @param help Description of the metric
+     * @param histogram The durations
+     * @return This PrometheusWriter
+     */
+    public PrometheusWriter summary(String name, String help, LatencyHistogram histogram)
+    {
+        header(name, help, "summary");
+
+        for(double quantile : QUANTILES)
+            sample(name, "{quantile=\"" + quantile + "\"}", histogram.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND);
+
+        sample(name + "_sum", "", histogram.getSum() / NANOS_PER_SECOND);
+        return sample(name + "_count", "", histogram.getCount());
+    }
+
+    private void header(String name, String help, String type)
+    {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private PrometheusWriter sample(String name, String labels, double value)
+    {
+        builder.append(name).append(labels).append(' ');
+
+        // Whole numbers are written without a fraction to keep counters readable
+        if(value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15)
+            builder.append((long) value);
+        else builder.append(String.format(Locale.ROOT, "%.9g", value));
+
+        builder.append('\n');
+        return this;
+    }
+
+}
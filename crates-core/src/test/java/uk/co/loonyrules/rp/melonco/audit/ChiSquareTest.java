@@ -0,0 +1,65 @@
+package uk.co.loonyrules.rp.melonco.audit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChiSquareTest
+{
+
+    @Test
+    public void matchesCriticalValues()
+    {
+        // Upper 5% and 1% points of the chi-square distribution
+        assertEquals(0.05, ChiSquare.pValue(3.841459, 1), 1e-6);
+        assertEquals(0.05, ChiSquare.pValue(11.070498, 5), 1e-6);
+        assertEquals(0.01, ChiSquare.pValue(23.209251, 10), 1e-6);
+        assertEquals(0.05, ChiSquare.pValue(124.342113, 100), 1e-6);
+    }
+
+    @Test
+    public void matchesClosedForms()
+    {
+        // With 2 degrees of freedom the p-value is exp(-x / 2)
+        for(double x = 0.5; x < 40; x += 0.5)
+            assertEquals(Math.exp(-x / 2), ChiSquare.pValue(x, 2), 1e-12);
+    }
+
+    @Test
+    public void edgeCases()
+    {
+        assertEquals(1, ChiSquare.pValue(0, 4), 0);
+        assertEquals(1, ChiSquare.pValue(5, 0), 0);
+        assertEquals(0, ChiSquare.pValue(Double.POSITIVE_INFINITY, 4), 0);
+    }
+
+    @Test
+    public void statisticOfAPerfectFitIsZero()
+    {
+        assertEquals(0, ChiSquare.statistic(new long[]{50, 30, 20}, new double[]{50, 30, 20}), 0);
+    }
+
+    @Test
+    public void statistic()
+    {
+        assertEquals(4 / 50D + 4 / 30D + 0, ChiSquare.statistic(new long[]{52, 28, 20}, new double[]{50, 30, 20}), 1e-12);
+    }
+
+    @Test
+    public void impossibleOutcomesAreIgnoredUnlessObserved()
+    {
+        double[] expected = {50, 0, 50};
+
+        assertEquals(1, ChiSquare.degreesOfFreedom(expected));
+        assertEquals(0, ChiSquare.statistic(new long[]{50, 0, 50}, expected), 0);
+        assertEquals(Double.POSITIVE_INFINITY, ChiSquare.statistic(new long[]{50, 1, 49}, expected), 0);
+    }
+
+    @Test
+    public void logGamma()
+    {
+        assertEquals(Math.log(24), ChiSquare.logGamma(5), 1e-12);
+        assertEquals(Math.log(Math.sqrt(Math.PI)), ChiSquare.logGamma(0.5), 1e-12);
+    }
+
+}
@@ -0,0 +1,173 @@
+package uk.co.loonyrules.rp.melonco.checkpoint;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointFileTest
+{
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final CRC32 crc = new CRC32();
+
+    private static SpinCheckpoint checkpoint(long id)
+    {
+        return new SpinCheckpoint(id, 500 + id, new UUID(id, ~id), "ENDER", id * 7919, (int) id % 5);
+    }
+
+    private File write(ByteBuffer buffer) throws IOException
+    {
+        File file = new File(folder.getRoot(), "checkpoints");
+        Files.write(file.toPath(), Arrays.copyOf(buffer.array(), buffer.position()));
+        return file;
+    }
+
+    private static void assertCheckpoint(SpinCheckpoint expected, SpinCheckpoint checkpoint)
+    {
+        assertEquals(expected.getId(), checkpoint.getId());
+        assertEquals(expected.getStartedAt(), checkpoint.getStartedAt());
+        assertEquals(expected.getPlayer(), checkpoint.getPlayer());
+        assertEquals(expected.getCrate(), checkpoint.getCrate());
+        assertEquals(expected.getSeed(), checkpoint.getSeed());
+        assertEquals(expected.getOutcome(), checkpoint.getOutcome());
+    }
+
+    @Test
+    public void replaysOpeningsThatWereNeverCompleted() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        CheckpointFile.writeHeader(buffer);
+
+        for(long id = 0; id < 10; id++)
+            CheckpointFile.writeOpen(buffer, checkpoint(id), crc);
+
+        for(long id = 0; id < 10; id += 2)
+            CheckpointFile.writeComplete(buffer, id, crc);
+
+        Map<Long, SpinCheckpoint> live = CheckpointFile.replay(write(buffer));
+
+        assertEquals(5, live.size());
+
+        for(long id = 1; id < 10; id += 2)
+            assertCheckpoint(checkpoint(id), live.get(id));
+    }
+
+    @Test
+    public void stopsAtATornTail() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        CheckpointFile.writeHeader(buffer);
+        CheckpointFile.writeOpen(buffer, checkpoint(1), crc);
+        CheckpointFile.writeOpen(buffer, checkpoint(2), crc);
+        CheckpointFile.writeComplete(buffer, 1, crc);
+
+        // Half of the tombstone made it to disk
+        buffer.position(buffer.position() - 6);
+
+        Map<Long, SpinCheckpoint> live = CheckpointFile.replay(write(buffer));
+
+        assertEquals(2, live.size());
+        assertTrue(live.containsKey(1L));
+    }
+
+    @Test
+    public void stopsAtABadChecksum() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        CheckpointFile.writeHeader(buffer);
+        CheckpointFile.writeOpen(buffer, checkpoint(1), crc);
+
+        int second = buffer.position();
+        CheckpointFile.writeOpen(buffer, checkpoint(2), crc);
+        CheckpointFile.writeOpen(buffer, checkpoint(3), crc);
+
+        File file = write(buffer);
+
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(second + 4 + 12);
+            raf.write(0x55);
+        }
+
+        Map<Long, SpinCheckpoint> live = CheckpointFile.replay(file);
+
+        assertEquals(1, live.size());
+        assertCheckpoint(checkpoint(1), live.get(1L));
+    }
+
+    @Test
+    public void replaysVersionOneJournals() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        buffer.putInt(CheckpointFile.MAGIC);
+        buffer.putInt(1);
+
+        // Version 1 kept elapsed ticks after the outcome, and updated them in progress records
+        for(long id = 0; id < 3; id++)
+        {
+            SpinCheckpoint checkpoint = checkpoint(id);
+            ByteBuffer body = ByteBuffer.allocate(256);
+            byte[] name = checkpoint.getCrate().getBytes(StandardCharsets.UTF_8);
+
+            body.put(CheckpointFile.OPEN);
+            body.putLong(id).putLong(checkpoint.getStartedAt());
+            body.putLong(checkpoint.getPlayer().getMostSignificantBits()).putLong(checkpoint.getPlayer().getLeastSignificantBits());
+            body.putLong(checkpoint.getSeed()).putInt(checkpoint.getOutcome()).putInt(40);
+            body.put((byte) name.length).put(name);
+            frame(buffer, body);
+        }
+
+        ByteBuffer progress = ByteBuffer.allocate(64);
+        progress.put((byte) 2).putInt(2).putLong(0).putInt(60).putLong(2).putInt(60);
+        frame(buffer, progress);
+
+        CheckpointFile.writeComplete(buffer, 1, crc);
+
+        Map<Long, SpinCheckpoint> live = CheckpointFile.replay(write(buffer));
+
+        assertEquals(2, live.size());
+        assertCheckpoint(checkpoint(0), live.get(0L));
+        assertCheckpoint(checkpoint(2), live.get(2L));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAFileThatIsNotAJournal() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putInt(0x12345678).putInt(CheckpointFile.VERSION);
+
+        CheckpointFile.replay(write(buffer));
+    }
+
+    @Test
+    public void nothingToReplayWithoutAFile() throws IOException
+    {
+        assertTrue(CheckpointFile.replay(new File(folder.getRoot(), "missing")).isEmpty());
+    }
+
+    private void frame(ByteBuffer buffer, ByteBuffer body)
+    {
+        crc.reset();
+        crc.update(body.array(), 0, body.position());
+
+        buffer.putInt(body.position());
+        buffer.put(body.array(), 0, body.position());
+        buffer.putInt((int) crc.getValue());
+    }
+
+}
@@ -0,0 +1,70 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+
+public class AliasTableTest
+{
+
+    private static final int SAMPLES = 1_000_000;
+
+    @Test
+    public void samplesInProportionToTheWeights()
+    {
+        double[] weights = {100, 50, 20, 8, 2};
+        AliasTable table = new AliasTable(weights);
+        SplittableRandom random = new SplittableRandom(42);
+        long[] counts = new long[weights.length];
+
+        for(int i = 0; i < SAMPLES; i++)
+            counts[table.sample(random)]++;
+
+        for(int i = 0; i < weights.length; i++)
+            assertEquals("Index " + i, weights[i] / 180, counts[i] / (double) SAMPLES, 0.005);
+    }
+
+    @Test
+    public void neverSamplesAZeroWeight()
+    {
+        AliasTable table = new AliasTable(new double[]{0, 1, 0, 3, 0});
+        SplittableRandom random = new SplittableRandom(7);
+
+        for(int i = 0; i < SAMPLES; i++)
+        {
+            int index = table.sample(random);
+            assertEquals("Sampled index " + index, true, index == 1 || index == 3);
+        }
+    }
+
+    @Test
+    public void singleWeightAlwaysSamplesIt()
+    {
+        AliasTable table = new AliasTable(new double[]{5});
+        SplittableRandom random = new SplittableRandom(1);
+
+        for(int i = 0; i < 1000; i++)
+            assertEquals(0, table.sample(random));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoWeights()
+    {
+        new AliasTable(new double[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeWeights()
+    {
+        new AliasTable(new double[]{1, -1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNaNWeights()
+    {
+        new AliasTable(new double[]{1, Double.NaN});
+    }
+
+}
@@ -0,0 +1,76 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConveyorRingTest
+{
+
+    @Test
+    public void winnerStopsUnderThePointer()
+    {
+        RewardTable<String> rewards = SpinTimelineTest.rewards();
+        SplittableRandom seeds = new SplittableRandom(8);
+
+        for(int i = 0; i < 1_000; i++)
+        {
+            SpinTimeline timeline = SpinTimeline.generate(seeds.nextLong(), rewards);
+            ConveyorRing conveyor = new ConveyorRing(timeline, rewards);
+
+            for(int step = 0; step < timeline.getSteps(); step++)
+                if(timeline.isConveyorMoved(step))
+                    conveyor.advance();
+
+            assertEquals(timeline.getConveyorMoves(timeline.getSteps() - 1), conveyor.getMoves());
+            assertEquals("Seed " + timeline.getSeed(), timeline.getWinner(), conveyor.get(timeline.getFinalPointer()));
+        }
+    }
+
+    @Test
+    public void movesEveryRewardOneColumnLeft()
+    {
+        RewardTable<String> rewards = SpinTimelineTest.rewards();
+        ConveyorRing conveyor = new ConveyorRing(rewards, 3L, 0, -1);
+
+        assertEquals(-1, conveyor.get(0));
+
+        conveyor.advance();
+
+        for(int move = 0; move < 50; move++)
+        {
+            int[] before = new int[SpinTimeline.ROW];
+
+            for(int column = 0; column < before.length; column++)
+                before[column] = conveyor.get(column);
+
+            conveyor.advance();
+
+            for(int column = 0; column < before.length - 1; column++)
+                assertEquals(before[column + 1], conveyor.get(column));
+        }
+    }
+
+    @Test
+    public void placesTheWinnerAtItsPosition()
+    {
+        RewardTable<String> rewards = SpinTimelineTest.rewards();
+        int winner = rewards.size() - 1;
+
+        for(int position = 0; position < 40; position++)
+        {
+            ConveyorRing conveyor = new ConveyorRing(rewards, position, winner, position);
+
+            // Position p is in the last column once p - 7 moves have shown it, or in column p on the first fill
+            int moves = Math.max(1, position - SpinTimeline.ROW + 2);
+
+            for(int move = 0; move < moves; move++)
+                conveyor.advance();
+
+            assertEquals("Position " + position, winner, conveyor.get(position - (moves - 1)));
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameBufferTest
+{
+
+    private static List<Integer> flush(FrameBuffer frame)
+    {
+        List<Integer> slots = new ArrayList<>();
+        frame.flush((slot, id) -> slots.add(slot));
+        return slots;
+    }
+
+    @Test
+    public void startsClean()
+    {
+        FrameBuffer frame = new FrameBuffer();
+
+        assertFalse(frame.isDirty());
+        assertEquals(0, frame.flush((slot, id) -> { }));
+    }
+
+    @Test
+    public void flushesOnlyChangedSlotsInOrder()
+    {
+        FrameBuffer frame = new FrameBuffer();
+        frame.set(20, 4);
+        frame.set(3, 1);
+        frame.set(26, 2);
+
+        assertTrue(frame.isDirty());
+        assertEquals(Arrays.asList(3, 20, 26), flush(frame));
+        assertFalse(frame.isDirty());
+        assertEquals(0, flush(frame).size());
+    }
+
+    @Test
+    public void settingASlotBackIsNotDirty()
+    {
+        FrameBuffer frame = new FrameBuffer();
+        frame.set(5, 7);
+        flush(frame);
+
+        frame.set(5, 8);
+        frame.set(5, 7);
+
+        assertFalse(frame.isDirty());
+    }
+
+    @Test
+    public void setsTheSameIdOnce()
+    {
+        FrameBuffer frame = new FrameBuffer();
+        frame.fill(0, FrameBuffer.SIZE - 1, FrameBuffer.PLACEHOLDER);
+
+        assertEquals(FrameBuffer.SIZE, flush(frame).size());
+
+        frame.fill(0, FrameBuffer.SIZE - 1, FrameBuffer.PLACEHOLDER);
+        assertFalse(frame.isDirty());
+    }
+
+    @Test
+    public void movingThePointerMarksTheOldAndNewSlot()
+    {
+        FrameBuffer frame = new FrameBuffer();
+        frame.fill(0, SpinTimeline.ROW - 1, FrameBuffer.PLACEHOLDER);
+        frame.setPointer(2);
+        flush(frame);
+
+        frame.setPointer(2);
+        assertFalse(frame.isDirty());
+
+        frame.setPointer(3);
+        List<int[]> written = new ArrayList<>();
+        frame.flush((slot, id) -> written.add(new int[]{slot, id}));
+
+        assertEquals(2, written.size());
+        assertEquals(2, written.get(0)[0]);
+        assertEquals(FrameBuffer.PLACEHOLDER, written.get(0)[1]);
+        assertEquals(3, written.get(1)[0]);
+        assertEquals(FrameBuffer.POINTER, written.get(1)[1]);
+        assertEquals(3, frame.getPointer());
+    }
+
+    @Test
+    public void copiesTheConveyorOnlyWhenItMoves()
+    {
+        FrameBuffer frame = new FrameBuffer();
+        ConveyorRing conveyor = new ConveyorRing(SpinTimelineTest.rewards(), 11L, 0, -1);
+
+        conveyor.advance();
+        frame.setConveyor(conveyor);
+        List<Integer> slots = flush(frame);
+
+        for(int slot : slots)
+            assertTrue(slot >= SpinTimeline.ROW && slot < SpinTimeline.ROW * 2);
+
+        frame.setConveyor(conveyor);
+        assertFalse(frame.isDirty());
+    }
+
+}
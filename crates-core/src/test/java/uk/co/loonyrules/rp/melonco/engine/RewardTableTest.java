@@ -0,0 +1,77 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import org.junit.Test;
+import uk.co.loonyrules.rp.melonco.builders.RewardTableBuilder;
+import uk.co.loonyrules.rp.melonco.enums.Rarity;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+
+public class RewardTableTest
+{
+
+    private static RewardTable<String> table()
+    {
+        return new RewardTableBuilder<String>()
+                .add("grass", Rarity.COMMON)
+                .add("coal", Rarity.UNCOMMON)
+                .add("iron", Rarity.RARE)
+                .add("gold", Rarity.EPIC)
+                .add("diamond", Rarity.LEGENDARY)
+                .add("cake", 30, Rarity.RARE)
+                .build();
+    }
+
+    @Test
+    public void keepsRewardsInTheOrderTheyWereAdded()
+    {
+        RewardTable<String> rewards = table();
+
+        assertEquals(6, rewards.size());
+        assertEquals("grass", rewards.get(0));
+        assertEquals("cake", rewards.get(5));
+        assertEquals(Rarity.LEGENDARY, rewards.getRarity(4));
+        assertEquals(30, rewards.getWeight(5), 0);
+    }
+
+    @Test
+    public void chancesAddUpToOne()
+    {
+        RewardTable<String> rewards = table();
+        double total = 0;
+
+        for(int i = 0; i < rewards.size(); i++)
+            total += rewards.getChance(i);
+
+        assertEquals(210, rewards.getTotalWeight(), 1e-9);
+        assertEquals(1, total, 1e-9);
+        assertEquals(2 / 210D, rewards.getChance(4), 1e-12);
+    }
+
+    @Test
+    public void samplesAtEachRewardsChance()
+    {
+        RewardTable<String> rewards = table();
+        SplittableRandom random = new SplittableRandom(99);
+        int samples = 1_000_000;
+        long[] counts = new long[rewards.size()];
+
+        for(int i = 0; i < samples; i++)
+            counts[rewards.sample(random)]++;
+
+        for(int i = 0; i < rewards.size(); i++)
+            assertEquals(rewards.get(i), rewards.getChance(i), counts[i] / (double) samples, 0.005);
+    }
+
+    @Test
+    public void sameSeedSamplesTheSameRewards()
+    {
+        RewardTable<String> rewards = table();
+        SplittableRandom first = new SplittableRandom(5), second = new SplittableRandom(5);
+
+        for(int i = 0; i < 10_000; i++)
+            assertEquals(rewards.sample(first), rewards.sample(second));
+    }
+
+}
@@ -0,0 +1,83 @@
+package uk.co.loonyrules.rp.melonco.engine;
+
+import org.junit.Test;
+import uk.co.loonyrules.rp.melonco.builders.RewardTableBuilder;
+import uk.co.loonyrules.rp.melonco.enums.Rarity;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpinTimelineTest
+{
+
+    static RewardTable<String> rewards()
+    {
+        RewardTableBuilder<String> builder = new RewardTableBuilder<>();
+
+        for(Rarity rarity : Rarity.values())
+            for(int i = 0; i < 3; i++)
+                builder.add(rarity.name() + i, rarity);
+
+        return builder.build();
+    }
+
+    @Test
+    public void resolvedWinnerMatchesTheGeneratedSpin()
+    {
+        RewardTable<String> rewards = rewards();
+        SplittableRandom seeds = new SplittableRandom(2024);
+
+        for(int i = 0; i < 2_000; i++)
+        {
+            long seed = seeds.nextLong();
+            assertEquals("Seed " + seed, SpinTimeline.generate(seed, rewards).getWinner(), SpinTimeline.resolveWinner(seed, rewards));
+        }
+    }
+
+    @Test
+    public void winnerDoesNotDependOnTheTimings()
+    {
+        RewardTable<String> rewards = rewards();
+        SpinTimings shorter = new SpinTimings(60, 60), longer = new SpinTimings(300, 900);
+        SplittableRandom seeds = new SplittableRandom(17);
+
+        for(int i = 0; i < 500; i++)
+        {
+            long seed = seeds.nextLong();
+            int winner = SpinTimeline.resolveWinner(seed, rewards);
+
+            assertEquals(winner, SpinTimeline.generate(seed, rewards, shorter).getWinner());
+            assertEquals(winner, SpinTimeline.generate(seed, rewards, longer).getWinner());
+        }
+    }
+
+    @Test
+    public void lastsOneOfTheTimingsLengths()
+    {
+        RewardTable<String> rewards = rewards();
+        SpinTimings timings = new SpinTimings(90, 120);
+
+        for(long seed = 0; seed < 500; seed++)
+        {
+            int steps = SpinTimeline.generate(seed, rewards, timings).getSteps();
+            assertTrue("Lasted " + steps + " steps", steps == 90 || steps == 100 || steps == 110 || steps == 120);
+        }
+    }
+
+    @Test
+    public void sameSeedGeneratesTheSameSpin()
+    {
+        RewardTable<String> rewards = rewards();
+        SpinTimeline first = SpinTimeline.generate(123L, rewards), second = SpinTimeline.generate(123L, rewards);
+
+        assertEquals(first.getSteps(), second.getSteps());
+        assertEquals(first.getConveyorSeed(), second.getConveyorSeed());
+        assertEquals(first.getWinningPosition(), second.getWinningPosition());
+
+        for(int step = 0; step < first.getSteps(); step++)
+            assertEquals(first.getPointer(step), second.getPointer(step));
+    }
+
+}
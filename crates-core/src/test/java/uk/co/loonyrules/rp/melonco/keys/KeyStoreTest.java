@@ -0,0 +1,165 @@
+package uk.co.loonyrules.rp.melonco.keys;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyStoreTest
+{
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final UUID alice = new UUID(1, 2), bob = new UUID(3, 4);
+    private final long[] versions = new long[KeyStore.SHARDS];
+
+    private KeyStore store;
+
+    @Before
+    public void open() throws IOException
+    {
+        store = new KeyStore(folder.getRoot());
+    }
+
+    private static ObjectIntMap<String> delta(String crate, int amount)
+    {
+        ObjectIntMap<String> delta = new ObjectIntMap<>();
+        delta.put(crate, amount);
+        return delta;
+    }
+
+    private void apply(UUID uuid, ObjectIntMap<String> delta) throws IOException
+    {
+        Map<UUID, ObjectIntMap<String>> deltas = new HashMap<>();
+        deltas.put(uuid, delta);
+
+        Map<UUID, ObjectIntMap<String>>[] byShard = KeyStore.group(deltas);
+        int shard = KeyStore.shardOf(uuid);
+
+        store.applyShard(shard, byShard[shard], versions);
+    }
+
+    @Test
+    public void unknownPlayersHaveNoKeys() throws IOException
+    {
+        assertTrue(store.load(alice, versions).isEmpty());
+    }
+
+    @Test
+    public void deltasAddUp() throws IOException
+    {
+        apply(alice, delta("ENDER", 5));
+        apply(alice, delta("ENDER", -2));
+        apply(alice, delta("VOTE", 1));
+
+        ObjectIntMap<String> balances = store.load(alice, versions);
+
+        assertEquals(3, balances.get("ENDER"));
+        assertEquals(1, balances.get("VOTE"));
+        assertTrue(store.load(bob, versions).isEmpty());
+    }
+
+    @Test
+    public void balancesSurviveReopening() throws IOException
+    {
+        apply(alice, delta("ENDER", 4));
+        apply(bob, delta("ENDER", 9));
+
+        store = new KeyStore(folder.getRoot());
+
+        assertEquals(4, store.load(alice, versions).get("ENDER"));
+        assertEquals(9, store.load(bob, versions).get("ENDER"));
+    }
+
+    @Test
+    public void emptiedBalancesAreDropped() throws IOException
+    {
+        apply(alice, delta("ENDER", 2));
+        apply(alice, delta("ENDER", -2));
+
+        assertFalse(store.load(alice, versions).containsKey("ENDER"));
+    }
+
+    @Test
+    public void overdrawnBalancesAreDropped() throws IOException
+    {
+        apply(alice, delta("ENDER", 2));
+        apply(alice, delta("ENDER", -5));
+        apply(alice, delta("ENDER", 1));
+
+        assertEquals(1, store.load(alice, versions).get("ENDER"));
+    }
+
+    @Test
+    public void versionsMoveOnWithEachWrite() throws IOException
+    {
+        int shard = KeyStore.shardOf(alice);
+
+        apply(alice, delta("ENDER", 1));
+        long first = versions[shard];
+
+        apply(alice, delta("ENDER", 1));
+        assertEquals(first + 1, versions[shard]);
+
+        versions[shard] = -1;
+        store.load(alice, versions);
+        assertEquals(first + 1, versions[shard]);
+    }
+
+    @Test
+    public void grantsToEveryPlayerInAShard() throws IOException
+    {
+        int shard = KeyStore.shardOf(alice);
+        UUID other = alice;
+
+        // Another Player in the same shard
+        for(long bits = 0; other.equals(alice) || KeyStore.shardOf(other) != shard; bits++)
+            other = new UUID(bits, 0);
+
+        long[] uuids = {alice.getMostSignificantBits(), alice.getLeastSignificantBits(), other.getMostSignificantBits(), other.getLeastSignificantBits(),
+                alice.getMostSignificantBits(), alice.getLeastSignificantBits()};
+
+        apply(alice, delta("ENDER", 1));
+        store.grantShard(shard, uuids, 3, "ENDER", 5);
+
+        assertEquals(11, store.load(alice, versions).get("ENDER"));
+        assertEquals(5, store.load(other, versions).get("ENDER"));
+    }
+
+    @Test
+    public void groupsDeltasByShard()
+    {
+        Map<UUID, ObjectIntMap<String>> deltas = new HashMap<>();
+        deltas.put(alice, delta("ENDER", 1));
+        deltas.put(bob, delta("ENDER", 1));
+
+        Map<UUID, ObjectIntMap<String>>[] byShard = KeyStore.group(deltas);
+
+        assertEquals(KeyStore.SHARDS, byShard.length);
+        assertTrue(byShard[KeyStore.shardOf(alice)].containsKey(alice));
+        assertTrue(byShard[KeyStore.shardOf(bob)].containsKey(bob));
+
+        for(int shard = 0; shard < KeyStore.SHARDS; shard++)
+            if(shard != KeyStore.shardOf(alice) && shard != KeyStore.shardOf(bob))
+                assertNull(byShard[shard]);
+    }
+
+    @Test
+    public void spreadsPlayersOverShards()
+    {
+        assertNotEquals(KeyStore.shardOf(new UUID(0, 1)), KeyStore.shardOf(new UUID(0, 2)));
+    }
+
+}
@@ -0,0 +1,166 @@
+package uk.co.loonyrules.rp.melonco.ledger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LedgerSegmentTest
+{
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static LedgerRecord record(int i)
+    {
+        return new LedgerRecord(1_000L + i, new UUID(i, -i), "ENDER", i % 17, "Diamond x" + i, 31L * i);
+    }
+
+    // A segment of records, returning where each one starts
+    private File segment(int records, long[] positions) throws IOException
+    {
+        File file = LedgerSegment.file(folder.getRoot(), 0);
+        ByteBuffer buffer = ByteBuffer.allocate(LedgerSegment.HEADER_SIZE + records * LedgerSegment.maxRecordSize());
+        CRC32 crc = new CRC32();
+
+        LedgerSegment.writeHeader(buffer);
+
+        for(int i = 0; i < records; i++)
+        {
+            positions[i] = buffer.position();
+            LedgerSegment.writeRecord(buffer, record(i), crc);
+        }
+
+        Files.write(file.toPath(), Arrays.copyOf(buffer.array(), buffer.position()));
+        return file;
+    }
+
+    private static void assertRecord(int i, LedgerRecord record)
+    {
+        LedgerRecord expected = record(i);
+
+        assertEquals(expected.getTimestamp(), record.getTimestamp());
+        assertEquals(expected.getPlayer(), record.getPlayer());
+        assertEquals(expected.getCrate(), record.getCrate());
+        assertEquals(expected.getReward(), record.getReward());
+        assertEquals(expected.getRewardDescription(), record.getRewardDescription());
+        assertEquals(expected.getSeed(), record.getSeed());
+    }
+
+    private static void corrupt(File file, long position) throws IOException
+    {
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xFF);
+        }
+    }
+
+    @Test
+    public void readsBackEveryRecord() throws IOException
+    {
+        long[] positions = new long[500];
+        File file = segment(positions.length, positions);
+
+        try(LedgerReader reader = new LedgerReader(file)) {
+            for(int i = 0; i < positions.length; i++)
+            {
+                assertRecord(i, reader.next());
+                assertEquals(positions[i], reader.getPosition());
+            }
+
+            assertNull(reader.next());
+            assertEquals(file.length(), reader.getValidLength());
+        }
+    }
+
+    @Test
+    public void readsASingleRecordByPosition() throws IOException
+    {
+        long[] positions = new long[20];
+        File file = segment(positions.length, positions);
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            assertRecord(13, LedgerSegment.readRecord(channel, positions[13]));
+            assertNull(LedgerSegment.readRecord(channel, positions[13] + 1));
+            assertNull(LedgerSegment.readRecord(channel, file.length()));
+        }
+    }
+
+    @Test
+    public void stopsAtATornTail() throws IOException
+    {
+        long[] positions = new long[10];
+        File file = segment(positions.length, positions);
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(file.length() - 3);
+        }
+
+        try(LedgerReader reader = new LedgerReader(file)) {
+            for(int i = 0; i < 9; i++)
+                assertRecord(i, reader.next());
+
+            assertNull(reader.next());
+            assertEquals(positions[9], reader.getValidLength());
+        }
+    }
+
+    @Test
+    public void stopsAtABadChecksum() throws IOException
+    {
+        long[] positions = new long[10];
+        File file = segment(positions.length, positions);
+
+        // A byte in the body of the sixth record
+        corrupt(file, positions[5] + 4 + 10);
+
+        try(LedgerReader reader = new LedgerReader(file)) {
+            for(int i = 0; i < 5; i++)
+                assertRecord(i, reader.next());
+
+            assertNull(reader.next());
+            assertEquals(positions[5], reader.getValidLength());
+        }
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            assertNull(LedgerSegment.readRecord(channel, positions[5]));
+            assertRecord(6, LedgerSegment.readRecord(channel, positions[6]));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAFileThatIsNotASegment() throws IOException
+    {
+        File file = folder.newFile("segment-0000000001.ledger");
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        new LedgerReader(file).close();
+    }
+
+    @Test
+    public void listsSegmentsInOrder() throws IOException
+    {
+        for(int id : new int[]{12, 3, 7})
+            Files.write(LedgerSegment.file(folder.getRoot(), id).toPath(), new byte[0]);
+
+        folder.newFile("index");
+
+        assertEquals("[3, 7, 12]", Arrays.toString(LedgerSegment.list(folder.getRoot())));
+    }
+
+}
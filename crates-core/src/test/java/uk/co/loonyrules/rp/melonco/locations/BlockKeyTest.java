@@ -0,0 +1,53 @@
+package uk.co.loonyrules.rp.melonco.locations;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class BlockKeyTest
+{
+
+    private static final int BORDER = 30_000_000;
+
+    private static void assertRoundTrips(int x, int y, int z)
+    {
+        long key = BlockKey.of(x, y, z);
+
+        assertEquals("x of " + x + ", " + y + ", " + z, x, BlockKey.x(key));
+        assertEquals("y of " + x + ", " + y + ", " + z, y, BlockKey.y(key));
+        assertEquals("z of " + x + ", " + y + ", " + z, z, BlockKey.z(key));
+        assertEquals(BlockKey.chunk(x >> 4, z >> 4), BlockKey.chunkOf(key));
+    }
+
+    @Test
+    public void roundTripsNegativeCoordinates()
+    {
+        int[] horizontal = {-BORDER, -BORDER + 1, -17, -16, -15, -1, 0, 1, 15, 16, BORDER - 1, BORDER};
+        int[] vertical = {-2048, -64, -1, 0, 1, 64, 255, 2047};
+
+        for(int x : horizontal)
+            for(int y : vertical)
+                for(int z : horizontal)
+                    assertRoundTrips(x, y, z);
+    }
+
+    @Test
+    public void negativeBlocksAreInNegativeChunks()
+    {
+        assertEquals(BlockKey.chunk(-1, -1), BlockKey.chunkOf(BlockKey.of(-1, 70, -16)));
+        assertEquals(BlockKey.chunk(-2, 0), BlockKey.chunkOf(BlockKey.of(-17, 70, 15)));
+    }
+
+    @Test
+    public void neighboursHaveDifferentKeys()
+    {
+        long key = BlockKey.of(-1, -1, -1);
+
+        assertNotEquals(key, BlockKey.of(0, -1, -1));
+        assertNotEquals(key, BlockKey.of(-1, 0, -1));
+        assertNotEquals(key, BlockKey.of(-1, -1, 0));
+        assertNotEquals(BlockKey.chunk(-1, 0), BlockKey.chunk(0, -1));
+    }
+
+}
@@ -0,0 +1,68 @@
+package uk.co.loonyrules.rp.melonco.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest
+{
+
+    @Test
+    public void smallValuesGetABucketEach()
+    {
+        for(int value = 0; value < LatencyHistogram.SUB_BUCKETS; value++)
+        {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.highestOf(value));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous()
+    {
+        int last = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+
+        for(int bucket = 0; bucket < last; bucket++)
+        {
+            long highest = LatencyHistogram.highestOf(bucket);
+
+            assertEquals("Top of bucket " + bucket, bucket, LatencyHistogram.bucketOf(highest));
+            assertEquals("Past bucket " + bucket, bucket + 1, LatencyHistogram.bucketOf(highest + 1));
+        }
+
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestOf(last));
+    }
+
+    @Test
+    public void reportsWithinAnEighth()
+    {
+        for(long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1)
+        {
+            long highest = LatencyHistogram.highestOf(LatencyHistogram.bucketOf(value));
+            assertTrue(value + " reported as " + highest, highest >= value && highest - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void percentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for(int i = 1; i <= 1000; i++)
+            histogram.record(i * 1000L);
+
+        histogram.record(-5);
+
+        assertEquals(1001, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue("Median " + median, median >= 500_000 && median <= 500_000 * 9 / 8);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+}